@@ -1,5 +1,12 @@
 -- Table creation for MySQL
 
+DROP TABLE IF EXISTS upload_session_chunks;
+DROP TABLE IF EXISTS upload_sessions;
+DROP TABLE IF EXISTS vault_file_thumbnails;
+DROP TABLE IF EXISTS vault_file_chunks;
+DROP TABLE IF EXISTS vault_chunk_refs;
+DROP TABLE IF EXISTS vault_files;
+DROP TABLE IF EXISTS secret_key_trigrams;
 DROP TABLE IF EXISTS access_logs;
 DROP TABLE IF EXISTS vault_data;
 DROP TABLE IF EXISTS users;
@@ -14,17 +21,24 @@ CREATE TABLE users (
     INDEX idx_username (username)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
 
+-- cipher_format says how encrypted_value is sealed: 'v1' (EncryptionManager envelope) or 'cbc'
+-- (legacy AES-CBC, rows written before the envelope format). It is never inferred from the bytes.
+-- Upgrading an existing database (its rows are all legacy):
+--   ALTER TABLE vault_data ADD COLUMN cipher_format VARCHAR(16) NOT NULL DEFAULT 'cbc';
+--   ALTER TABLE vault_files ADD COLUMN cipher_format VARCHAR(16) NOT NULL DEFAULT 'cbc';
 CREATE TABLE vault_data (
     id INT AUTO_INCREMENT PRIMARY KEY,
     user_id INT NOT NULL,
     key_name VARCHAR(255) NOT NULL,
     encrypted_value TEXT NOT NULL,
+    cipher_format VARCHAR(16) NOT NULL DEFAULT 'cbc',
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
     FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE,
     UNIQUE KEY unique_user_key (user_id, key_name),
     INDEX idx_user_id (user_id),
-    INDEX idx_key_name (key_name)
+    INDEX idx_key_name (key_name),
+    INDEX idx_user_updated (user_id, updated_at, id)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
 
 CREATE TABLE access_logs (
@@ -39,3 +53,113 @@ CREATE TABLE access_logs (
     INDEX idx_timestamp (timestamp),
     INDEX idx_action (action)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- Trigram search index over vault_data.key_name (maintained by VaultService)
+CREATE TABLE secret_key_trigrams (
+    user_id INT NOT NULL,
+    trigram VARCHAR(3) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin NOT NULL,
+    secret_id INT NOT NULL,
+    PRIMARY KEY (user_id, trigram, secret_id),
+    FOREIGN KEY (secret_id) REFERENCES vault_data(id) ON DELETE CASCADE,
+    INDEX idx_trigram_secret (secret_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- Encrypted files. storage says where the content is:
+--   'db'     encrypted_data holds a segmented AES-GCM stream (see SegmentedCipher)
+--   'chunks' encrypted_data is NULL; vault_file_chunks lists chunks in the on-disk chunk store
+-- compression is the codec applied before encryption ('none' or 'deflate'); file_size is the original size
+-- compression_index (deflate) is the encrypted index of restartable blocks used for ranged reads; on an
+-- existing database: ALTER TABLE vault_files ADD COLUMN compression_index MEDIUMBLOB NULL;
+-- cipher_format is how the content is sealed: 'seg' segmented stream (storage 'db'), 'v1' envelopes
+-- (per chunk for storage 'chunks', whole blob for early 'db' rows) or 'cbc' (legacy whole blob)
+-- content_hash is the SHA-256 (hex) of encrypted_data, checked by the local blob cache; encrypted_size is
+-- its length, so reads don't have to touch the blob for it. On an existing database:
+--   ALTER TABLE vault_files ADD COLUMN encrypted_size BIGINT NULL;
+-- manifest_mac (storage 'chunks') is an HMAC over the chunk manifest's order, count and sizes under a
+-- per-user key; reads refuse a manifest that doesn't match it. On an existing database:
+--   ALTER TABLE vault_files ADD COLUMN manifest_mac CHAR(64) NULL;
+CREATE TABLE vault_files (
+    id INT AUTO_INCREMENT PRIMARY KEY,
+    user_id INT NOT NULL,
+    file_name VARCHAR(255) NOT NULL,
+    file_type VARCHAR(50),
+    file_size BIGINT NOT NULL,
+    storage VARCHAR(16) NOT NULL DEFAULT 'db',
+    compression VARCHAR(16) NOT NULL DEFAULT 'none',
+    compression_index MEDIUMBLOB NULL,
+    cipher_format VARCHAR(16) NOT NULL DEFAULT 'cbc',
+    encrypted_data LONGBLOB NULL,
+    content_hash CHAR(64) NULL,
+    encrypted_size BIGINT NULL,
+    manifest_mac CHAR(64) NULL,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE,
+    -- By-name lookup (the newest of a name is its last entry) and the by-name listing; on an
+    -- existing database: ALTER TABLE vault_files DROP INDEX idx_user_file, ADD INDEX idx_user_file (user_id, file_name, id);
+    INDEX idx_user_file (user_id, file_name, id),
+    -- Keyset listing orders: newest first, largest first (by name uses idx_user_file)
+    INDEX idx_user_newest (user_id, id),
+    INDEX idx_user_size (user_id, file_size)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- Reference counts for chunk store entries (chunk_hash = per-user HMAC of the chunk plaintext)
+-- released_at is epoch milliseconds when ref_count reached 0 (NULL while referenced); the chunk
+-- store's sweep deletes such rows and their files after files.chunkStore.gcGraceMs. On an existing database:
+--   ALTER TABLE vault_chunk_refs ADD COLUMN released_at BIGINT NULL, ADD INDEX idx_chunk_released (released_at);
+CREATE TABLE vault_chunk_refs (
+    user_id INT NOT NULL,
+    chunk_hash CHAR(64) NOT NULL,
+    ref_count INT NOT NULL,
+    stored_size INT NOT NULL,
+    released_at BIGINT NULL,
+    PRIMARY KEY (user_id, chunk_hash),
+    INDEX idx_chunk_released (released_at),
+    FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- Ordered chunk manifest of each chunk-stored file
+CREATE TABLE vault_file_chunks (
+    file_id INT NOT NULL,
+    chunk_index INT NOT NULL,
+    chunk_hash CHAR(64) NOT NULL,
+    plain_size INT NOT NULL,
+    PRIMARY KEY (file_id, chunk_index),
+    FOREIGN KEY (file_id) REFERENCES vault_files(id) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- Resumable uploads in progress. Received chunks are already in the chunk store and hold a
+-- reference in vault_chunk_refs; commit moves them to vault_file_chunks, expiry releases them
+-- last_activity is epoch milliseconds (compared the same way on MySQL and SQLite)
+-- source_fingerprint is a per-user keyed hash of the source's size, mtime and first chunk; a session
+-- only resumes from a matching source. On an existing database:
+--   ALTER TABLE upload_sessions ADD COLUMN source_fingerprint CHAR(64) NULL;
+CREATE TABLE upload_sessions (
+    id INT AUTO_INCREMENT PRIMARY KEY,
+    user_id INT NOT NULL,
+    file_name VARCHAR(255) NOT NULL,
+    file_type VARCHAR(50),
+    expected_size BIGINT NOT NULL,
+    next_chunk INT NOT NULL DEFAULT 0,
+    received_size BIGINT NOT NULL DEFAULT 0,
+    last_activity BIGINT NOT NULL,
+    source_fingerprint CHAR(64) NULL,
+    FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE,
+    INDEX idx_upload_activity (last_activity)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+CREATE TABLE upload_session_chunks (
+    session_id INT NOT NULL,
+    chunk_index INT NOT NULL,
+    chunk_hash CHAR(64) NOT NULL,
+    plain_size INT NOT NULL,
+    PRIMARY KEY (session_id, chunk_index),
+    FOREIGN KEY (session_id) REFERENCES upload_sessions(id) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- Encrypted preview-size renderings of image files, made on first preview
+CREATE TABLE vault_file_thumbnails (
+    file_id INT PRIMARY KEY,
+    thumbnail MEDIUMBLOB NOT NULL,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    FOREIGN KEY (file_id) REFERENCES vault_files(id) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
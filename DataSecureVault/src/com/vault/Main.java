@@ -1,15 +1,13 @@
 package com.vault;
 
 import com.vault.ui.LoginFrame;
-import com.vault.core.DatabaseManager;
+import com.vault.core.AppConfig;
 import javax.swing.*;
-import java.io.FileInputStream;
-import java.util.Properties;
 
 public class Main {
 
     public static void main(String[] args) {
-        loadConfiguration();
+        AppConfig.load();
 
         try {
             UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
@@ -29,28 +27,9 @@ public class Main {
         });
     }
 
-    private static void loadConfiguration() {
-        try {
-            Properties props = new Properties();
-            props.load(new FileInputStream("config.properties"));
-            System.setProperty("db.type", props.getProperty("db.type", "mysql"));
-            System.setProperty("db.url", props.getProperty("db.url"));
-            System.setProperty("db.username", props.getProperty("db.username", ""));
-            System.setProperty("db.password", props.getProperty("db.password", ""));
-        } catch (Exception e) {
-            System.setProperty("db.type", "mysql");
-            System.setProperty("db.url", "jdbc:mysql://localhost:3306/vaultdb");
-            System.setProperty("db.username", "root");
-            System.setProperty("db.password", "password");
-        }
-    }
-
     private static boolean initializeDatabase() {
         try {
-            DatabaseManager dbManager = DatabaseManager.getInstance();
-            if ("sqlite".equalsIgnoreCase(System.getProperty("db.type"))) {
-                dbManager.createTablesIfNotExist();
-            }
+            AppConfig.initializeDatabase();
             return true;
         } catch (Exception e) {
             e.printStackTrace();
@@ -0,0 +1,76 @@
+package com.vault.bench;
+
+import com.vault.core.EncryptionManager;
+import com.vault.core.EncryptionManager.Algorithm;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.security.SecureRandom;
+
+/**
+ * CipherModeBenchmark
+ * - Compares legacy AES-CBC against the AES-GCM envelope for encrypt + decrypt
+ * - Payload sizes from a short secret up to a 16 MB file
+ * - JMH-style warmup and measurement iterations; reports ops/s and MB/s
+ *
+ * Run: java -cp out/production/DataSecureVault com.vault.bench.CipherModeBenchmark
+ */
+public class CipherModeBenchmark {
+
+    private static final int[] SIZES = {64, 1024, 16 * 1024, 256 * 1024, 1024 * 1024, 16 * 1024 * 1024};
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASURE_ITERATIONS = 5;
+    private static final long ITERATION_NANOS = 500_000_000L;
+
+    private static volatile int sink;
+
+    public static void main(String[] args) throws Exception {
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        EncryptionManager enc = new EncryptionManager(new SecretKeySpec(key, "AES"));
+
+        System.out.printf("%-10s %-8s %14s %12s%n", "payload", "mode", "ops/s", "MB/s");
+        for (int size : SIZES) {
+            byte[] payload = new byte[size];
+            new SecureRandom().nextBytes(payload);
+            for (Algorithm mode : Algorithm.values()) {
+                double opsPerSec = measure(enc, payload, mode);
+                System.out.printf("%-10s %-8s %14.1f %12.1f%n",
+                        formatSize(size), mode, opsPerSec, opsPerSec * size / (1024.0 * 1024.0));
+            }
+        }
+    }
+
+    /**
+     * One op = encrypt then decrypt the payload. Returns the best measured ops/s.
+     */
+    private static double measure(EncryptionManager enc, byte[] payload, Algorithm mode) throws Exception {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            runIteration(enc, payload, mode);
+        }
+        double best = 0;
+        for (int i = 0; i < MEASURE_ITERATIONS; i++) {
+            best = Math.max(best, runIteration(enc, payload, mode));
+        }
+        return best;
+    }
+
+    private static double runIteration(EncryptionManager enc, byte[] payload, Algorithm mode) throws Exception {
+        long ops = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            byte[] ct = enc.encryptFile(payload, mode);
+            byte[] pt = enc.decryptFile(ct, mode);
+            sink += pt.length;
+            ops++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < ITERATION_NANOS);
+        return ops * 1_000_000_000.0 / elapsed;
+    }
+
+    private static String formatSize(int bytes) {
+        if (bytes < 1024) return bytes + " B";
+        if (bytes < 1024 * 1024) return (bytes / 1024) + " KB";
+        return (bytes / (1024 * 1024)) + " MB";
+    }
+}
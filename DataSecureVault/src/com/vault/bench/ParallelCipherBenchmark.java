@@ -0,0 +1,98 @@
+package com.vault.bench;
+
+import com.vault.core.CryptoWorkers;
+import com.vault.core.EncryptionManager;
+import com.vault.core.ParallelSegmentCipher;
+import com.vault.core.SegmentedCipher;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ParallelCipherBenchmark
+ * - Segmented file encryption and decryption throughput at parallelism 1, 2, 4 ... cores
+ * - Same warmup / measurement scheme as CipherModeBenchmark; reports MB/s and speed-up over 1 thread
+ *
+ * Run: java -cp out/production/DataSecureVault com.vault.bench.ParallelCipherBenchmark [sizeMB] [segmentKB]
+ */
+public class ParallelCipherBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 2;
+    private static final int MEASURE_ITERATIONS = 5;
+
+    private static volatile long sink;
+
+    public static void main(String[] args) throws Exception {
+        int sizeMb = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int segmentSize = (args.length > 1 ? Integer.parseInt(args[1]) : 64) * 1024;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        SegmentedCipher cipher = new EncryptionManager(new SecretKeySpec(key, "AES")).segmented();
+
+        byte[] plain = new byte[sizeMb * 1024 * 1024];
+        new SecureRandom().nextBytes(plain);
+        ByteArrayOutputStream ct = new ByteArrayOutputStream(plain.length + plain.length / 100);
+        cipher.encrypt(new ByteArrayInputStream(plain), ct, segmentSize);
+        byte[] encrypted = ct.toByteArray();
+
+        System.out.printf("payload %d MB, segment %d KB, %d core(s)%n", sizeMb, segmentSize / 1024, cores);
+        System.out.printf("%-12s %12s %9s %12s %9s%n", "parallelism", "encrypt MB/s", "speed-up", "decrypt MB/s", "speed-up");
+
+        List<Integer> levels = new ArrayList<>();
+        for (int p = 1; p < cores; p *= 2) levels.add(p);
+        levels.add(cores);
+
+        double baseEnc = 0, baseDec = 0;
+        for (int p : levels) {
+            CryptoWorkers workers = CryptoWorkers.withParallelism(p);
+            ParallelSegmentCipher parallel = new ParallelSegmentCipher(cipher, segmentSize, workers);
+            double enc = measure(parallel, plain, segmentSize, true);
+            double dec = measure(parallel, encrypted, segmentSize, false);
+            workers.shutdown();
+            if (p == 1) {
+                baseEnc = enc;
+                baseDec = dec;
+            }
+            System.out.printf("%-12d %12.1f %8.2fx %12.1f %8.2fx%n", p, enc, enc / baseEnc, dec, dec / baseDec);
+        }
+    }
+
+    /**
+     * Best MB/s (of plaintext) over the measured iterations.
+     */
+    private static double measure(ParallelSegmentCipher parallel, byte[] input, int segmentSize, boolean encrypt) throws Exception {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            runOnce(parallel, input, segmentSize, encrypt);
+        }
+        double best = 0;
+        for (int i = 0; i < MEASURE_ITERATIONS; i++) {
+            long start = System.nanoTime();
+            long plainBytes = runOnce(parallel, input, segmentSize, encrypt);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            best = Math.max(best, plainBytes / (1024.0 * 1024.0) / seconds);
+        }
+        return best;
+    }
+
+    private static long runOnce(ParallelSegmentCipher parallel, byte[] input, int segmentSize, boolean encrypt) throws Exception {
+        byte[] buf = new byte[256 * 1024];
+        long total = 0;
+        try (InputStream in = encrypt
+                ? parallel.encryptingStream(new ByteArrayInputStream(input), segmentSize)
+                : parallel.decryptingStream(new ByteArrayInputStream(input))) {
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                total += n;
+                sink += buf[0];
+            }
+        }
+        return encrypt ? input.length : total;
+    }
+}
@@ -0,0 +1,389 @@
+package com.vault.cli;
+
+import com.vault.core.AppConfig;
+import com.vault.core.SessionKeyManager;
+import com.vault.model.Secret;
+import com.vault.model.User;
+import com.vault.service.UserService;
+import com.vault.service.VaultFileService;
+import com.vault.service.VaultService;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Console;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * VaultCli
+ * - Headless entry point for scripts and cron jobs: get / put / ls secrets and ls / get files
+ * - Reuses VaultService / VaultFileService and the same config.properties as the desktop app
+ * - Never touches AWT or Swing (java.awt.headless is set anyway), so startup is JVM + JDBC + PBKDF2
+ * - Credentials: --user or VAULT_USER; the master password from VAULT_PASSWORD, the first stdin
+ *   line with --password-stdin, or a console prompt
+ * - put reads the value from stdin; taking it from argv (visible in ps and shell history) needs
+ *   --value-from-argv and prints a warning
+ * - Values go to stdout, messages to stderr; exit codes: 0 ok, 1 error, 2 usage, 3 not found,
+ *   4 login failed
+ *
+ * Run: java -cp out/production/DataSecureVault:lib/mysql-connector-j-9.5.0.jar com.vault.cli.VaultCli ls
+ */
+public class VaultCli {
+
+    static final int EXIT_OK = 0;
+    static final int EXIT_ERROR = 1;
+    static final int EXIT_USAGE = 2;
+    static final int EXIT_NOT_FOUND = 3;
+    static final int EXIT_LOGIN_FAILED = 4;
+
+    private static final int FILE_PAGE_SIZE = 500;
+    private static final List<String> COMMANDS = List.of("get", "put", "ls", "file");
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: VaultCli [--user NAME] [--password-stdin] <command>",
+            "  get <key>                print the secret's value",
+            "  put <key>                add or update a secret, reading the value from stdin",
+            "  put <key> --value-from-argv <value>",
+            "                           take the value from the command line (visible in ps / history)",
+            "  ls [--json] [query]      list key names (metadata only; query filters by substring)",
+            "  file ls [--json]         list stored files",
+            "  file get <name> [path]   write a file to path, or to stdout when no path is given",
+            "Master password: VAULT_PASSWORD, the first stdin line with --password-stdin, or a prompt");
+
+    /** Thrown for bad arguments; exits with EXIT_USAGE. */
+    private static class UsageException extends Exception {
+        UsageException(String message) {
+            super(message);
+        }
+    }
+
+    private final PrintStream out;
+    private final PrintStream err;
+    private BufferedReader stdin;
+
+    VaultCli(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        PrintStream out = new PrintStream(new FileOutputStream(FileDescriptor.out), false, StandardCharsets.UTF_8);
+        // stdout carries only values; the services' progress lines ("Database connected", ...) go to stderr
+        System.setOut(System.err);
+        int code = new VaultCli(out, System.err).run(args);
+        out.flush();
+        System.exit(code);
+    }
+
+    int run(String[] args) {
+        String username = System.getenv("VAULT_USER");
+        boolean passwordFromStdin = false;
+        List<String> rest = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--user":
+                    if (i + 1 == args.length) return usage("--user needs a value");
+                    username = args[++i];
+                    break;
+                case "--password-stdin":
+                    passwordFromStdin = true;
+                    break;
+                case "-h":
+                case "--help":
+                    out.println(USAGE);
+                    return EXIT_OK;
+                default:
+                    rest.add(args[i]);
+            }
+        }
+        if (rest.isEmpty()) return usage(null);
+        // Checked before login, which costs two PBKDF2 derivations
+        if (!COMMANDS.contains(rest.get(0))) return usage("Unknown command: " + rest.get(0));
+        if (username == null || username.isEmpty()) return usage("No user: pass --user or set VAULT_USER");
+
+        AppConfig.load();
+        SessionKeyManager session = SessionKeyManager.getInstance();
+        UserService userService = null;
+        try {
+            AppConfig.initializeDatabase();
+            userService = new UserService();
+            char[] password = readPassword(passwordFromStdin);
+            if (password == null) return usage("No master password: set VAULT_PASSWORD, use --password-stdin or run interactively");
+
+            User user;
+            try {
+                user = userService.loginUser(username, new String(password));
+                if (user == null) {
+                    err.println("Invalid username or password.");
+                    return EXIT_LOGIN_FAILED;
+                }
+                userService.logAccess(user.getId(), "LOGIN", null);
+                session.unlock(password);
+            } finally {
+                Arrays.fill(password, '\0');
+            }
+            return dispatch(rest, user, userService, session);
+        } catch (UsageException e) {
+            return usage(e.getMessage());
+        } catch (Exception e) {
+            err.println("Error: " + e.getMessage());
+            return EXIT_ERROR;
+        } finally {
+            if (userService != null) userService.flushAccessLog();
+            session.lock();
+        }
+    }
+
+    private int dispatch(List<String> args, User user, UserService userService, SessionKeyManager session) throws Exception {
+        String command = args.get(0);
+        List<String> params = args.subList(1, args.size());
+        switch (command) {
+            case "get":
+                return get(new VaultService(session), userService, user.getId(), one(params, "get <key>"));
+            case "put":
+                return put(new VaultService(session), userService, user.getId(), params);
+            case "ls":
+                return listSecrets(new VaultService(session), user.getId(), params);
+            case "file":
+                if (params.isEmpty()) throw new UsageException("file ls | file get <name> [path]");
+                return file(new VaultFileService(session), userService, user.getId(), params);
+            default:
+                throw new UsageException("Unknown command: " + command);
+        }
+    }
+
+    // ==================== Secrets ====================
+
+    private int get(VaultService vaultService, UserService userService, int userId, String key) throws Exception {
+        Integer id = vaultService.findSecretId(userId, key);
+        Secret s = id == null ? null : vaultService.getSecretById(userId, id);
+        if (s == null) {
+            err.println("No secret named " + key);
+            return EXIT_NOT_FOUND;
+        }
+        userService.logAccess(userId, "VIEW", s.getKeyName());
+        out.println(s.getDecryptedValue());
+        return EXIT_OK;
+    }
+
+    private int put(VaultService vaultService, UserService userService, int userId, List<String> params) throws Exception {
+        String value;
+        if (params.size() == 1) {
+            value = readValue();
+        } else if (params.size() == 3 && "--value-from-argv".equals(params.get(1))) {
+            err.println("Warning: a value on the command line is visible to other users (ps) and kept in shell history; pipe it on stdin instead");
+            value = params.get(2);
+        } else if (params.size() == 2) {
+            throw new UsageException("put reads the value from stdin; pass --value-from-argv <value> to take it from the command line");
+        } else {
+            throw new UsageException("put <key> [--value-from-argv <value>]");
+        }
+        String key = params.get(0);
+        if (value.isEmpty()) throw new UsageException("Empty value for " + key);
+        Integer id = vaultService.findSecretId(userId, key);
+        if (id == null) {
+            vaultService.addSecret(userId, key, value);
+            userService.logAccess(userId, "ADD", key);
+            err.println("Added " + key);
+        } else {
+            vaultService.updateSecret(userId, id, key, value);
+            userService.logAccess(userId, "UPDATE", key);
+            err.println("Updated " + key);
+        }
+        return EXIT_OK;
+    }
+
+    private int listSecrets(VaultService vaultService, int userId, List<String> params) throws Exception {
+        boolean json = params.contains("--json");
+        List<String> terms = new ArrayList<>(params);
+        terms.remove("--json");
+        if (terms.size() > 1) throw new UsageException("ls [--json] [query]");
+        String query = terms.isEmpty() ? null : terms.get(0);
+
+        JsonArray array = json ? new JsonArray(out) : null;
+        // Streamed by keyset (a query filters with LIKE on the way), newest first: every match is
+        // printed, and neither a large vault nor the search index is ever loaded into memory
+        vaultService.streamSecrets(userId, query, s -> printSecret(s, array));
+        if (array != null) array.close();
+        return EXIT_OK;
+    }
+
+    private void printSecret(Secret s, JsonArray array) {
+        if (array == null) {
+            out.println(s.getKeyName());
+            return;
+        }
+        array.element("{\"id\":" + s.getId()
+                + ",\"key\":" + json(s.getKeyName())
+                + ",\"created\":" + json(s.getCreatedAt())
+                + ",\"updated\":" + json(s.getUpdatedAt()) + "}");
+    }
+
+    // ==================== Files ====================
+
+    private int file(VaultFileService fileService, UserService userService, int userId, List<String> params) throws Exception {
+        switch (params.get(0)) {
+            case "ls":
+                return listFiles(fileService, userId, params.subList(1, params.size()));
+            case "get":
+                if (params.size() < 2 || params.size() > 3) throw new UsageException("file get <name> [path]");
+                return getFile(fileService, userService, userId, params.get(1), params.size() == 3 ? params.get(2) : null);
+            default:
+                throw new UsageException("Unknown file command: " + params.get(0));
+        }
+    }
+
+    private int listFiles(VaultFileService fileService, int userId, List<String> params) throws Exception {
+        boolean json = params.contains("--json");
+        if (params.size() > (json ? 1 : 0)) throw new UsageException("file ls [--json]");
+
+        JsonArray array = json ? new JsonArray(out) : null;
+        String cursor = null;
+        do {
+            VaultFileService.FilePage page = fileService.listFiles(userId, VaultFileService.FileSort.NAME, cursor, FILE_PAGE_SIZE);
+            for (VaultFileService.FileInfo f : page.items) {
+                if (array == null) {
+                    out.println(f.fileName + "\t" + f.fileSize);
+                } else {
+                    array.element("{\"id\":" + f.id
+                            + ",\"name\":" + json(f.fileName)
+                            + ",\"type\":" + json(f.fileType)
+                            + ",\"size\":" + f.fileSize
+                            + ",\"created\":" + json(f.createdAt) + "}");
+                }
+            }
+            cursor = page.nextCursor;
+        } while (cursor != null);
+        if (array != null) array.close();
+        return EXIT_OK;
+    }
+
+    private int getFile(VaultFileService fileService, UserService userService, int userId,
+                        String name, String target) throws Exception {
+        Integer id = fileService.findFileId(userId, name);
+        if (id == null) {
+            err.println("No file named " + name);
+            return EXIT_NOT_FOUND;
+        }
+        if (target != null) {
+            Path path = Paths.get(target);
+            long written = fileService.downloadTo(userId, id, path);
+            err.println("Wrote " + written + " bytes to " + path);
+        } else {
+            out.flush();
+            OutputStream raw = new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 64 * 1024);
+            try (InputStream in = fileService.openFile(userId, id)) {
+                if (in == null) {
+                    err.println("No file named " + name);
+                    return EXIT_NOT_FOUND;
+                }
+                in.transferTo(raw);
+            }
+            raw.flush();
+        }
+        userService.logAccess(userId, "DOWNLOAD_FILE", name);
+        return EXIT_OK;
+    }
+
+    // ==================== Input ====================
+
+    private char[] readPassword(boolean fromStdin) throws IOException {
+        if (fromStdin) {
+            String line = stdin().readLine();
+            return line == null ? null : line.toCharArray();
+        }
+        String env = System.getenv("VAULT_PASSWORD");
+        if (env != null) return env.toCharArray();
+        Console console = System.console();
+        return console == null ? null : console.readPassword("Master password: ");
+    }
+
+    /** Rest of stdin, without its trailing newline. */
+    private String readValue() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        char[] buf = new char[4096];
+        int n;
+        while ((n = stdin().read(buf)) != -1) sb.append(buf, 0, n);
+        int end = sb.length();
+        if (end > 0 && sb.charAt(end - 1) == '\n') end--;
+        if (end > 0 && sb.charAt(end - 1) == '\r') end--;
+        return sb.substring(0, end);
+    }
+
+    private BufferedReader stdin() {
+        if (stdin == null) stdin = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        return stdin;
+    }
+
+    private static String one(List<String> params, String usage) throws UsageException {
+        if (params.size() != 1) throw new UsageException(usage);
+        return params.get(0);
+    }
+
+    private int usage(String problem) {
+        if (problem != null) err.println(problem);
+        err.println(USAGE);
+        return EXIT_USAGE;
+    }
+
+    // ==================== JSON ====================
+
+    /** Writes a JSON array one element at a time. */
+    private static class JsonArray {
+        private final PrintStream out;
+        private boolean first = true;
+
+        JsonArray(PrintStream out) {
+            this.out = out;
+            out.print('[');
+        }
+
+        void element(String json) {
+            if (!first) out.print(',');
+            out.println();
+            out.print("  " + json);
+            first = false;
+        }
+
+        void close() {
+            if (!first) out.println();
+            out.println(']');
+        }
+    }
+
+    static String json(Timestamp ts) {
+        return ts == null ? "null" : json(ts.toInstant().toString());
+    }
+
+    static String json(String s) {
+        if (s == null) return "null";
+        StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
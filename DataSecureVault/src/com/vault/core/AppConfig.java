@@ -0,0 +1,54 @@
+package com.vault.core;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * AppConfig
+ * - Loads config.properties into system properties, shared by the desktop app (Main)
+ *   and the headless CLI (com.vault.cli.VaultCli)
+ * - The file is read from -Dvault.config, or config.properties in the working directory
+ * - db.* connection keys come from the file; tuning keys are passed through unless
+ *   already set with -D
+ * - Falls back to the local MySQL defaults when the file can't be read
+ * - No AWT / Swing dependencies, so the CLI can use it without loading them
+ */
+public final class AppConfig {
+
+    private AppConfig() {
+    }
+
+    public static void load() {
+        try (InputStream in = new FileInputStream(System.getProperty("vault.config", "config.properties"))) {
+            Properties props = new Properties();
+            props.load(in);
+            System.setProperty("db.type", props.getProperty("db.type", "mysql"));
+            System.setProperty("db.url", props.getProperty("db.url"));
+            System.setProperty("db.username", props.getProperty("db.username", ""));
+            System.setProperty("db.password", props.getProperty("db.password", ""));
+            // Tuning keys (db.pool.*, ...) are passed through unless overridden with -D
+            for (String name : props.stringPropertyNames()) {
+                if (System.getProperty(name) == null) {
+                    System.setProperty(name, props.getProperty(name));
+                }
+            }
+        } catch (Exception e) {
+            System.setProperty("db.type", "mysql");
+            System.setProperty("db.url", "jdbc:mysql://localhost:3306/vaultdb");
+            System.setProperty("db.username", "root");
+            System.setProperty("db.password", "password");
+        }
+    }
+
+    /**
+     * Connect the pool, creating the tables first on SQLite.
+     */
+    public static DatabaseManager initializeDatabase() throws Exception {
+        DatabaseManager dbManager = DatabaseManager.getInstance();
+        if ("sqlite".equalsIgnoreCase(System.getProperty("db.type"))) {
+            dbManager.createTablesIfNotExist();
+        }
+        return dbManager;
+    }
+}
@@ -0,0 +1,77 @@
+package com.vault.core;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ByteBufferPool
+ * - Recycles fixed-capacity heap or direct ByteBuffers for bulk crypto / IO paths
+ * - At most maxPooled buffers are retained; extra releases are left to the GC
+ * - Released buffers are zeroed first, since they may have held plaintext
+ */
+public class ByteBufferPool {
+
+    private final int bufferSize;
+    private final int maxPooled;
+    private final boolean direct;
+    private final ConcurrentLinkedQueue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    public ByteBufferPool(int bufferSize, int maxPooled, boolean direct) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+        this.direct = direct;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * A cleared buffer with capacity of at least minCapacity.
+     * Requests larger than the pool's buffer size get a one-off allocation.
+     */
+    public ByteBuffer acquire(int minCapacity) {
+        if (minCapacity > bufferSize) {
+            return allocate(minCapacity);
+        }
+        ByteBuffer buf = free.poll();
+        if (buf == null) {
+            return allocate(bufferSize);
+        }
+        pooled.decrementAndGet();
+        buf.clear();
+        return buf;
+    }
+
+    public ByteBuffer acquire() {
+        return acquire(bufferSize);
+    }
+
+    public void release(ByteBuffer buf) {
+        if (buf == null || buf.capacity() != bufferSize || buf.isDirect() != direct) return;
+        wipe(buf);
+        if (pooled.incrementAndGet() <= maxPooled) {
+            free.offer(buf);
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    private static void wipe(ByteBuffer buf) {
+        buf.clear();
+        if (buf.hasArray()) {
+            Arrays.fill(buf.array(), buf.arrayOffset(), buf.arrayOffset() + buf.capacity(), (byte) 0);
+        } else {
+            while (buf.remaining() >= 8) buf.putLong(0L);
+            while (buf.hasRemaining()) buf.put((byte) 0);
+        }
+        buf.clear();
+    }
+}
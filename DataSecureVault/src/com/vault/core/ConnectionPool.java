@@ -0,0 +1,400 @@
+package com.vault.core;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ConnectionPool
+ * - Keeps between minSize and maxSize physical JDBC connections open
+ * - Hands out proxies whose close() returns the connection to the pool
+ * - Validates connections on borrow when they have been idle for a while
+ * - Evicts idle connections above minSize and reports leaked borrows; the borrow site's
+ *   stack trace is captured only when leakTrace is on, since it costs a Throwable per borrow
+ * - Records borrow latency (count / average / max) for diagnostics
+ * - Gives each physical connection its own PreparedStatement cache
+ */
+public class ConnectionPool {
+
+    /** Opens a new physical connection (DriverManager in production). */
+    public interface ConnectionFactory {
+        Connection create() throws SQLException;
+    }
+
+    /** Point-in-time snapshot of pool metrics. */
+    public static class PoolStats {
+        public final int total;
+        public final int idle;
+        public final int inUse;
+        public final long borrows;
+        public final long created;
+        public final long destroyed;
+        public final long validationFailures;
+        public final long leaksDetected;
+        public final double avgBorrowMillis;
+        public final double maxBorrowMillis;
+        public final long statementCacheHits;
+        public final long statementCacheMisses;
+        public final long statementCacheEvictions;
+
+        PoolStats(int total, int idle, int inUse, long borrows, long created, long destroyed,
+                  long validationFailures, long leaksDetected, double avgBorrowMillis, double maxBorrowMillis,
+                  long statementCacheHits, long statementCacheMisses, long statementCacheEvictions) {
+            this.total = total; this.idle = idle; this.inUse = inUse;
+            this.borrows = borrows; this.created = created; this.destroyed = destroyed;
+            this.validationFailures = validationFailures; this.leaksDetected = leaksDetected;
+            this.avgBorrowMillis = avgBorrowMillis; this.maxBorrowMillis = maxBorrowMillis;
+            this.statementCacheHits = statementCacheHits;
+            this.statementCacheMisses = statementCacheMisses;
+            this.statementCacheEvictions = statementCacheEvictions;
+        }
+
+        public double statementCacheHitRate() {
+            long lookups = statementCacheHits + statementCacheMisses;
+            return lookups == 0 ? 0 : statementCacheHits / (double) lookups;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("PoolStats{total=%d, idle=%d, inUse=%d, borrows=%d, created=%d, destroyed=%d, " +
+                            "validationFailures=%d, leaks=%d, avgBorrow=%.3fms, maxBorrow=%.3fms, " +
+                            "stmtCache hits=%d misses=%d evictions=%d}",
+                    total, idle, inUse, borrows, created, destroyed,
+                    validationFailures, leaksDetected, avgBorrowMillis, maxBorrowMillis,
+                    statementCacheHits, statementCacheMisses, statementCacheEvictions);
+        }
+    }
+
+    private final ConnectionFactory factory;
+    private final int minSize;
+    private final int maxSize;
+    private final long borrowTimeoutMs;
+    private final long idleTimeoutMs;
+    private final long validationIdleMs;
+    private final int validationTimeoutSec;
+    private final long leakThresholdMs;
+    private final boolean leakTrace;
+    private final int statementCacheSize;
+
+    private final LinkedBlockingDeque<PooledEntry> idle = new LinkedBlockingDeque<>();
+    private final Set<PooledEntry> inUse = ConcurrentHashMap.newKeySet();
+    private final Semaphore permits;
+    private final AtomicInteger total = new AtomicInteger();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed = false;
+
+    // metrics
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong borrowNanosTotal = new AtomicLong();
+    private final AtomicLong borrowNanosMax = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong destroyedCount = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+    private final AtomicLong leaksDetected = new AtomicLong();
+    private final StatementCache.Counters statementCounters = new StatementCache.Counters();
+
+    public ConnectionPool(ConnectionFactory factory, int minSize, int maxSize, long borrowTimeoutMs,
+                          long idleTimeoutMs, long validationIdleMs, int validationTimeoutSec,
+                          long leakThresholdMs, boolean leakTrace, long housekeepingIntervalMs,
+                          int statementCacheSize) {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+        }
+        this.factory = factory;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.borrowTimeoutMs = borrowTimeoutMs;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.validationIdleMs = validationIdleMs;
+        this.validationTimeoutSec = validationTimeoutSec;
+        this.leakThresholdMs = leakThresholdMs;
+        this.leakTrace = leakTrace && leakThresholdMs > 0;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "vault-db-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        housekeeper.scheduleWithFixedDelay(this::housekeep,
+                housekeepingIntervalMs, housekeepingIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    // ==================== Borrow / Return ====================
+
+    /**
+     * Borrow a connection. Closing the returned connection hands it back to the pool.
+     */
+    public Connection borrow() throws SQLException {
+        if (closed) throw new SQLException("Connection pool is closed");
+
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out after " + borrowTimeoutMs + " ms waiting for a database connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+
+        try {
+            PooledEntry entry;
+            while ((entry = idle.pollFirst()) != null) {
+                if (isUsable(entry)) break;
+                destroy(entry);
+            }
+            if (entry == null) {
+                entry = createEntry();
+            }
+
+            entry.borrowedAt = System.currentTimeMillis();
+            entry.borrowSite = leakTrace ? new Throwable("Connection borrowed here") : null;
+            inUse.add(entry);
+            recordBorrow(System.nanoTime() - start);
+            return entry.newHandle();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private void release(PooledEntry entry) {
+        inUse.remove(entry);
+        entry.borrowSite = null;
+        try {
+            if (closed || entry.raw.isClosed()) {
+                destroy(entry);
+            } else {
+                resetState(entry);
+                entry.lastUsed = System.currentTimeMillis();
+                idle.offerFirst(entry);
+            }
+        } catch (SQLException e) {
+            destroy(entry);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Undo per-borrow state so the next borrower sees a clean connection.
+     */
+    private void resetState(PooledEntry entry) throws SQLException {
+        Connection raw = entry.raw;
+        if (!raw.getAutoCommit()) {
+            raw.rollback();
+            raw.setAutoCommit(true);
+        }
+        raw.clearWarnings();
+    }
+
+    private boolean isUsable(PooledEntry entry) {
+        try {
+            if (entry.raw.isClosed()) return false;
+            long idleFor = System.currentTimeMillis() - entry.lastUsed;
+            if (idleFor < validationIdleMs) return true;
+            if (entry.raw.isValid(validationTimeoutSec)) return true;
+        } catch (SQLException ignored) {
+            // treated as a failed validation
+        }
+        validationFailures.incrementAndGet();
+        return false;
+    }
+
+    private PooledEntry createEntry() throws SQLException {
+        Connection raw = factory.create();
+        total.incrementAndGet();
+        createdCount.incrementAndGet();
+        return new PooledEntry(raw);
+    }
+
+    private void destroy(PooledEntry entry) {
+        total.decrementAndGet();
+        destroyedCount.incrementAndGet();
+        if (entry.statements != null) {
+            entry.statements.closeAll();
+        }
+        try {
+            entry.raw.close();
+        } catch (SQLException ignored) {
+            // connection is being discarded anyway
+        }
+    }
+
+    private void recordBorrow(long nanos) {
+        borrowCount.incrementAndGet();
+        borrowNanosTotal.addAndGet(nanos);
+        borrowNanosMax.accumulateAndGet(nanos, Math::max);
+    }
+
+    // ==================== Housekeeping ====================
+
+    /**
+     * Pre-open minSize connections so the first request doesn't pay the handshake.
+     */
+    public void warmUp() throws SQLException {
+        while (total.get() < minSize && !closed) {
+            PooledEntry entry = createEntry();
+            entry.lastUsed = System.currentTimeMillis();
+            idle.offerLast(entry);
+        }
+    }
+
+    private void housekeep() {
+        if (closed) return;
+        try {
+            evictIdle();
+            detectLeaks();
+            warmUp();
+        } catch (Exception e) {
+            System.err.println("Connection pool housekeeping failed: " + e.getMessage());
+        }
+    }
+
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        // Oldest-used connections sit at the tail of the deque.
+        PooledEntry entry;
+        while (total.get() > minSize && (entry = idle.peekLast()) != null
+                && now - entry.lastUsed > idleTimeoutMs) {
+            if (idle.removeLastOccurrence(entry)) {
+                destroy(entry);
+            }
+        }
+    }
+
+    private void detectLeaks() {
+        if (leakThresholdMs <= 0) return;
+        long now = System.currentTimeMillis();
+        for (PooledEntry entry : inUse) {
+            if (!entry.leakReported && now - entry.borrowedAt > leakThresholdMs) {
+                entry.leakReported = true;
+                leaksDetected.incrementAndGet();
+                System.err.println("Possible connection leak: held for " + (now - entry.borrowedAt) + " ms");
+                Throwable site = entry.borrowSite;
+                if (site != null) site.printStackTrace();
+            }
+        }
+    }
+
+    public PoolStats getStats() {
+        long borrows = borrowCount.get();
+        double avg = borrows == 0 ? 0 : borrowNanosTotal.get() / (double) borrows / 1_000_000.0;
+        return new PoolStats(total.get(), idle.size(), inUse.size(), borrows,
+                createdCount.get(), destroyedCount.get(), validationFailures.get(), leaksDetected.get(),
+                avg, borrowNanosMax.get() / 1_000_000.0,
+                statementCounters.hits.get(), statementCounters.misses.get(), statementCounters.evictions.get());
+    }
+
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledEntry entry;
+        while ((entry = idle.pollFirst()) != null) {
+            destroy(entry);
+        }
+        // Borrowed connections are destroyed when their holders close them.
+    }
+
+    // ==================== Pooled connection ====================
+
+    private class PooledEntry {
+        final Connection raw;
+        final StatementCache statements;
+        volatile long lastUsed = System.currentTimeMillis();
+        volatile long borrowedAt;
+        volatile Throwable borrowSite;
+        volatile boolean leakReported;
+
+        PooledEntry(Connection raw) {
+            this.raw = raw;
+            this.statements = statementCacheSize > 0
+                    ? new StatementCache(raw, statementCacheSize, statementCounters)
+                    : null;
+        }
+
+        /**
+         * Each borrow gets its own proxy so a late or double close() from a
+         * previous holder can never return someone else's connection.
+         */
+        Connection newHandle() {
+            leakReported = false;
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    new Handle(this));
+        }
+    }
+
+    private class Handle implements InvocationHandler {
+        private final PooledEntry entry;
+        private boolean closed = false;
+
+        Handle(PooledEntry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        release(entry);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || entry.raw.isClosed();
+                case "prepareStatement":
+                    if (!closed && entry.statements != null && isCacheable(args)) {
+                        int keys = args.length == 2 ? (Integer) args[1] : Statement.NO_GENERATED_KEYS;
+                        return entry.statements.prepare((String) args[0], keys);
+                    }
+                    break;
+                case "unwrap":
+                    if (((Class<?>) args[0]).isInstance(proxy)) return proxy;
+                    break;
+                case "isWrapperFor":
+                    if (((Class<?>) args[0]).isInstance(proxy)) return true;
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + entry.raw + (closed ? ", returned" : "") + "]";
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            try {
+                return method.invoke(entry.raw, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        /** Only prepareStatement(String) and prepareStatement(String, int autoGeneratedKeys) are cached. */
+        private boolean isCacheable(Object[] args) {
+            if (args.length == 1) return true;
+            return args.length == 2 && args[1] instanceof Integer;
+        }
+    }
+}
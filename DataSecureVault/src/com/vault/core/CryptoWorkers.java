@@ -0,0 +1,79 @@
+package com.vault.core;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * CryptoWorkers
+ * - One shared pool of daemon threads for CPU-bound file crypto (segments, chunks)
+ * - Size comes from crypto.parallelism (0 or unset = number of cores)
+ * - With parallelism 1 tasks run inline on the caller, so there are no thread hand-offs
+ */
+public class CryptoWorkers {
+
+    private static CryptoWorkers instance;
+
+    private final int parallelism;
+    private final ExecutorService pool;
+
+    private CryptoWorkers(int parallelism) {
+        this.parallelism = parallelism;
+        if (parallelism > 1) {
+            AtomicInteger n = new AtomicInteger();
+            this.pool = Executors.newFixedThreadPool(parallelism, r -> {
+                Thread t = new Thread(r, "vault-crypto-" + n.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        } else {
+            this.pool = null;
+        }
+    }
+
+    public static synchronized CryptoWorkers getInstance() {
+        if (instance == null) {
+            int configured = Integer.getInteger("crypto.parallelism", 0);
+            int cores = Runtime.getRuntime().availableProcessors();
+            instance = new CryptoWorkers(configured > 0 ? Math.min(configured, cores) : cores);
+        }
+        return instance;
+    }
+
+    /**
+     * A separate pool with an explicit size (benchmarks).
+     */
+    public static CryptoWorkers withParallelism(int parallelism) {
+        return new CryptoWorkers(Math.max(1, parallelism));
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * How many tasks a pipeline should keep in flight to keep every worker busy.
+     */
+    public int getWindow() {
+        return parallelism * 2;
+    }
+
+    public <T> Future<T> submit(Callable<T> task) {
+        if (pool == null) {
+            FutureTask<T> f = new FutureTask<>(task);
+            f.run();
+            return f;
+        }
+        return pool.submit(task);
+    }
+
+    /**
+     * Stop a pool made by withParallelism (the shared instance lives for the JVM).
+     */
+    public void shutdown() {
+        if (pool != null && this != instance) pool.shutdownNow();
+    }
+}
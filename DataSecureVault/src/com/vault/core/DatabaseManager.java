@@ -1,11 +1,14 @@
 package com.vault.core;
 
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
 
 public class DatabaseManager {
 
     private static DatabaseManager instance;
-    private Connection connection;
+    private ConnectionPool pool;
     private String dbType;
     private String dbUrl;
     private String dbUsername;
@@ -41,25 +44,71 @@ public class DatabaseManager {
             } else if ("mysql".equalsIgnoreCase(dbType)) {
                 Class.forName("com.mysql.cj.jdbc.Driver");
             }
+        } catch (ClassNotFoundException e) {
+            throw new SQLException("JDBC Driver not found: " + e.getMessage());
+        }
 
-            if (dbUsername.isEmpty()) {
-                connection = DriverManager.getConnection(dbUrl);
-            } else {
-                connection = DriverManager.getConnection(dbUrl, dbUsername, dbPassword);
-            }
+        // SQLite serialises writers on the file lock, so a single connection is enough there.
+        boolean sqlite = "sqlite".equalsIgnoreCase(dbType);
+        int maxSize = sqlite ? 1 : intProperty("db.pool.maxSize", 8);
+        int minSize = Math.min(maxSize, intProperty("db.pool.minSize", sqlite ? 1 : 2));
 
-            System.out.println("Database connected: " + dbType);
+        pool = new ConnectionPool(
+                this::openPhysicalConnection,
+                minSize,
+                maxSize,
+                longProperty("db.pool.borrowTimeoutMs", 10_000),
+                longProperty("db.pool.idleTimeoutMs", 300_000),
+                longProperty("db.pool.validationIdleMs", 5_000),
+                intProperty("db.pool.validationTimeoutSec", 2),
+                longProperty("db.pool.leakThresholdMs", 60_000),
+                Boolean.parseBoolean(System.getProperty("db.pool.leakTrace", "false")),
+                longProperty("db.pool.housekeepingIntervalMs", 30_000),
+                intProperty("db.pool.statementCacheSize", 32));
+        pool.warmUp();
 
-        } catch (ClassNotFoundException e) {
-            throw new SQLException("JDBC Driver not found: " + e.getMessage());
+        System.out.println("Database connected: " + dbType + " (pool " + minSize + ".." + maxSize + ")");
+    }
+
+    private Connection openPhysicalConnection() throws SQLException {
+        Properties info = new Properties();
+        if (!dbUsername.isEmpty()) {
+            info.setProperty("user", dbUsername);
+            info.setProperty("password", dbPassword);
+        }
+        // Let Connector/J send JDBC batches (audit log) as multi-row INSERTs; the URL still wins
+        if ("mysql".equalsIgnoreCase(dbType) && !dbUrl.contains("rewriteBatchedStatements")) {
+            info.setProperty("rewriteBatchedStatements", "true");
         }
+        return DriverManager.getConnection(dbUrl, info);
     }
 
-    public Connection getConnection() throws SQLException {
-        if (connection == null || connection.isClosed()) {
-            connect();
+    private static int intProperty(String name, int def) {
+        try {
+            return Integer.parseInt(System.getProperty(name, String.valueOf(def)).trim());
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+
+    private static long longProperty(String name, long def) {
+        try {
+            return Long.parseLong(System.getProperty(name, String.valueOf(def)).trim());
+        } catch (NumberFormatException e) {
+            return def;
         }
-        return connection;
+    }
+
+    /**
+     * Borrow a pooled connection. Callers must close it (try-with-resources),
+     * which returns it to the pool instead of tearing down the socket.
+     */
+    public Connection getConnection() throws SQLException {
+        return pool.borrow();
+    }
+
+    public ConnectionPool.PoolStats getPoolStats() {
+        return pool.getStats();
     }
 
     public void createTablesIfNotExist() throws SQLException {
@@ -67,8 +116,6 @@ public class DatabaseManager {
             return;
         }
 
-        Connection conn = getConnection();
-
         String createUsersTable =
                 "CREATE TABLE IF NOT EXISTS users (" +
                         "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
@@ -84,6 +131,7 @@ public class DatabaseManager {
                         "user_id INTEGER NOT NULL, " +
                         "key_name TEXT NOT NULL, " +
                         "encrypted_value TEXT NOT NULL, " +
+                        "cipher_format TEXT NOT NULL DEFAULT 'cbc', " +
                         "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
                         "updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
                         "FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE, " +
@@ -99,27 +147,154 @@ public class DatabaseManager {
                         "ip_address TEXT, " +
                         "FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE)";
 
-        try (Statement stmt = conn.createStatement()) {
+        String createTrigramTable =
+                "CREATE TABLE IF NOT EXISTS secret_key_trigrams (" +
+                        "user_id INTEGER NOT NULL, " +
+                        "trigram TEXT NOT NULL, " +
+                        "secret_id INTEGER NOT NULL, " +
+                        "PRIMARY KEY (user_id, trigram, secret_id), " +
+                        "FOREIGN KEY (secret_id) REFERENCES vault_data(id) ON DELETE CASCADE)";
+
+        String createVaultFilesTable =
+                "CREATE TABLE IF NOT EXISTS vault_files (" +
+                        "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                        "user_id INTEGER NOT NULL, " +
+                        "file_name TEXT NOT NULL, " +
+                        "file_type TEXT, " +
+                        "file_size INTEGER NOT NULL, " +
+                        "storage TEXT NOT NULL DEFAULT 'db', " +
+                        "compression TEXT NOT NULL DEFAULT 'none', " +
+                        "compression_index BLOB, " +
+                        "cipher_format TEXT NOT NULL DEFAULT 'cbc', " +
+                        "encrypted_data BLOB, " +
+                        "content_hash TEXT, " +
+                        "encrypted_size INTEGER, " +
+                        "manifest_mac TEXT, " +
+                        "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
+                        "FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE)";
+
+        String createChunkRefsTable =
+                "CREATE TABLE IF NOT EXISTS vault_chunk_refs (" +
+                        "user_id INTEGER NOT NULL, " +
+                        "chunk_hash TEXT NOT NULL, " +
+                        "ref_count INTEGER NOT NULL, " +
+                        "stored_size INTEGER NOT NULL, " +
+                        "released_at INTEGER, " +
+                        "PRIMARY KEY (user_id, chunk_hash), " +
+                        "FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE)";
+
+        String createFileChunksTable =
+                "CREATE TABLE IF NOT EXISTS vault_file_chunks (" +
+                        "file_id INTEGER NOT NULL, " +
+                        "chunk_index INTEGER NOT NULL, " +
+                        "chunk_hash TEXT NOT NULL, " +
+                        "plain_size INTEGER NOT NULL, " +
+                        "PRIMARY KEY (file_id, chunk_index), " +
+                        "FOREIGN KEY (file_id) REFERENCES vault_files(id) ON DELETE CASCADE)";
+
+        String createThumbnailsTable =
+                "CREATE TABLE IF NOT EXISTS vault_file_thumbnails (" +
+                        "file_id INTEGER PRIMARY KEY, " +
+                        "thumbnail BLOB NOT NULL, " +
+                        "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
+                        "FOREIGN KEY (file_id) REFERENCES vault_files(id) ON DELETE CASCADE)";
+
+        String createUploadSessionsTable =
+                "CREATE TABLE IF NOT EXISTS upload_sessions (" +
+                        "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                        "user_id INTEGER NOT NULL, " +
+                        "file_name TEXT NOT NULL, " +
+                        "file_type TEXT, " +
+                        "expected_size INTEGER NOT NULL, " +
+                        "next_chunk INTEGER NOT NULL DEFAULT 0, " +
+                        "received_size INTEGER NOT NULL DEFAULT 0, " +
+                        "last_activity INTEGER NOT NULL, " +
+                        "source_fingerprint TEXT, " +
+                        "FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE)";
+
+        String createUploadChunksTable =
+                "CREATE TABLE IF NOT EXISTS upload_session_chunks (" +
+                        "session_id INTEGER NOT NULL, " +
+                        "chunk_index INTEGER NOT NULL, " +
+                        "chunk_hash TEXT NOT NULL, " +
+                        "plain_size INTEGER NOT NULL, " +
+                        "PRIMARY KEY (session_id, chunk_index), " +
+                        "FOREIGN KEY (session_id) REFERENCES upload_sessions(id) ON DELETE CASCADE)";
+
+        try (Connection conn = getConnection();
+             Statement stmt = conn.createStatement()) {
             stmt.execute(createUsersTable);
             stmt.execute(createVaultDataTable);
+            // Databases from before cipher_format: every existing row there is legacy CBC
+            addColumnIfMissing(conn, "vault_data", "cipher_format", "TEXT NOT NULL DEFAULT 'cbc'");
             stmt.execute(createAccessLogsTable);
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_vault_user_updated ON vault_data (user_id, updated_at, id)");
+            stmt.execute(createTrigramTable);
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_trigram_secret ON secret_key_trigrams (secret_id)");
+            stmt.execute(createVaultFilesTable);
+            // File catalog: name lookup / by-name listing on (user_id, file_name, id), plus one index per other listing order
+            stmt.execute("DROP INDEX IF EXISTS idx_files_user_file");
+            stmt.execute("DROP INDEX IF EXISTS idx_files_user_name");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_files_user_name_id ON vault_files (user_id, file_name, id)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_files_user_size ON vault_files (user_id, file_size)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_files_user_newest ON vault_files (user_id, id)");
+            addColumnIfMissing(conn, "vault_files", "cipher_format", "TEXT NOT NULL DEFAULT 'cbc'");
+            addColumnIfMissing(conn, "vault_files", "manifest_mac", "TEXT");
+            addColumnIfMissing(conn, "vault_files", "compression_index", "BLOB");
+            addColumnIfMissing(conn, "vault_files", "encrypted_size", "INTEGER");
+            stmt.execute(createChunkRefsTable);
+            addColumnIfMissing(conn, "vault_chunk_refs", "released_at", "INTEGER");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_chunk_released ON vault_chunk_refs (released_at)");
+            stmt.execute(createFileChunksTable);
+            stmt.execute(createThumbnailsTable);
+            stmt.execute(createUploadSessionsTable);
+            addColumnIfMissing(conn, "upload_sessions", "source_fingerprint", "TEXT");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_upload_activity ON upload_sessions (last_activity)");
+            stmt.execute(createUploadChunksTable);
             System.out.println("SQLite tables created/verified");
         }
     }
 
-    public ResultSet executeQuery(String sql, Object... params) throws SQLException {
-        PreparedStatement pstmt = prepareStatement(sql, params);
-        return pstmt.executeQuery();
+    private static void addColumnIfMissing(Connection conn, String table, String column, String definition) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+                while (rs.next()) {
+                    if (column.equalsIgnoreCase(rs.getString("name"))) return;
+                }
+            }
+            stmt.execute("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+        }
+    }
+
+    /** Maps the current row of a ResultSet to a value. */
+    public interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * Run a query and map every row while the pooled connection is held,
+     * so neither the connection nor the statement outlives the call.
+     */
+    public <T> List<T> executeQuery(String sql, RowMapper<T> mapper, Object... params) throws SQLException {
+        List<T> out = new ArrayList<>();
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = prepareStatement(conn, sql, params);
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                out.add(mapper.map(rs));
+            }
+        }
+        return out;
     }
 
     public int executeUpdate(String sql, Object... params) throws SQLException {
-        try (PreparedStatement pstmt = prepareStatement(sql, params)) {
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = prepareStatement(conn, sql, params)) {
             return pstmt.executeUpdate();
         }
     }
 
-    private PreparedStatement prepareStatement(String sql, Object... params) throws SQLException {
-        Connection conn = getConnection();
+    private PreparedStatement prepareStatement(Connection conn, String sql, Object... params) throws SQLException {
         PreparedStatement pstmt = conn.prepareStatement(sql);
 
         for (int i = 0; i < params.length; i++) {
@@ -130,8 +305,8 @@ public class DatabaseManager {
     }
 
     public int executeInsertAndGetId(String sql, Object... params) throws SQLException {
-        Connection conn = getConnection();
-        try (PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             for (int i = 0; i < params.length; i++) {
                 pstmt.setObject(i + 1, params[i]);
             }
@@ -148,13 +323,9 @@ public class DatabaseManager {
     }
 
     public void close() {
-        try {
-            if (connection != null && !connection.isClosed()) {
-                connection.close();
-                System.out.println("Database connection closed");
-            }
-        } catch (SQLException e) {
-            System.err.println("Error closing database: " + e.getMessage());
+        if (pool != null) {
+            pool.close();
+            System.out.println("Database connection pool closed");
         }
     }
 
@@ -3,18 +3,28 @@ package com.vault.core;
 import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
 import java.security.SecureRandom;
+import java.util.Arrays;
 import java.util.Base64;
 import java.nio.charset.StandardCharsets;
 
 /**
  * EncryptionManager
  * - Derives AES-256 key from master password using PBKDF2WithHmacSHA256
- * - Encrypts/decrypts text (String) with AES/CBC/PKCS5Padding using random IV
- * - Encrypts/decrypts binary data (byte[]) for files using the same scheme
+ * - Encrypts text (String) and binary data (byte[]) into a versioned envelope:
+ *   format byte, algorithm id, key id, then AES-256-GCM nonce || ciphertext || tag
+ * - Decrypts legacy AES/CBC/PKCS5Padding blobs (bare IV prefix) only when the caller says the
+ *   value is legacy (its row's cipher_format); the format is never guessed from the bytes
+ * - Rejects envelopes sealed under a different key id instead of failing on the tag
+ * - Offers an allocation-light API over byte[] slices and ByteBuffers, reusing
+ *   one Cipher per thread and writing the envelope straight into the output
  * - Provides static password hashing utilities for user authentication
  */
 public class EncryptionManager {
@@ -24,105 +34,341 @@ public class EncryptionManager {
     private static final int KEY_LENGTH = 256;
 
     private final SecretKey secretKey;
+    private final byte keyId;
     private final SecureRandom secureRandom = new SecureRandom();
 
     public EncryptionManager(String masterPassword) throws Exception {
-        this.secretKey = deriveKey(masterPassword, SALT);
+        this.secretKey = new SecretKeySpec(deriveKeyBytes(masterPassword.toCharArray()), "AES");
+        this.keyId = DEFAULT_KEY_ID;
+    }
+
+    /**
+     * Use an already-derived key (see SessionKeyManager) instead of running PBKDF2 again.
+     */
+    public EncryptionManager(SecretKey secretKey) {
+        this(secretKey, DEFAULT_KEY_ID);
+    }
+
+    /**
+     * keyId is recorded in every envelope so a future key rotation can tell keys apart.
+     */
+    public EncryptionManager(SecretKey secretKey, byte keyId) {
+        this.secretKey = secretKey;
+        this.keyId = keyId;
     }
 
     // ==================== Key Derivation ====================
 
-    private SecretKey deriveKey(String password, String salt) throws Exception {
+    /**
+     * Run PBKDF2 over the master password and return the raw AES key bytes.
+     */
+    static byte[] deriveKeyBytes(char[] password) throws Exception {
         PBEKeySpec spec = new PBEKeySpec(
-                password.toCharArray(),
-                salt.getBytes(StandardCharsets.UTF_8),
+                password,
+                SALT.getBytes(StandardCharsets.UTF_8),
                 ITERATIONS,
                 KEY_LENGTH
         );
-        SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
-        byte[] keyBytes = factory.generateSecret(spec).getEncoded();
-        return new SecretKeySpec(keyBytes, "AES");
+        try {
+            SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
+            return factory.generateSecret(spec).getEncoded();
+        } finally {
+            spec.clearPassword();
+        }
     }
 
-    // ==================== TEXT ENCRYPTION (String) ====================
+    // ==================== Envelope format ====================
+    //
+    // v1 envelope:  [FORMAT_V1][alg id][key id][12-byte nonce][ciphertext || 16-byte GCM tag]
+    //               The 3 header bytes are authenticated as AAD.
+    // legacy:       [16-byte IV][AES/CBC/PKCS5Padding ciphertext]   (no header, always a multiple of 16)
+    //
+    // A legacy IV can start with the header bytes by chance, so the two can't be told apart
+    // reliably from the bytes. Rows record which one they hold (cipher_format: FORMAT_LEGACY_CBC
+    // or FORMAT_ENVELOPE) and callers pass the matching Algorithm; a v1 value that fails its tag
+    // check is an error, never a reason to try CBC.
+
+    /** Algorithms that can appear in an envelope (or, for CBC, the legacy format). */
+    public enum Algorithm {
+        AES_CBC((byte) 0), AES_GCM((byte) 1);
+
+        final byte id;
+
+        Algorithm(byte id) {
+            this.id = id;
+        }
+    }
 
-    public String encrypt(String plain) throws Exception {
-        if (plain == null) return null;
+    public static final byte FORMAT_V1 = (byte) 0xE1;
+    public static final byte DEFAULT_KEY_ID = 1;
 
-        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+    /** cipher_format column values: legacy CBC (rows written before the envelope format) and v1. */
+    public static final String FORMAT_LEGACY_CBC = "cbc";
+    public static final String FORMAT_ENVELOPE = "v1";
 
-        byte[] iv = new byte[16];
-        secureRandom.nextBytes(iv);
-        IvParameterSpec ivSpec = new IvParameterSpec(iv);
+    /**
+     * Algorithm for a cipher_format column value.
+     */
+    public static Algorithm algorithmFor(String cipherFormat) {
+        if (FORMAT_ENVELOPE.equals(cipherFormat)) return Algorithm.AES_GCM;
+        if (FORMAT_LEGACY_CBC.equals(cipherFormat)) return Algorithm.AES_CBC;
+        throw new IllegalArgumentException("Unknown cipher format: " + cipherFormat);
+    }
 
-        cipher.init(Cipher.ENCRYPT_MODE, secretKey, ivSpec);
-        byte[] encrypted = cipher.doFinal(plain.getBytes(StandardCharsets.UTF_8));
+    private static final int HEADER_LENGTH = 3;
+    private static final int GCM_NONCE_LENGTH = 12;
+    private static final int GCM_TAG_LENGTH = 16;
+    private static final int GCM_OVERHEAD = HEADER_LENGTH + GCM_NONCE_LENGTH + GCM_TAG_LENGTH;
 
-        byte[] combined = new byte[iv.length + encrypted.length];
-        System.arraycopy(iv, 0, combined, 0, iv.length);
-        System.arraycopy(encrypted, 0, combined, iv.length, encrypted.length);
+    private static final int IV_LENGTH = 16;
+    private static final int BLOCK_SIZE = 16;
 
-        return Base64.getEncoder().encodeToString(combined);
+    // ==================== Cipher reuse ====================
+
+    // Cipher.getInstance does a provider lookup each call; keep one per thread instead.
+    // Every operation re-inits the cipher with a fresh IV/nonce, so no state leaks between calls.
+    private static final ThreadLocal<Cipher> CBC_CIPHER = ThreadLocal.withInitial(() -> newCipher("AES/CBC/PKCS5Padding"));
+    private static final ThreadLocal<Cipher> GCM_CIPHER = ThreadLocal.withInitial(() -> newCipher("AES/GCM/NoPadding"));
+
+    private static Cipher newCipher(String transformation) {
+        try {
+            return Cipher.getInstance(transformation);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(transformation + " not available", e);
+        }
     }
 
-    public String decrypt(String base64Cipher) throws Exception {
-        if (base64Cipher == null) return null;
+    private Cipher cbc(int mode, byte[] iv, int ivOffset) throws GeneralSecurityException {
+        Cipher cipher = CBC_CIPHER.get();
+        cipher.init(mode, secretKey, new IvParameterSpec(iv, ivOffset, IV_LENGTH));
+        return cipher;
+    }
 
-        byte[] combined = Base64.getDecoder().decode(base64Cipher);
+    private Cipher gcm(int mode, byte[] header, int headerOffset) throws GeneralSecurityException {
+        Cipher cipher = GCM_CIPHER.get();
+        cipher.init(mode, secretKey, new GCMParameterSpec(GCM_TAG_LENGTH * 8, header,
+                headerOffset + HEADER_LENGTH, GCM_NONCE_LENGTH));
+        cipher.updateAAD(header, headerOffset, HEADER_LENGTH);
+        return cipher;
+    }
+
+    /**
+     * Size of an envelope for a plaintext of plainLength bytes (new writes use AES-GCM).
+     */
+    public static int encryptedLength(int plainLength) {
+        return GCM_OVERHEAD + plainLength;
+    }
+
+    private static int encryptedLength(int plainLength, Algorithm algorithm) {
+        return algorithm == Algorithm.AES_GCM
+                ? encryptedLength(plainLength)
+                : IV_LENGTH + (plainLength / BLOCK_SIZE + 1) * BLOCK_SIZE;
+    }
+
+    /**
+     * Reject anything in buf[off, off+len) that isn't a v1 AES-GCM envelope for this key.
+     */
+    private void checkEnvelope(byte[] buf, int off, int len) throws InvalidKeyException {
+        if (len < GCM_OVERHEAD || buf[off] != FORMAT_V1 || buf[off + 1] != Algorithm.AES_GCM.id) {
+            throw new IllegalArgumentException("Not a v1 AES-GCM envelope");
+        }
+        if (buf[off + 2] != keyId) {
+            throw new InvalidKeyException("Sealed with key id " + (buf[off + 2] & 0xFF) + ", not " + (keyId & 0xFF));
+        }
+    }
+
+    private static void checkLegacy(int len) {
+        if (len < IV_LENGTH + BLOCK_SIZE || len % BLOCK_SIZE != 0) {
+            throw new IllegalArgumentException("Not a legacy AES-CBC value");
+        }
+    }
+
+    public byte getKeyId() {
+        return keyId;
+    }
+
+    /**
+     * Segmented streaming cipher for files, sharing this manager's key and key id.
+     */
+    public SegmentedCipher segmented() {
+        return new SegmentedCipher(secretKey, keyId);
+    }
+
+    // ==================== TEXT ENCRYPTION (String) ====================
 
-        byte[] iv = new byte[16];
-        byte[] encrypted = new byte[combined.length - 16];
-        System.arraycopy(combined, 0, iv, 0, 16);
-        System.arraycopy(combined, 16, encrypted, 0, encrypted.length);
+    public String encrypt(String plain) throws Exception {
+        if (plain == null) return null;
+        byte[] data = plain.getBytes(StandardCharsets.UTF_8);
+        byte[] combined = new byte[encryptedLength(data.length)];
+        encrypt(data, 0, data.length, combined, 0);
+        return Base64.getEncoder().encodeToString(combined);
+    }
 
-        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
-        IvParameterSpec ivSpec = new IvParameterSpec(iv);
-        cipher.init(Cipher.DECRYPT_MODE, secretKey, ivSpec);
+    public String decrypt(String base64Cipher) throws Exception {
+        return decrypt(base64Cipher, Algorithm.AES_GCM);
+    }
 
-        byte[] plain = cipher.doFinal(encrypted);
-        return new String(plain, StandardCharsets.UTF_8);
+    /**
+     * Decrypt a value stored in the given format (see algorithmFor).
+     */
+    public String decrypt(String base64Cipher, Algorithm format) throws Exception {
+        if (base64Cipher == null) return null;
+        byte[] combined = Base64.getDecoder().decode(base64Cipher);
+        int n = decryptInPlace(combined, 0, combined.length, format);
+        return new String(combined, 0, n, StandardCharsets.UTF_8);
     }
 
     // ==================== FILE ENCRYPTION (byte[]) ====================
 
     /**
-     * Encrypt raw file bytes. Returns IV || CIPHERTEXT (binary).
+     * Encrypt raw file bytes into a v1 envelope (AES-GCM).
      */
     public byte[] encryptFile(byte[] fileData) throws Exception {
+        return encryptFile(fileData, Algorithm.AES_GCM);
+    }
+
+    /**
+     * Encrypt with an explicit algorithm. AES_CBC produces the legacy IV || CIPHERTEXT
+     * format and exists for compatibility testing and benchmarks only.
+     */
+    public byte[] encryptFile(byte[] fileData, Algorithm algorithm) throws Exception {
         if (fileData == null) return null;
+        byte[] combined = new byte[encryptedLength(fileData.length, algorithm)];
+        int n = encrypt(fileData, 0, fileData.length, combined, 0, algorithm);
+        return n == combined.length ? combined : Arrays.copyOf(combined, n);
+    }
 
-        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+    /**
+     * Decrypt a v1 envelope back to raw file bytes.
+     */
+    public byte[] decryptFile(byte[] encryptedData) throws Exception {
+        return decryptFile(encryptedData, Algorithm.AES_GCM);
+    }
 
-        byte[] iv = new byte[16];
-        secureRandom.nextBytes(iv);
-        IvParameterSpec ivSpec = new IvParameterSpec(iv);
+    /**
+     * Decrypt a v1 envelope (AES_GCM) or a legacy IV || CIPHERTEXT blob (AES_CBC).
+     */
+    public byte[] decryptFile(byte[] encryptedData, Algorithm format) throws Exception {
+        if (encryptedData == null || encryptedData.length < 17) return null;
+        byte[] copy = encryptedData.clone();
+        int n = decryptInPlace(copy, 0, copy.length, format);
+        return n == copy.length ? copy : Arrays.copyOf(copy, n);
+    }
 
-        cipher.init(Cipher.ENCRYPT_MODE, secretKey, ivSpec);
-        byte[] encrypted = cipher.doFinal(fileData);
+    // ==================== SLICE / BYTEBUFFER API ====================
 
-        byte[] combined = new byte[iv.length + encrypted.length];
-        System.arraycopy(iv, 0, combined, 0, iv.length);
-        System.arraycopy(encrypted, 0, combined, iv.length, encrypted.length);
+    /**
+     * Encrypt in[inOff, inOff+len) and write an envelope at out[outOff].
+     * out needs encryptedLength(len) bytes of room. Returns the number of bytes written.
+     */
+    public int encrypt(byte[] in, int inOff, int len, byte[] out, int outOff) throws Exception {
+        return encrypt(in, inOff, len, out, outOff, Algorithm.AES_GCM);
+    }
+
+    private int encrypt(byte[] in, int inOff, int len, byte[] out, int outOff, Algorithm algorithm) throws Exception {
+        if (algorithm == Algorithm.AES_CBC) {
+            byte[] iv = new byte[IV_LENGTH];
+            secureRandom.nextBytes(iv);
+            System.arraycopy(iv, 0, out, outOff, IV_LENGTH);
+            Cipher cipher = cbc(Cipher.ENCRYPT_MODE, out, outOff);
+            return IV_LENGTH + cipher.doFinal(in, inOff, len, out, outOff + IV_LENGTH);
+        }
 
-        return combined;
+        byte[] header = newHeader();
+        System.arraycopy(header, 0, out, outOff, header.length);
+        Cipher cipher = gcm(Cipher.ENCRYPT_MODE, header, 0);
+        return header.length + cipher.doFinal(in, inOff, len, out, outOff + header.length);
+    }
+
+    /** header || nonce for a new envelope */
+    private byte[] newHeader() {
+        byte[] header = new byte[HEADER_LENGTH + GCM_NONCE_LENGTH];
+        header[0] = FORMAT_V1;
+        header[1] = Algorithm.AES_GCM.id;
+        header[2] = keyId;
+        byte[] nonce = new byte[GCM_NONCE_LENGTH];
+        secureRandom.nextBytes(nonce);
+        System.arraycopy(nonce, 0, header, HEADER_LENGTH, GCM_NONCE_LENGTH);
+        return header;
     }
 
     /**
-     * Decrypt IV || CIPHERTEXT back to raw file bytes.
+     * Decrypt a v1 envelope held in buf[off, off+len) in place.
+     * The plaintext starts at buf[off]; returns its length.
      */
-    public byte[] decryptFile(byte[] encryptedData) throws Exception {
-        if (encryptedData == null || encryptedData.length < 17) return null;
+    public int decryptInPlace(byte[] buf, int off, int len) throws Exception {
+        return decryptInPlace(buf, off, len, Algorithm.AES_GCM);
+    }
 
-        byte[] iv = new byte[16];
-        byte[] encrypted = new byte[encryptedData.length - 16];
-        System.arraycopy(encryptedData, 0, iv, 0, 16);
-        System.arraycopy(encryptedData, 16, encrypted, 0, encrypted.length);
+    /**
+     * As decryptInPlace, for a value the caller knows to be in format. A failed tag check
+     * or a key id mismatch throws; there is no fallback to the other format.
+     */
+    public int decryptInPlace(byte[] buf, int off, int len, Algorithm format) throws Exception {
+        if (format == Algorithm.AES_CBC) {
+            checkLegacy(len);
+            Cipher cipher = cbc(Cipher.DECRYPT_MODE, buf, off);
+            // The JCE handles the overlapping input/output ranges
+            return cipher.doFinal(buf, off + IV_LENGTH, len - IV_LENGTH, buf, off);
+        }
+        checkEnvelope(buf, off, len);
+        int headerLength = HEADER_LENGTH + GCM_NONCE_LENGTH;
+        Cipher cipher = gcm(Cipher.DECRYPT_MODE, buf, off);
+        // GCM releases no plaintext before the tag verifies, so overlapping output is safe
+        return cipher.doFinal(buf, off + headerLength, len - headerLength, buf, off);
+    }
 
-        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
-        IvParameterSpec ivSpec = new IvParameterSpec(iv);
-        cipher.init(Cipher.DECRYPT_MODE, secretKey, ivSpec);
+    /**
+     * Encrypt plain's remaining bytes into out as an envelope.
+     * Both buffers' positions advance; returns the number of bytes written.
+     */
+    public int encrypt(ByteBuffer plain, ByteBuffer out) throws Exception {
+        int needed = encryptedLength(plain.remaining());
+        if (out.remaining() < needed) {
+            throw new IllegalArgumentException("Output buffer needs " + needed + " bytes");
+        }
+        byte[] header = newHeader();
+        out.put(header);
+        Cipher cipher = gcm(Cipher.ENCRYPT_MODE, header, 0);
+        return header.length + cipher.doFinal(plain, out);
+    }
+
+    /**
+     * Encrypt into a buffer taken from pool (flipped, ready to read).
+     * Release it back to the pool when done.
+     */
+    public ByteBuffer encrypt(ByteBuffer plain, ByteBufferPool pool) throws Exception {
+        ByteBuffer out = pool.acquire(encryptedLength(plain.remaining()));
+        try {
+            encrypt(plain, out);
+        } catch (Exception e) {
+            pool.release(out);
+            throw e;
+        }
+        out.flip();
+        return out;
+    }
+
+    /**
+     * Decrypt a v1 envelope from in's remaining bytes into out.
+     * Returns the plaintext length. in and out may be the same heap buffer
+     * (plaintext then starts where the header was).
+     */
+    public int decrypt(ByteBuffer in, ByteBuffer out) throws Exception {
+        if (in == out) {
+            if (!in.hasArray()) throw new IllegalArgumentException("In-place decrypt needs a heap buffer");
+            int start = in.position();
+            int n = decryptInPlace(in.array(), in.arrayOffset() + start, in.remaining());
+            in.position(start + n);
+            return n;
+        }
 
-        return cipher.doFinal(encrypted);
+        int len = in.remaining();
+        byte[] head = new byte[Math.min(len, HEADER_LENGTH + GCM_NONCE_LENGTH)];
+        in.get(head);
+        checkEnvelope(head, 0, len);
+        Cipher cipher = gcm(Cipher.DECRYPT_MODE, head, 0);
+        return cipher.doFinal(in, out);
     }
 
     // ==================== PASSWORD HASHING (Static Utilities) ====================
@@ -0,0 +1,239 @@
+package com.vault.core;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.LongConsumer;
+
+/**
+ * ParallelSegmentCipher
+ * - Encrypts / decrypts the segments of a SegmentedCipher stream on CryptoWorkers
+ * - The calling thread reads segments and hands them out; results are returned strictly
+ *   in segment order, so the output is byte-for-byte what the sequential streams produce
+ * - At most CryptoWorkers.getWindow() segments are in flight per stream
+ * - Segment buffers come from a ByteBufferPool and are wiped and reused
+ * - decryptTo() decrypts into pooled direct buffers and writes them straight to a channel
+ * - The streams fall back to the sequential ones when parallelism is 1
+ */
+public class ParallelSegmentCipher {
+
+    private final SegmentedCipher cipher;
+    private final CryptoWorkers workers;
+    private final ByteBufferPool buffers;
+    private final ByteBufferPool directBuffers;
+
+    public ParallelSegmentCipher(SegmentedCipher cipher, int segmentSize) {
+        this(cipher, segmentSize, CryptoWorkers.getInstance());
+    }
+
+    public ParallelSegmentCipher(SegmentedCipher cipher, int segmentSize, CryptoWorkers workers) {
+        this.cipher = cipher;
+        this.workers = workers;
+        // Two buffers per in-flight segment (input + output), plus the one being read out
+        this.buffers = new ByteBufferPool(segmentSize + SegmentedCipher.TAG_LENGTH,
+                workers.getWindow() * 2 + 2, false);
+        this.directBuffers = new ByteBufferPool(segmentSize, workers.getWindow() + 1, true);
+    }
+
+    public int getParallelism() {
+        return workers.getParallelism();
+    }
+
+    public InputStream encryptingStream(InputStream plaintext, int segmentSize) {
+        if (workers.getParallelism() <= 1) return cipher.encryptingStream(plaintext, segmentSize);
+        return new OrderedStream(plaintext, cipher.newHeader(segmentSize), false);
+    }
+
+    public InputStream decryptingStream(InputStream ciphertext) {
+        if (workers.getParallelism() <= 1) return cipher.decryptingStream(ciphertext);
+        return new OrderedStream(ciphertext, null, false);
+    }
+
+    /**
+     * Decrypt a segmented stream into out. Plaintext lands in direct buffers that are handed
+     * to the channel as-is, so it is never copied through the heap. progress gets the running
+     * total after every segment. Returns plaintext bytes written.
+     */
+    public long decryptTo(InputStream ciphertext, WritableByteChannel out, LongConsumer progress) throws IOException {
+        try (OrderedStream segments = new OrderedStream(ciphertext, null, true)) {
+            return segments.transferTo(out, progress);
+        }
+    }
+
+    private void release(ByteBuffer buf) {
+        (buf.isDirect() ? directBuffers : buffers).release(buf);
+    }
+
+    /** A finished segment: data in buf[0, len). */
+    private static class Done {
+        final ByteBuffer buf;
+        final int len;
+
+        Done(ByteBuffer buf, int len) {
+            this.buf = buf;
+            this.len = len;
+        }
+    }
+
+    /**
+     * Encrypting when created with a header, decrypting (header read from the input) otherwise.
+     */
+    private class OrderedStream extends InputStream {
+        private final InputStream in;
+        private final boolean encrypting;
+        private final ArrayDeque<Future<Done>> pending = new ArrayDeque<>();
+        private SegmentedCipher.Header header;
+        private int carry = -1;          // look-ahead byte that tells whether a segment is the last
+        private long index = 0;
+        private boolean sourceDone = false;
+        private Done current;
+        private int pos;
+        private boolean closed = false;
+        private final boolean direct;
+
+        OrderedStream(InputStream in, SegmentedCipher.Header header, boolean direct) {
+            this.in = in;
+            this.encrypting = header != null;
+            this.header = header;
+            this.direct = direct;
+            if (encrypting) {
+                pending.add(CompletableFuture.completedFuture(new Done(ByteBuffer.wrap(header.bytes), header.bytes.length)));
+            }
+        }
+
+        private void fillWindow() throws IOException {
+            if (header == null) {
+                byte[] h = new byte[SegmentedCipher.HEADER_LENGTH];
+                if (in.readNBytes(h, 0, h.length) != h.length) throw new EOFException("Truncated stream header");
+                header = SegmentedCipher.parseHeader(h);
+            }
+            while (!sourceDone && pending.size() < workers.getWindow()) {
+                submitNext();
+            }
+        }
+
+        private void submitNext() throws IOException {
+            int want = encrypting ? header.segmentSize : header.segmentSize + SegmentedCipher.TAG_LENGTH;
+            ByteBuffer inBuf = buffers.acquire(want);
+            byte[] a = inBuf.array();
+            int n = 0;
+            if (carry >= 0) {
+                a[0] = (byte) carry;
+                n = 1;
+            }
+            n += in.readNBytes(a, n, want - n);
+            carry = n == want ? in.read() : -1;
+            boolean last = carry == -1;
+            if (!encrypting && n < SegmentedCipher.TAG_LENGTH) {
+                release(inBuf);
+                throw new EOFException("Truncated ciphertext segment");
+            }
+
+            final long idx = index++;
+            final int len = n;
+            final SegmentedCipher.Header h = header;
+            pending.add(workers.submit(() -> {
+                int outLen = encrypting ? len + SegmentedCipher.TAG_LENGTH : len - SegmentedCipher.TAG_LENGTH;
+                ByteBuffer out = direct ? directBuffers.acquire(outLen) : buffers.acquire(outLen);
+                try {
+                    int produced;
+                    if (encrypting) {
+                        produced = cipher.encryptSegment(h, idx, last, a, 0, len, out.array(), 0);
+                    } else if (direct) {
+                        produced = cipher.decryptSegment(h, idx, last, ByteBuffer.wrap(a, 0, len), out);
+                    } else {
+                        produced = cipher.decryptSegment(h, idx, last, a, 0, len, out.array(), 0);
+                    }
+                    return new Done(out, produced);
+                } catch (Exception e) {
+                    release(out);
+                    throw e;
+                } finally {
+                    release(inBuf);
+                }
+            }));
+            if (last) sourceDone = true;
+        }
+
+        private boolean advance() throws IOException {
+            if (current != null) {
+                release(current.buf);
+                current = null;
+            }
+            fillWindow();
+            Future<Done> next = pending.poll();
+            if (next == null) return false;
+            try {
+                current = next.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted", e);
+            } catch (ExecutionException e) {
+                long failed = index - pending.size() - 1;
+                throw new IOException(encrypting ? "Segment encryption failed"
+                        : "Segment " + failed + " failed authentication", e.getCause());
+            }
+            pos = 0;
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (closed) throw new IOException("Stream closed");
+            if (len == 0) return 0;
+            while (current == null || pos == current.len) {
+                if (!advance()) return -1;
+            }
+            int n = Math.min(len, current.len - pos);
+            System.arraycopy(current.buf.array(), pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        long transferTo(WritableByteChannel out, LongConsumer progress) throws IOException {
+            long total = 0;
+            while (advance()) {
+                ByteBuffer b = current.buf.duplicate();
+                b.clear().limit(current.len);
+                while (b.hasRemaining()) out.write(b);
+                total += current.len;
+                if (progress != null) progress.accept(total);
+            }
+            return total;
+        }
+
+        @Override
+        public int available() {
+            return current == null ? 0 : current.len - pos;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            if (current != null) release(current.buf);
+            current = null;
+            // Let in-flight segments finish so every buffer is wiped on release
+            for (Future<Done> f : pending) {
+                try {
+                    release(f.get().buf);
+                } catch (Exception ignored) {
+                }
+            }
+            pending.clear();
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,419 @@
+package com.vault.core;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * SegmentedCipher
+ * - Streaming AES-256-GCM for files: plaintext is cut into fixed-size segments,
+ *   each encrypted and authenticated on its own, so memory stays bounded by one segment
+ * - Stream layout:
+ *     header  = [FORMAT_STREAM_V1][alg id][key id][segment size: 4 bytes][nonce prefix: 7 bytes]
+ *     segment = ciphertext || 16-byte tag
+ * - Segment nonce = nonce prefix || segment index (4 bytes) || last-segment flag (1 byte),
+ *   and the header is AAD, so segments can't be reordered, dropped, truncated or moved between files
+ * - Segments can also be located and decrypted individually (random access)
+ * - A parsed header's segment size must lie in [1, MAX_SEGMENT_SIZE] before any buffer is sized
+ *   from it, and segments sealed under another key id are rejected
+ */
+public class SegmentedCipher {
+
+    public static final byte FORMAT_STREAM_V1 = (byte) 0xE2;
+    public static final int HEADER_LENGTH = 14;
+    public static final int TAG_LENGTH = 16;
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024;
+    /** Largest segment size written or accepted; buffers are sized from the header. */
+    public static final int MAX_SEGMENT_SIZE = 8 * 1024 * 1024;
+
+    private static final byte ALG_AES_GCM = 1;
+    private static final int NONCE_PREFIX_LENGTH = 7;
+    private static final int NONCE_LENGTH = 12;
+
+    private static final ThreadLocal<Cipher> GCM_CIPHER = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance("AES/GCM/NoPadding");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES/GCM not available", e);
+        }
+    });
+
+    private final SecretKey key;
+    private final byte keyId;
+    private final SecureRandom secureRandom = new SecureRandom();
+
+    SegmentedCipher(SecretKey key, byte keyId) {
+        this.key = key;
+        this.keyId = keyId;
+    }
+
+    // ==================== Header ====================
+
+    /** Parsed stream header. */
+    public static class Header {
+        public final byte[] bytes;
+        public final int segmentSize;
+
+        Header(byte[] bytes) {
+            this.bytes = bytes;
+            this.segmentSize = ((bytes[3] & 0xFF) << 24) | ((bytes[4] & 0xFF) << 16)
+                    | ((bytes[5] & 0xFF) << 8) | (bytes[6] & 0xFF);
+        }
+
+        /** Stream offset of ciphertext segment index. */
+        public long segmentOffset(long index) {
+            return HEADER_LENGTH + index * (long) (segmentSize + TAG_LENGTH);
+        }
+
+        /** Number of segments for a plaintext of plainLength bytes (always at least one). */
+        public long segmentCount(long plainLength) {
+            return Math.max(1, (plainLength + segmentSize - 1) / segmentSize);
+        }
+
+        /** Plaintext length of a whole stream of ciphertextLength bytes (header included). */
+        public long plaintextLength(long ciphertextLength) throws IOException {
+            long body = ciphertextLength - HEADER_LENGTH;
+            long full = segmentSize + (long) TAG_LENGTH;
+            long rest = body % full;
+            if (body < TAG_LENGTH || (rest > 0 && rest < TAG_LENGTH)) throw new IOException("Truncated ciphertext stream");
+            return body / full * segmentSize + (rest > 0 ? rest - TAG_LENGTH : 0);
+        }
+    }
+
+    public Header newHeader(int segmentSize) {
+        if (segmentSize < 1 || segmentSize > MAX_SEGMENT_SIZE) {
+            throw new IllegalArgumentException("segmentSize must be between 1 and " + MAX_SEGMENT_SIZE);
+        }
+        byte[] h = new byte[HEADER_LENGTH];
+        h[0] = FORMAT_STREAM_V1;
+        h[1] = ALG_AES_GCM;
+        h[2] = keyId;
+        h[3] = (byte) (segmentSize >>> 24);
+        h[4] = (byte) (segmentSize >>> 16);
+        h[5] = (byte) (segmentSize >>> 8);
+        h[6] = (byte) segmentSize;
+        byte[] prefix = new byte[NONCE_PREFIX_LENGTH];
+        secureRandom.nextBytes(prefix);
+        System.arraycopy(prefix, 0, h, 7, NONCE_PREFIX_LENGTH);
+        return new Header(h);
+    }
+
+    public static Header parseHeader(byte[] h) throws IOException {
+        if (!isSegmented(h, h.length)) throw new IOException("Not a segmented ciphertext stream");
+        Header header = new Header(Arrays.copyOf(h, HEADER_LENGTH));
+        // Checked here, before a caller allocates segment buffers from it
+        if (header.segmentSize < 1 || header.segmentSize > MAX_SEGMENT_SIZE) {
+            throw new IOException("Corrupt stream header: segment size " + header.segmentSize);
+        }
+        return header;
+    }
+
+    /** True when the first bytes of a blob are a segmented-stream header. */
+    public static boolean isSegmented(byte[] first, int len) {
+        return len >= HEADER_LENGTH && first[0] == FORMAT_STREAM_V1 && first[1] == ALG_AES_GCM;
+    }
+
+    /** Total ciphertext length for a plaintext of plainLength bytes. */
+    public static long ciphertextLength(long plainLength, int segmentSize) {
+        long segments = Math.max(1, (plainLength + segmentSize - 1) / segmentSize);
+        return HEADER_LENGTH + plainLength + segments * TAG_LENGTH;
+    }
+
+    // ==================== Segment operations ====================
+
+    private Cipher init(int mode, Header header, long index, boolean last) throws GeneralSecurityException {
+        if (index < 0 || index > 0xFFFFFFFFL) throw new GeneralSecurityException("Segment index out of range");
+        if (header.bytes[2] != keyId) {
+            throw new InvalidKeyException("Stream sealed with key id " + (header.bytes[2] & 0xFF) + ", not " + (keyId & 0xFF));
+        }
+        byte[] nonce = new byte[NONCE_LENGTH];
+        System.arraycopy(header.bytes, 7, nonce, 0, NONCE_PREFIX_LENGTH);
+        nonce[7] = (byte) (index >>> 24);
+        nonce[8] = (byte) (index >>> 16);
+        nonce[9] = (byte) (index >>> 8);
+        nonce[10] = (byte) index;
+        nonce[11] = (byte) (last ? 1 : 0);
+
+        Cipher cipher = GCM_CIPHER.get();
+        cipher.init(mode, key, new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+        cipher.updateAAD(header.bytes);
+        return cipher;
+    }
+
+    /** Encrypt one segment; out needs len + TAG_LENGTH bytes. Returns bytes written. */
+    public int encryptSegment(Header header, long index, boolean last,
+                              byte[] in, int inOff, int len, byte[] out, int outOff) throws GeneralSecurityException {
+        return init(Cipher.ENCRYPT_MODE, header, index, last).doFinal(in, inOff, len, out, outOff);
+    }
+
+    /** Decrypt one segment; out needs len - TAG_LENGTH bytes. Returns plaintext length. */
+    public int decryptSegment(Header header, long index, boolean last,
+                              byte[] in, int inOff, int len, byte[] out, int outOff) throws GeneralSecurityException {
+        return init(Cipher.DECRYPT_MODE, header, index, last).doFinal(in, inOff, len, out, outOff);
+    }
+
+    /** Decrypt one segment from a ByteBuffer into a (possibly direct) ByteBuffer. */
+    public int decryptSegment(Header header, long index, boolean last,
+                              ByteBuffer in, ByteBuffer out) throws GeneralSecurityException {
+        return init(Cipher.DECRYPT_MODE, header, index, last).doFinal(in, out);
+    }
+
+    // ==================== Streams ====================
+
+    /**
+     * Copy plaintext to out as a segmented ciphertext stream. Returns plaintext bytes read.
+     */
+    public long encrypt(InputStream plaintext, OutputStream out, int segmentSize) throws IOException {
+        EncryptingInputStream enc = new EncryptingInputStream(plaintext, newHeader(segmentSize));
+        try {
+            copy(enc, out, segmentSize);
+            return enc.plainBytes;
+        } finally {
+            enc.close();
+        }
+    }
+
+    /**
+     * An InputStream of ciphertext produced lazily from plaintext (e.g. for setBinaryStream).
+     */
+    public InputStream encryptingStream(InputStream plaintext, int segmentSize) {
+        return new EncryptingInputStream(plaintext, newHeader(segmentSize));
+    }
+
+    /**
+     * An InputStream of plaintext decrypted lazily from a segmented ciphertext stream.
+     */
+    public InputStream decryptingStream(InputStream ciphertext) {
+        return new DecryptingInputStream(ciphertext);
+    }
+
+    static long copy(InputStream in, OutputStream out, int bufferSize) throws IOException {
+        byte[] buf = new byte[Math.max(8192, Math.min(bufferSize, 1 << 20))];
+        long total = 0;
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            out.write(buf, 0, n);
+            total += n;
+        }
+        return total;
+    }
+
+    /** Read up to len bytes, stopping only at EOF. */
+    static int readFully(InputStream in, byte[] buf, int off, int len) throws IOException {
+        int total = 0;
+        while (total < len) {
+            int n = in.read(buf, off + total, len - total);
+            if (n == -1) break;
+            total += n;
+        }
+        return total;
+    }
+
+    private class EncryptingInputStream extends FilterInputStream {
+        private final Header header;
+        private final byte[] plain;      // segment + 1 byte look-ahead
+        private final byte[] cipher;
+        private int plainFill = 0;
+        private int cipherPos = 0;
+        private int cipherLen = 0;
+        private long index = 0;
+        private boolean headerSent = false;
+        private boolean done = false;
+        long plainBytes = 0;
+
+        EncryptingInputStream(InputStream in, Header header) {
+            super(in);
+            this.header = header;
+            this.plain = new byte[header.segmentSize + 1];
+            this.cipher = new byte[header.segmentSize + TAG_LENGTH];
+        }
+
+        private boolean fill() throws IOException {
+            if (!headerSent) {
+                System.arraycopy(header.bytes, 0, cipher, 0, HEADER_LENGTH);
+                cipherPos = 0;
+                cipherLen = HEADER_LENGTH;
+                headerSent = true;
+                return true;
+            }
+            if (done) return false;
+
+            int want = header.segmentSize + 1;
+            plainFill += readFully(in, plain, plainFill, want - plainFill);
+            boolean last = plainFill <= header.segmentSize;
+            int segLen = last ? plainFill : header.segmentSize;
+            try {
+                cipherLen = encryptSegment(header, index++, last, plain, 0, segLen, cipher, 0);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Segment encryption failed", e);
+            }
+            plainBytes += segLen;
+            cipherPos = 0;
+            if (last) {
+                done = true;
+                plainFill = 0;
+            } else {
+                plain[0] = plain[header.segmentSize];   // carry the look-ahead byte
+                plainFill = 1;
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (cipherPos == cipherLen && !fill()) return -1;
+            int n = Math.min(len, cipherLen - cipherPos);
+            System.arraycopy(cipher, cipherPos, b, off, n);
+            cipherPos += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = 0;
+            byte[] scratch = new byte[4096];
+            while (skipped < n) {
+                int r = read(scratch, 0, (int) Math.min(scratch.length, n - skipped));
+                if (r == -1) break;
+                skipped += r;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return cipherLen - cipherPos;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            Arrays.fill(plain, (byte) 0);
+            super.close();
+        }
+    }
+
+    private class DecryptingInputStream extends FilterInputStream {
+        private Header header;
+        private byte[] cipher;           // segment + tag + 1 byte look-ahead
+        private byte[] plain;
+        private int cipherFill = 0;
+        private int plainPos = 0;
+        private int plainLen = 0;
+        private long index = 0;
+        private boolean done = false;
+
+        DecryptingInputStream(InputStream in) {
+            super(in);
+        }
+
+        private boolean fill() throws IOException {
+            if (done) return false;
+            if (header == null) {
+                byte[] h = new byte[HEADER_LENGTH];
+                if (readFully(in, h, 0, HEADER_LENGTH) != HEADER_LENGTH) throw new EOFException("Truncated stream header");
+                header = parseHeader(h);
+                cipher = new byte[header.segmentSize + TAG_LENGTH + 1];
+                plain = new byte[header.segmentSize];
+            }
+
+            int want = header.segmentSize + TAG_LENGTH + 1;
+            cipherFill += readFully(in, cipher, cipherFill, want - cipherFill);
+            boolean last = cipherFill < want;
+            int segLen = last ? cipherFill : want - 1;
+            if (segLen < TAG_LENGTH) throw new EOFException("Truncated ciphertext segment");
+            try {
+                plainLen = decryptSegment(header, index++, last, cipher, 0, segLen, plain, 0);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Segment " + (index - 1) + " failed authentication", e);
+            }
+            plainPos = 0;
+            if (last) {
+                done = true;
+            } else {
+                cipher[0] = cipher[want - 1];
+                cipherFill = 1;
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            while (plainPos == plainLen) {
+                if (!fill()) return -1;
+            }
+            int n = Math.min(len, plainLen - plainPos);
+            System.arraycopy(plain, plainPos, b, off, n);
+            plainPos += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = 0;
+            while (skipped < n) {
+                if (plainPos == plainLen && !fill()) break;
+                int step = (int) Math.min(n - skipped, plainLen - plainPos);
+                plainPos += step;
+                skipped += step;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return plainLen - plainPos;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (plain != null) Arrays.fill(plain, (byte) 0);
+            super.close();
+        }
+    }
+
+    /**
+     * Decrypt a whole segmented blob held in memory (small files, previews).
+     */
+    public byte[] decryptAll(byte[] blob) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(0, blob.length - HEADER_LENGTH));
+        try (InputStream in = decryptingStream(new java.io.ByteArrayInputStream(blob))) {
+            copy(in, out, DEFAULT_SEGMENT_SIZE);
+        }
+        return out.toByteArray();
+    }
+}
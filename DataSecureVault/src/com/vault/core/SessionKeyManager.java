@@ -0,0 +1,125 @@
+package com.vault.core;
+
+import javax.crypto.SecretKey;
+import java.util.Arrays;
+
+/**
+ * SessionKeyManager
+ * - Derives the vault data key from the master password once per login (PBKDF2)
+ * - Shares one SecretKey / EncryptionManager with every service in the session
+ * - lock() zeroes the key material; unlock() derives it again
+ * - Reports how long the last derivation took and how many have run
+ */
+public class SessionKeyManager {
+
+    private static SessionKeyManager instance;
+
+    private SessionKey key;
+    private EncryptionManager encryption;
+    private long lastDerivationNanos;
+    private long derivationCount;
+
+    public static synchronized SessionKeyManager getInstance() {
+        if (instance == null) {
+            instance = new SessionKeyManager();
+        }
+        return instance;
+    }
+
+    // ==================== Lock / Unlock ====================
+
+    /**
+     * Derive the data key from the master password. The caller should clear
+     * the password array afterwards.
+     */
+    public synchronized void unlock(char[] masterPassword) throws Exception {
+        long start = System.nanoTime();
+        byte[] raw = EncryptionManager.deriveKeyBytes(masterPassword);
+        long elapsed = System.nanoTime() - start;
+
+        lock();
+        this.key = new SessionKey(raw);
+        Arrays.fill(raw, (byte) 0);
+        this.encryption = new EncryptionManager(key);
+        this.lastDerivationNanos = elapsed;
+        this.derivationCount++;
+
+        System.out.println("Vault key derived in " + (elapsed / 1_000_000) + " ms");
+    }
+
+    /**
+     * Forget the data key. Services built from this session fail until unlock() runs again.
+     */
+    public synchronized void lock() {
+        if (key != null) {
+            key.destroy();
+            key = null;
+        }
+        encryption = null;
+    }
+
+    public synchronized boolean isUnlocked() {
+        return key != null;
+    }
+
+    // ==================== Accessors ====================
+
+    public synchronized SecretKey getKey() {
+        if (key == null) throw new IllegalStateException("Vault is locked");
+        return key;
+    }
+
+    /**
+     * The session's single EncryptionManager, shared by all services.
+     */
+    public synchronized EncryptionManager getEncryptionManager() {
+        if (encryption == null) throw new IllegalStateException("Vault is locked");
+        return encryption;
+    }
+
+    public synchronized long getLastDerivationMillis() {
+        return lastDerivationNanos / 1_000_000;
+    }
+
+    public synchronized long getDerivationCount() {
+        return derivationCount;
+    }
+
+    // ==================== Key holder ====================
+
+    /**
+     * AES key whose bytes can be zeroed. SecretKeySpec can't be destroyed,
+     * so lock() would otherwise leave the key in the heap until GC.
+     */
+    private static final class SessionKey implements SecretKey {
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] bytes;
+        private volatile boolean destroyed = false;
+
+        SessionKey(byte[] bytes) {
+            this.bytes = bytes.clone();
+        }
+
+        @Override public String getAlgorithm() { return "AES"; }
+
+        @Override public String getFormat() { return "RAW"; }
+
+        @Override
+        public byte[] getEncoded() {
+            if (destroyed) throw new IllegalStateException("Vault key has been destroyed");
+            return bytes.clone();
+        }
+
+        @Override
+        public void destroy() {
+            destroyed = true;
+            Arrays.fill(bytes, (byte) 0);
+        }
+
+        @Override
+        public boolean isDestroyed() {
+            return destroyed;
+        }
+    }
+}
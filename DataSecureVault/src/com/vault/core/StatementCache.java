@@ -0,0 +1,186 @@
+package com.vault.core;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * StatementCache
+ * - LRU cache of PreparedStatements for one physical connection, keyed by SQL text
+ * - close() on a cached statement clears its parameters, restores fetch size, max rows and
+ *   query timeout to the driver defaults, and keeps it for reuse
+ * - Statements evicted while checked out are really closed when their holder closes them
+ * - A second concurrent use of the same SQL gets a plain, uncached statement
+ */
+class StatementCache {
+
+    /** Hit/miss counters shared by every connection in a pool. */
+    static class Counters {
+        final AtomicLong hits = new AtomicLong();
+        final AtomicLong misses = new AtomicLong();
+        final AtomicLong evictions = new AtomicLong();
+    }
+
+    private final Connection raw;
+    private final int capacity;
+    private final Counters counters;
+    private final LinkedHashMap<String, CachedStatement> statements;
+
+    StatementCache(Connection raw, int capacity, Counters counters) {
+        this.raw = raw;
+        this.capacity = capacity;
+        this.counters = counters;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Return a statement for sql. The caller closes it as usual.
+     */
+    synchronized PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+        String key = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS ? "K:" + sql : "N:" + sql;
+        CachedStatement cached = statements.get(key);
+
+        if (cached != null && cached.stmt.isClosed()) {
+            // e.g. closeOnCompletion() fired on a previous use
+            statements.remove(key);
+            cached = null;
+        }
+
+        if (cached != null) {
+            if (cached.checkedOut) {
+                counters.misses.incrementAndGet();
+                return raw.prepareStatement(sql, autoGeneratedKeys);
+            }
+            counters.hits.incrementAndGet();
+            cached.checkedOut = true;
+            return cached.newHandle();
+        }
+
+        counters.misses.incrementAndGet();
+        cached = new CachedStatement(key, raw.prepareStatement(sql, autoGeneratedKeys));
+        cached.checkedOut = true;
+        statements.put(key, cached);
+        evictOverflow();
+        return cached.newHandle();
+    }
+
+    private void evictOverflow() throws SQLException {
+        Iterator<CachedStatement> it = statements.values().iterator();
+        while (statements.size() > capacity && it.hasNext()) {
+            CachedStatement eldest = it.next();
+            it.remove();
+            counters.evictions.incrementAndGet();
+            eldest.evicted = true;
+            if (!eldest.checkedOut) {
+                eldest.stmt.close();
+            }
+        }
+    }
+
+    private synchronized void checkIn(CachedStatement cached) throws SQLException {
+        cached.checkedOut = false;
+        if (cached.evicted || cached.stmt.isClosed()) {
+            cached.stmt.close();
+            return;
+        }
+        cached.stmt.clearParameters();
+        cached.stmt.clearBatch();
+        cached.stmt.clearWarnings();
+        // Per-use tuning must not leak into the next caller of the same SQL
+        if (cached.stmt.getFetchSize() != cached.defaultFetchSize) cached.stmt.setFetchSize(cached.defaultFetchSize);
+        if (cached.stmt.getMaxRows() != cached.defaultMaxRows) cached.stmt.setMaxRows(cached.defaultMaxRows);
+        if (cached.stmt.getQueryTimeout() != cached.defaultQueryTimeout) cached.stmt.setQueryTimeout(cached.defaultQueryTimeout);
+    }
+
+    /**
+     * Close every cached statement; called when the physical connection is discarded.
+     */
+    synchronized void closeAll() {
+        List<CachedStatement> all = new ArrayList<>(statements.values());
+        statements.clear();
+        for (CachedStatement cached : all) {
+            cached.evicted = true;
+            try {
+                cached.stmt.close();
+            } catch (SQLException ignored) {
+                // connection is going away
+            }
+        }
+    }
+
+    // ==================== Cached statement ====================
+
+    private class CachedStatement {
+        final String key;
+        final PreparedStatement stmt;
+        final int defaultFetchSize;
+        final int defaultMaxRows;
+        final int defaultQueryTimeout;
+        boolean checkedOut;
+        boolean evicted;
+
+        CachedStatement(String key, PreparedStatement stmt) throws SQLException {
+            this.key = key;
+            this.stmt = stmt;
+            this.defaultFetchSize = stmt.getFetchSize();
+            this.defaultMaxRows = stmt.getMaxRows();
+            this.defaultQueryTimeout = stmt.getQueryTimeout();
+        }
+
+        PreparedStatement newHandle() {
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class},
+                    new Handle(this));
+        }
+    }
+
+    private class Handle implements InvocationHandler {
+        private final CachedStatement cached;
+        private boolean closed = false;
+
+        Handle(CachedStatement cached) {
+            this.cached = cached;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        checkIn(cached);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || cached.stmt.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "CachedStatement[" + cached.key + (closed ? ", returned" : "") + "]";
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("Statement has already been closed");
+            }
+            try {
+                return method.invoke(cached.stmt, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
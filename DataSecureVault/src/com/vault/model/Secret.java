@@ -7,6 +7,8 @@ public class Secret {
     private int id;
     private String keyName;
     private String encryptedValue;
+    // vault_data.cipher_format: how encryptedValue was sealed ("v1" envelope or legacy "cbc")
+    private String cipherFormat;
     // transient holder for decrypted value used by UI (not stored in DB)
     private String decryptedValue;
 
@@ -24,6 +26,9 @@ public class Secret {
     public String getEncryptedValue() { return encryptedValue; }
     public void setEncryptedValue(String encryptedValue) { this.encryptedValue = encryptedValue; }
 
+    public String getCipherFormat() { return cipherFormat; }
+    public void setCipherFormat(String cipherFormat) { this.cipherFormat = cipherFormat; }
+
     public String getDecryptedValue() { return decryptedValue; }
     public void setDecryptedValue(String decryptedValue) { this.decryptedValue = decryptedValue; }
 
@@ -0,0 +1,24 @@
+package com.vault.model;
+
+import java.util.List;
+
+/**
+ * One page of secret metadata plus the token for the page after it
+ * (null when this is the last page).
+ */
+public class SecretPage {
+
+    private final List<Secret> items;
+    private final String nextCursor;
+
+    public SecretPage(List<Secret> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Secret> getItems() { return items; }
+
+    public String getNextCursor() { return nextCursor; }
+
+    public boolean hasMore() { return nextCursor != null; }
+}
@@ -0,0 +1,341 @@
+package com.vault.service;
+
+import com.vault.core.DatabaseManager;
+import com.vault.model.AccessLog;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * AuditLogWriter
+ * - Write-behind pipeline for access_logs so UI actions don't wait on an INSERT
+ * - Bounded lock-free queue (ConcurrentLinkedQueue + atomic size reservation)
+ * - Background flusher writes JDBC batches of one fixed INSERT (a single cached statement) when
+ *   batchSize is reached or flushInterval elapses; each batch is one transaction
+ * - Backpressure when full: BLOCK (bounded wait), DROP (counted) or SPILL (append to a local file)
+ * - Spilled entries are replayed once the database accepts writes again
+ * - The spill file is NOT encrypted: it holds user ids, actions, key names and timestamps
+ *   (never secret values) in plain text, Base64-framed; it is created owner-only where the
+ *   file system supports POSIX permissions, and is deleted after a successful replay
+ * - flush() is called on logout; a shutdown hook flushes on JVM exit
+ */
+public class AuditLogWriter {
+
+    public enum Backpressure { BLOCK, DROP, SPILL }
+
+    private static AuditLogWriter instance;
+
+    private final DatabaseManager db;
+    private final int capacity;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final long blockTimeoutMs;
+    private final Backpressure policy;
+    private final Path spillFile;
+
+    private final ConcurrentLinkedQueue<AccessLog> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final Object writeLock = new Object();
+    private final Object spillLock = new Object();
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    // metrics
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    private AuditLogWriter(DatabaseManager db) {
+        this.db = db;
+        this.capacity = Math.max(1, Integer.getInteger("audit.queueCapacity", 10_000));
+        this.batchSize = Math.max(1, Integer.getInteger("audit.batchSize", 100));
+        this.flushIntervalMs = Math.max(10, Long.getLong("audit.flushIntervalMs", 1_000L));
+        this.blockTimeoutMs = Math.max(0, Long.getLong("audit.blockTimeoutMs", 5_000L));
+        this.policy = parsePolicy(System.getProperty("audit.backpressure", "SPILL"));
+        this.spillFile = Paths.get(System.getProperty("audit.spillFile", "audit-spill.log"));
+
+        this.flusher = new Thread(this::runFlusher, "vault-audit-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "vault-audit-shutdown"));
+    }
+
+    public static synchronized AuditLogWriter getInstance() throws SQLException {
+        if (instance == null) {
+            instance = new AuditLogWriter(DatabaseManager.getInstance());
+        }
+        return instance;
+    }
+
+    private static Backpressure parsePolicy(String value) {
+        try {
+            return Backpressure.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return Backpressure.SPILL;
+        }
+    }
+
+    // ==================== Producer side ====================
+
+    /**
+     * Queue an entry for asynchronous insertion. Never throws; never touches the database.
+     */
+    public void submit(int userId, String action, String keyName) {
+        AccessLog entry = new AccessLog(userId, action, keyName);
+        entry.setTimestamp(new Timestamp(System.currentTimeMillis()));
+        submitted.incrementAndGet();
+
+        if (!running || !tryReserve()) {
+            handleFull(entry);
+            return;
+        }
+        queue.offer(entry);
+        if (size.get() >= batchSize) {
+            LockSupport.unpark(flusher);
+        }
+    }
+
+    private boolean tryReserve() {
+        while (true) {
+            int current = size.get();
+            if (current >= capacity) return false;
+            if (size.compareAndSet(current, current + 1)) return true;
+        }
+    }
+
+    private void handleFull(AccessLog entry) {
+        switch (policy) {
+            case BLOCK:
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(blockTimeoutMs);
+                while (running && System.nanoTime() < deadline) {
+                    LockSupport.unpark(flusher);
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                    if (tryReserve()) {
+                        queue.offer(entry);
+                        return;
+                    }
+                }
+                dropped.incrementAndGet();
+                break;
+            case SPILL:
+                List<AccessLog> one = new ArrayList<>(1);
+                one.add(entry);
+                spill(one);
+                break;
+            case DROP:
+            default:
+                dropped.incrementAndGet();
+                break;
+        }
+    }
+
+    // ==================== Flusher ====================
+
+    private void runFlusher() {
+        while (running) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(flushIntervalMs));
+            try {
+                drainQueue();
+                replaySpill();
+            } catch (Exception e) {
+                System.err.println("Audit flush failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Write everything queued so far. Safe to call from any thread.
+     */
+    public void flush() {
+        drainQueue();
+        replaySpill();
+    }
+
+    private void drainQueue() {
+        synchronized (writeLock) {
+            List<AccessLog> batch = new ArrayList<>(batchSize);
+            AccessLog entry;
+            while ((entry = queue.poll()) != null) {
+                size.decrementAndGet();
+                batch.add(entry);
+                if (batch.size() == batchSize) {
+                    writeOrSpill(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                writeOrSpill(batch);
+            }
+        }
+    }
+
+    private void writeOrSpill(List<AccessLog> batch) {
+        try {
+            writeBatch(batch);
+        } catch (SQLException e) {
+            // Non-fatal: keep the entries locally if allowed, otherwise count them as lost
+            System.err.println("Audit batch insert failed: " + e.getMessage());
+            if (policy == Backpressure.SPILL) {
+                spill(batch);
+            } else {
+                dropped.addAndGet(batch.size());
+            }
+        }
+    }
+
+    private void writeBatch(List<AccessLog> batch) throws SQLException {
+        // Same SQL for every batch size, so the pool's statement cache keeps one statement;
+        // MySQL collapses the batch into a multi-row INSERT (rewriteBatchedStatements)
+        String sql = "INSERT INTO access_logs (user_id, action, key_name, timestamp) VALUES (?, ?, ?, ?)";
+        try (Connection conn = db.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                for (AccessLog entry : batch) {
+                    ps.setInt(1, entry.getUserId());
+                    ps.setString(2, entry.getAction());
+                    ps.setString(3, entry.getKeyName());
+                    ps.setTimestamp(4, entry.getTimestamp());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+        written.addAndGet(batch.size());
+        batches.incrementAndGet();
+    }
+
+    // ==================== Spill file ====================
+
+    private void spill(List<AccessLog> entries) {
+        synchronized (spillLock) {
+            try {
+                createOwnerOnly(spillFile);
+            } catch (IOException e) {
+                System.err.println("Audit spill failed: " + e.getMessage());
+                dropped.addAndGet(entries.size());
+                return;
+            }
+            try (BufferedWriter out = Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (AccessLog entry : entries) {
+                    out.write(encode(entry));
+                    out.newLine();
+                }
+                spilled.addAndGet(entries.size());
+            } catch (IOException e) {
+                System.err.println("Audit spill failed: " + e.getMessage());
+                dropped.addAndGet(entries.size());
+            }
+        }
+    }
+
+    /**
+     * Create the spill file readable by the owner only, when it doesn't exist yet.
+     */
+    private static void createOwnerOnly(Path file) throws IOException {
+        if (Files.exists(file)) return;
+        try {
+            Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            Files.createFile(file);   // not a POSIX file system
+        } catch (FileAlreadyExistsException ignored) {
+            // created by another process in between
+        }
+    }
+
+    private void replaySpill() {
+        synchronized (spillLock) {
+            if (!Files.exists(spillFile)) return;
+
+            List<AccessLog> entries = new ArrayList<>();
+            try (BufferedReader in = Files.newBufferedReader(spillFile, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    AccessLog entry = decode(line);
+                    if (entry != null) entries.add(entry);
+                }
+            } catch (IOException e) {
+                System.err.println("Audit spill replay failed: " + e.getMessage());
+                return;
+            }
+
+            try {
+                synchronized (writeLock) {
+                    for (int from = 0; from < entries.size(); from += batchSize) {
+                        writeBatch(entries.subList(from, Math.min(entries.size(), from + batchSize)));
+                    }
+                }
+                Files.delete(spillFile);
+            } catch (SQLException | IOException e) {
+                // Database still unavailable; the file stays for the next attempt.
+                // A partial replay can duplicate rows, which is preferable to losing them.
+            }
+        }
+    }
+
+    private static String encode(AccessLog entry) {
+        Base64.Encoder b64 = Base64.getEncoder();
+        String key = entry.getKeyName() == null ? "-" : b64.encodeToString(entry.getKeyName().getBytes(StandardCharsets.UTF_8));
+        return entry.getUserId() + "\t"
+                + b64.encodeToString(entry.getAction().getBytes(StandardCharsets.UTF_8)) + "\t"
+                + key + "\t"
+                + entry.getTimestamp().getTime();
+    }
+
+    private static AccessLog decode(String line) {
+        String[] parts = line.split("\t");
+        if (parts.length != 4) return null;
+        try {
+            Base64.Decoder b64 = Base64.getDecoder();
+            String action = new String(b64.decode(parts[1]), StandardCharsets.UTF_8);
+            String key = "-".equals(parts[2]) ? null : new String(b64.decode(parts[2]), StandardCharsets.UTF_8);
+            AccessLog entry = new AccessLog(Integer.parseInt(parts[0]), action, key);
+            entry.setTimestamp(new Timestamp(Long.parseLong(parts[3])));
+            return entry;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // ==================== Lifecycle / stats ====================
+
+    private void shutdown() {
+        running = false;
+        LockSupport.unpark(flusher);
+        flush();
+    }
+
+    public String getStats() {
+        return "AuditLogWriter{queued=" + size.get() + ", submitted=" + submitted.get()
+                + ", written=" + written.get() + ", batches=" + batches.get()
+                + ", spilled=" + spilled.get() + ", dropped=" + dropped.get()
+                + ", policy=" + policy + "}";
+    }
+}
@@ -0,0 +1,300 @@
+package com.vault.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * BlobCache
+ * - Local disk copy of recently read vault_files.encrypted_data blobs (ciphertext only)
+ * - Entries are named userId/fileId-contentHash, so a blob whose vault_files.content_hash
+ *   changed simply misses, and the stale copy is dropped
+ * - Filled by streaming the DB blob to a temp file while hashing it; kept only if the hash
+ *   matches the row's content_hash
+ * - Reads are memory-mapped; LRU eviction by total bytes (files.cache.maxBytes, 0 disables)
+ * - Recency is kept in file mtimes, so the LRU order survives restarts
+ */
+class BlobCache {
+
+    private static final HexFormat HEX = HexFormat.of();
+
+    private static BlobCache instance;
+
+    private final Path root;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes = 0;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    private static class Entry {
+        final Path path;
+        final long size;
+
+        Entry(Path path, long size) {
+            this.path = path;
+            this.size = size;
+        }
+    }
+
+    BlobCache(Path root, long maxBytes) {
+        this.root = root;
+        this.maxBytes = maxBytes;
+        if (maxBytes > 0) load();
+    }
+
+    /**
+     * Shared cache for the files.cache.* system properties (one per process, since every
+     * login's store reads the same directory).
+     */
+    static synchronized BlobCache getInstance() {
+        if (instance == null) {
+            instance = new BlobCache(
+                    Paths.get(System.getProperty("files.cache.dir", "vault-cache")),
+                    Long.getLong("files.cache.maxBytes", 256L * 1024 * 1024));
+        }
+        return instance;
+    }
+
+    /** Whether a blob of this size is worth filling (the cache is on and it fits). */
+    boolean accepts(long size) {
+        return maxBytes > 0 && size <= maxBytes && size <= Integer.MAX_VALUE;
+    }
+
+    // ==================== Reads ====================
+
+    /**
+     * Mapped copy of the blob with this content hash, or null on a miss.
+     * The buffer is read-only; its position / limit are the caller's.
+     */
+    ByteBuffer get(int userId, int fileId, String contentHash) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key(userId, fileId, contentHash));
+            if (entry == null) {
+                misses++;
+                dropOtherVersions(userId, fileId, contentHash);
+                return null;
+            }
+            hits++;
+        }
+        try {
+            Files.setLastModifiedTime(entry.path, FileTime.fromMillis(System.currentTimeMillis()));
+            return map(entry.path);
+        } catch (IOException e) {
+            // Deleted under us (or unreadable): forget it and read from the database
+            synchronized (this) {
+                remove(key(userId, fileId, contentHash));
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Copy blob into the cache, checking it against contentHash, and return it mapped.
+     * Returns null (and caches nothing) if the blob doesn't hash to contentHash, i.e. the
+     * row changed while it was being read, or if it is larger than the whole cache.
+     */
+    ByteBuffer fill(int userId, int fileId, String contentHash, InputStream blob) throws IOException {
+        Path dir = root.resolve(Integer.toString(userId));
+        Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, fileId + "-", ".tmp");
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            long size = 0;
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                byte[] buf = new byte[64 * 1024];
+                int n;
+                while ((n = blob.read(buf)) != -1) {
+                    sha.update(buf, 0, n);
+                    ByteBuffer bb = ByteBuffer.wrap(buf, 0, n);
+                    while (bb.hasRemaining()) out.write(bb);
+                    size += n;
+                    if (size > maxBytes) return null;
+                }
+            }
+            if (!HEX.formatHex(sha.digest()).equalsIgnoreCase(contentHash)) return null;
+
+            String key = key(userId, fileId, contentHash);
+            Path target = root.resolve(key);
+            // Move and index together, so a concurrent fill of the same key can't delete this copy
+            synchronized (this) {
+                try {
+                    Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+                // An entry for the same key has the same path, which now holds this copy: forget it, don't delete it
+                Entry previous = entries.remove(key);
+                if (previous != null) totalBytes -= previous.size;
+                entries.put(key, new Entry(target, size));
+                totalBytes += size;
+                dropOtherVersions(userId, fileId, contentHash);
+                evictOverflow();
+                return map(target);
+            }
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    // ==================== Invalidation ====================
+
+    /**
+     * Drop every cached version of a file (after it is deleted).
+     */
+    synchronized void invalidate(int userId, int fileId) {
+        dropOtherVersions(userId, fileId, null);
+    }
+
+    synchronized String getStats() {
+        return String.format("blob cache: %d entries, %d bytes, hits=%d misses=%d evictions=%d",
+                entries.size(), totalBytes, hits, misses, evictions);
+    }
+
+    /** InputStream over a (mapped) buffer, reading from its current position. */
+    static class BufferInputStream extends InputStream {
+        private final ByteBuffer buf;
+
+        BufferInputStream(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        public int read() {
+            return buf.hasRemaining() ? buf.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (!buf.hasRemaining()) return -1;
+            int n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            int k = (int) Math.max(0, Math.min(n, buf.remaining()));
+            buf.position(buf.position() + k);
+            return k;
+        }
+
+        @Override
+        public int available() {
+            return buf.remaining();
+        }
+    }
+
+    // ==================== Internals ====================
+
+    private static String key(int userId, int fileId, String contentHash) {
+        return userId + "/" + fileId + "-" + contentHash.toLowerCase();
+    }
+
+    private static ByteBuffer map(Path path) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer mapped = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            return mapped.asReadOnlyBuffer();
+        }
+    }
+
+    private void dropOtherVersions(int userId, int fileId, String keep) {
+        String prefix = userId + "/" + fileId + "-";
+        String keepKey = keep == null ? null : key(userId, fileId, keep);
+        List<String> stale = new ArrayList<>();
+        for (String key : entries.keySet()) {
+            if (key.startsWith(prefix) && !key.equals(keepKey)) stale.add(key);
+        }
+        for (String key : stale) remove(key);
+    }
+
+    private void evictOverflow() {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Entry e = it.next().getValue();
+            it.remove();
+            totalBytes -= e.size;
+            evictions++;
+            deleteQuietly(e.path);
+        }
+    }
+
+    private void remove(String key) {
+        Entry e = entries.remove(key);
+        if (e == null) return;
+        totalBytes -= e.size;
+        deleteQuietly(e.path);
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // Still mapped somewhere (Windows); it is picked up again on the next start
+            System.err.println("Blob cache: could not delete " + path + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Rebuild the index from disk, oldest access first, and clear out leftover temp files.
+     */
+    private void load() {
+        if (!Files.isDirectory(root)) return;
+        List<Path> found = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(root, 2)) {
+            walk.filter(Files::isRegularFile).forEach(found::add);
+        } catch (IOException e) {
+            System.err.println("Blob cache: could not scan " + root + ": " + e.getMessage());
+            return;
+        }
+        found.sort(Comparator.comparing(BlobCache::mtime));
+        for (Path p : found) {
+            String name = p.getFileName().toString();
+            if (name.endsWith(".tmp") || p.getParent().equals(root)) {
+                deleteQuietly(p);
+                continue;
+            }
+            try {
+                long size = Files.size(p);
+                entries.put(root.relativize(p).toString().replace('\\', '/'), new Entry(p, size));
+                totalBytes += size;
+            } catch (IOException ignored) {
+            }
+        }
+        evictOverflow();
+    }
+
+    private static FileTime mtime(Path p) {
+        try {
+            return Files.getLastModifiedTime(p);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+}
@@ -0,0 +1,973 @@
+package com.vault.service;
+
+import com.vault.core.ByteBufferPool;
+import com.vault.core.CryptoWorkers;
+import com.vault.core.DatabaseManager;
+import com.vault.core.EncryptionManager;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * ChunkBlobStore
+ * - Content-addressed store of encrypted file chunks on local disk
+ * - Files are cut into fixed-size chunks; a chunk's address is HMAC-SHA256 of its plaintext
+ *   under a per-user key, so equal chunks dedupe within one user and reveal nothing across users
+ * - Each chunk file is its own AES-GCM envelope; on read the plaintext is re-hashed and must
+ *   match the address it was stored under
+ * - The DB keeps the manifest (vault_file_chunks) and per-chunk reference counts (vault_chunk_refs)
+ * - The manifest's order, count and sizes are tagged under a per-user key (vault_files.manifest_mac)
+ *   and checked before any read, so rows reordered, dropped or resized in the DB are refused
+ * - Each chunk is written to its own temp file next to its target, then fsynced, renamed and
+ *   directory-synced in batches, so concurrent writers of one address never share a temp file
+ * - Chunks are hashed/sealed and read/verified across cores (CryptoWorkers), in file order
+ * - A chunk whose count drops to zero keeps its ref row, stamped with released_at; a sweep (at
+ *   startup, then every gcGraceMs) deletes rows released longer than the grace period and their
+ *   files, and files with no ref row at all (rolled-back or crashed uploads), so nothing pending
+ *   is lost when the process exits
+ * - Writers and the sweep take the chunk's ref row before touching its file, so a chunk being
+ *   re-referenced is never deleted under the writer
+ * - Upload sessions put chunks one at a time (putChunk) and hold their references until commit
+ *
+ * Layout: {root}/{userId}/{first two hex chars}/{address}
+ */
+class ChunkBlobStore implements FileBlobStore {
+
+    static final String ID = "chunks";
+
+    private static final String HMAC = "HmacSHA256";
+    private static final HexFormat HEX = HexFormat.of();
+
+    private static final String BUMP_SQL =
+            "UPDATE vault_chunk_refs SET ref_count = ref_count + 1 WHERE user_id = ? AND chunk_hash = ? AND ref_count > 0";
+    private static final String REVIVE_SQL =
+            "UPDATE vault_chunk_refs SET ref_count = 1, released_at = NULL WHERE user_id = ? AND chunk_hash = ? AND ref_count <= 0";
+    private static final String REF_SQL =
+            "INSERT INTO vault_chunk_refs (user_id, chunk_hash, ref_count, stored_size) VALUES (?, ?, 1, ?)";
+
+    private static ScheduledExecutorService reaper;
+    private static final Set<Path> SWEPT_ROOTS = new HashSet<>();
+
+    private final DatabaseManager dbManager;
+    private final EncryptionManager encryption;
+    private final SecretKey sessionKey;
+    private final Path root;
+    private final int chunkSize;
+    private final int syncBatch;
+    private final long gcGraceMs;
+    private final CryptoWorkers workers = CryptoWorkers.getInstance();
+    private final ByteBufferPool directSealed;
+    private final ByteBufferPool directPlain;
+
+    ChunkBlobStore(DatabaseManager dbManager, EncryptionManager encryption, SecretKey sessionKey,
+                   Path root, int chunkSize, int syncBatch, long gcGraceMs) {
+        this.dbManager = dbManager;
+        this.encryption = encryption;
+        this.sessionKey = sessionKey;
+        this.root = root;
+        this.chunkSize = chunkSize;
+        this.syncBatch = Math.max(1, syncBatch);
+        this.gcGraceMs = gcGraceMs;
+        this.directSealed = new ByteBufferPool(EncryptionManager.encryptedLength(chunkSize), workers.getWindow() + 1, true);
+        this.directPlain = new ByteBufferPool(chunkSize, workers.getWindow() + 1, true);
+        scheduleSweep();
+    }
+
+    /**
+     * Build from files.chunkStore.* system properties.
+     */
+    static ChunkBlobStore fromSystemProperties(DatabaseManager dbManager, EncryptionManager encryption, SecretKey sessionKey) {
+        return new ChunkBlobStore(dbManager, encryption, sessionKey,
+                Paths.get(System.getProperty("files.chunkStore.dir", "vault-chunks")),
+                Integer.getInteger("files.chunkStore.chunkSize", 1024 * 1024),
+                Integer.getInteger("files.chunkStore.syncBatch", 32),
+                Long.getLong("files.chunkStore.gcGraceMs", 600_000L));
+    }
+
+    @Override
+    public String getId() {
+        return ID;
+    }
+
+    @Override
+    public String getCipherFormat() {
+        return EncryptionManager.FORMAT_ENVELOPE;   // each chunk is one envelope
+    }
+
+    int getChunkSize() {
+        return chunkSize;
+    }
+
+    // ==================== Addressing ====================
+
+    /**
+     * Per-user key: HMAC(sessionKey, purpose + ":" + userId). Callers wipe it.
+     */
+    private byte[] userKey(String purpose, int userId) throws Exception {
+        byte[] master = sessionKey.getEncoded();
+        try {
+            Mac kdf = Mac.getInstance(HMAC);
+            kdf.init(new SecretKeySpec(master, HMAC));
+            return kdf.doFinal((purpose + ":" + userId).getBytes(StandardCharsets.UTF_8));
+        } finally {
+            Arrays.fill(master, (byte) 0);
+        }
+    }
+
+    private byte[] userAddressKey(int userId) throws Exception {
+        return userKey("chunk-address", userId);
+    }
+
+    private static Mac addressMac(byte[] userKey) throws Exception {
+        Mac mac = Mac.getInstance(HMAC);
+        mac.init(new SecretKeySpec(userKey, HMAC));
+        return mac;
+    }
+
+    private static byte[] address(byte[] userKey, byte[] plain, int off, int len) throws Exception {
+        Mac mac = addressMac(userKey);
+        mac.update(plain, off, len);
+        return mac.doFinal();
+    }
+
+    private Path chunkPath(int userId, String address) {
+        return root.resolve(Integer.toString(userId)).resolve(address.substring(0, 2)).resolve(address);
+    }
+
+    // ==================== Manifest tag ====================
+
+    /**
+     * HMAC over a file's manifest under userKey("chunk-manifest"): the file id, then each
+     * chunk's position, plain size and address in order, then the chunk count.
+     */
+    private final class ManifestTag {
+        private final Mac mac;
+        private int count = 0;
+
+        ManifestTag(int userId, int fileId) throws Exception {
+            byte[] key = userKey("chunk-manifest", userId);
+            try {
+                mac = addressMac(key);
+            } finally {
+                Arrays.fill(key, (byte) 0);
+            }
+            mac.update(ByteBuffer.allocate(4).putInt(fileId).array());
+        }
+
+        void add(String address, int plainSize) {
+            byte[] a = address.getBytes(StandardCharsets.UTF_8);
+            mac.update(ByteBuffer.allocate(12).putInt(count++).putInt(plainSize).putInt(a.length).array());
+            mac.update(a);
+        }
+
+        String finish() {
+            return HEX.formatHex(mac.doFinal(ByteBuffer.allocate(4).putInt(count).array()));
+        }
+    }
+
+    private static void storeManifestTag(Connection conn, int userId, int fileId, String tag) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "UPDATE vault_files SET manifest_mac = ? WHERE id = ? AND user_id = ?")) {
+            ps.setString(1, tag);
+            ps.setInt(2, fileId);
+            ps.setInt(3, userId);
+            if (ps.executeUpdate() != 1) throw new SQLException("File " + fileId + " not found for its manifest");
+        }
+    }
+
+    /**
+     * Tag the manifest already inserted for fileId on conn (an upload session's chunks,
+     * copied at commit). Runs inside the caller's transaction.
+     */
+    void sealManifest(Connection conn, int userId, int fileId) throws Exception {
+        ManifestTag tag = new ManifestTag(userId, fileId);
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT chunk_hash, plain_size FROM vault_file_chunks WHERE file_id = ? ORDER BY chunk_index")) {
+            ps.setInt(1, fileId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) tag.add(rs.getString(1), rs.getInt(2));
+            }
+        }
+        storeManifestTag(conn, userId, fileId, tag.finish());
+    }
+
+    private static <T> T await(Future<T> f) throws Exception {
+        try {
+            return f.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            throw e;
+        }
+    }
+
+    // ==================== Write ====================
+
+    /** A chunk hashed and sealed on a worker; buffer goes back to the free list. */
+    private static class SealedChunk {
+        final byte[] buffer;
+        final int plainSize;
+        final String address;
+        final byte[] sealed;
+
+        SealedChunk(byte[] buffer, int plainSize, String address, byte[] sealed) {
+            this.buffer = buffer;
+            this.plainSize = plainSize;
+            this.address = address;
+            this.sealed = sealed;
+        }
+    }
+
+    private SealedChunk seal(byte[] userKey, byte[] plain, int n) throws Exception {
+        String address = HEX.formatHex(address(userKey, plain, 0, n));
+        byte[] sealed = new byte[EncryptionManager.encryptedLength(n)];
+        encryption.encrypt(plain, 0, n, sealed, 0);
+        return new SealedChunk(plain, n, address, sealed);
+    }
+
+    /**
+     * Chunks are read here, hashed and encrypted on CryptoWorkers (up to getWindow() in
+     * flight), and recorded in file order on this thread and connection.
+     */
+    @Override
+    public void write(Connection conn, int userId, int fileId, InputStream plaintext, long size) throws Exception {
+        byte[] userKey = userAddressKey(userId);
+        ArrayDeque<byte[]> free = new ArrayDeque<>();
+        ArrayDeque<Future<SealedChunk>> inFlight = new ArrayDeque<>();
+        SyncBatch batch = new SyncBatch();
+        ManifestTag tag = new ManifestTag(userId, fileId);
+
+        String manifestSql = "INSERT INTO vault_file_chunks (file_id, chunk_index, chunk_hash, plain_size) VALUES (?, ?, ?, ?)";
+
+        try (PreparedStatement bump = conn.prepareStatement(BUMP_SQL);
+             PreparedStatement revive = conn.prepareStatement(REVIVE_SQL);
+             PreparedStatement ref = conn.prepareStatement(REF_SQL);
+             PreparedStatement manifest = conn.prepareStatement(manifestSql)) {
+            long total = 0;
+            int index = 0;
+            boolean eof = false;
+            while (true) {
+                while (!eof && inFlight.size() < workers.getWindow()) {
+                    byte[] buf = free.isEmpty() ? new byte[chunkSize] : free.pop();
+                    int n = plaintext.readNBytes(buf, 0, chunkSize);
+                    if (n < chunkSize) eof = true;
+                    if (n == 0) {
+                        free.push(buf);
+                        break;
+                    }
+                    total += n;
+                    inFlight.add(workers.submit(() -> seal(userKey, buf, n)));
+                }
+                Future<SealedChunk> next = inFlight.poll();
+                if (next == null) break;
+
+                SealedChunk chunk = await(next);
+                Arrays.fill(chunk.buffer, (byte) 0);
+                free.push(chunk.buffer);
+                claim(bump, revive, ref, batch, userId, chunk);
+
+                manifest.setInt(1, fileId);
+                manifest.setInt(2, index++);
+                manifest.setString(3, chunk.address);
+                manifest.setInt(4, chunk.plainSize);
+                manifest.addBatch();
+                if (index % 256 == 0) manifest.executeBatch();
+                tag.add(chunk.address, chunk.plainSize);
+
+                if (batch.size() >= syncBatch) batch.sync();
+            }
+            manifest.executeBatch();
+            storeManifestTag(conn, userId, fileId, tag.finish());
+            batch.sync();
+
+            if (size >= 0 && total != size) {
+                throw new IOException("File changed while uploading (expected " + size + " bytes, read " + total + ")");
+            }
+        } finally {
+            // On failure the caller rolls back: rows revived here go back to released, and files
+            // written for new rows are left without one; the sweep collects both
+            for (Future<SealedChunk> f : inFlight) {
+                try {
+                    Arrays.fill(f.get().buffer, (byte) 0);
+                } catch (Exception ignored) {
+                }
+            }
+            Arrays.fill(userKey, (byte) 0);
+            batch.abandon();
+        }
+    }
+
+    /**
+     * Take a reference to the chunk: bump a live row, or revive a released one / insert a new
+     * one and then make sure the file is on disk. The row stays locked until the caller's
+     * transaction ends, and the sweep takes the same row before deleting a file, so the file
+     * checked here can't be reaped before the reference commits.
+     */
+    private void claim(PreparedStatement bump, PreparedStatement revive, PreparedStatement ref,
+                       SyncBatch batch, int userId, SealedChunk chunk) throws Exception {
+        if (bumpRef(bump, userId, chunk.address)) return;
+        if (!bumpRef(revive, userId, chunk.address)) {
+            try {
+                ref.setInt(1, userId);
+                ref.setString(2, chunk.address);
+                ref.setInt(3, chunk.sealed.length);
+                ref.executeUpdate();
+            } catch (SQLException race) {
+                // Another upload (or the sweep, claiming an orphaned file) inserted the row first
+                if (!bumpRef(bump, userId, chunk.address) && !bumpRef(revive, userId, chunk.address)) throw race;
+            }
+        }
+        storeChunk(batch, chunkPath(userId, chunk.address), chunk.sealed);
+    }
+
+    private static boolean bumpRef(PreparedStatement bump, int userId, String address) throws SQLException {
+        bump.setInt(1, userId);
+        bump.setString(2, address);
+        return bump.executeUpdate() > 0;
+    }
+
+    /**
+     * Queue a sealed chunk for the batch, or reuse one already on disk (e.g. a released
+     * chunk still inside its grace period).
+     */
+    private void storeChunk(SyncBatch batch, Path path, byte[] sealed) throws Exception {
+        if (Files.exists(path)) {
+            // Push the orphan grace window forward, so the sweep leaves it to the row check
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+            return;
+        }
+        batch.add(path, sealed);
+    }
+
+    /**
+     * Chunk files pending durability: each is written to its own uniquely named temp file in
+     * the target's directory, then on sync() all are forced, renamed into place and each
+     * touched directory is synced once.
+     */
+    private static class SyncBatch {
+        private final List<Path> temps = new ArrayList<>();
+        private final List<Path> targets = new ArrayList<>();
+        private final List<FileChannel> channels = new ArrayList<>();
+
+        int size() {
+            return temps.size();
+        }
+
+        void add(Path target, byte[] data) throws IOException {
+            Files.createDirectories(target.getParent());
+            Path tmp = Files.createTempFile(target.getParent(), target.getFileName() + ".", ".tmp");
+            FileChannel ch;
+            try {
+                ch = FileChannel.open(tmp, StandardOpenOption.WRITE);
+            } catch (IOException e) {
+                Files.deleteIfExists(tmp);
+                throw e;
+            }
+            temps.add(tmp);
+            targets.add(target);
+            channels.add(ch);
+            ByteBuffer buf = ByteBuffer.wrap(data);
+            while (buf.hasRemaining()) ch.write(buf);
+        }
+
+        void sync() throws IOException {
+            if (temps.isEmpty()) return;
+            for (FileChannel ch : channels) {
+                ch.force(true);
+                ch.close();
+            }
+            channels.clear();
+
+            Set<Path> dirs = new LinkedHashSet<>();
+            for (int i = 0; i < temps.size(); i++) {
+                try {
+                    Files.move(temps.get(i), targets.get(i), StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temps.get(i), targets.get(i), StandardCopyOption.REPLACE_EXISTING);
+                }
+                dirs.add(targets.get(i).getParent());
+            }
+            temps.clear();
+            targets.clear();
+            for (Path dir : dirs) syncDirectory(dir);
+        }
+
+        void abandon() {
+            for (FileChannel ch : channels) {
+                try { ch.close(); } catch (IOException ignored) { }
+            }
+            for (Path tmp : temps) {
+                try { Files.deleteIfExists(tmp); } catch (IOException ignored) { }
+            }
+            channels.clear();
+            temps.clear();
+            targets.clear();
+        }
+
+        private static void syncDirectory(Path dir) {
+            // Makes the renames durable; not supported on every platform (e.g. Windows)
+            try (FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
+                ch.force(true);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    // ==================== Upload sessions ====================
+
+    /** Address the chunk would be stored under (for matching a resent chunk). */
+    String addressOf(int userId, byte[] plain) throws Exception {
+        byte[] userKey = userAddressKey(userId);
+        try {
+            return HEX.formatHex(address(userKey, plain, 0, plain.length));
+        } finally {
+            Arrays.fill(userKey, (byte) 0);
+        }
+    }
+
+    /** Keyed hash identifying an upload source (see VaultFileService.sourceFingerprint). */
+    String fingerprintOf(int userId, byte[] data) throws Exception {
+        byte[] key = userKey("upload-source", userId);
+        try {
+            return HEX.formatHex(address(key, data, 0, data.length));
+        } finally {
+            Arrays.fill(key, (byte) 0);
+        }
+    }
+
+    /**
+     * Seal one chunk, make it durable on disk and take a reference to it inside the caller's
+     * transaction on conn. The file is synced before this returns, so once the caller commits
+     * the chunk survives a crash. Returns its address.
+     */
+    String putChunk(Connection conn, int userId, byte[] plain) throws Exception {
+        if (plain.length == 0 || plain.length > chunkSize) {
+            throw new IllegalArgumentException("Chunk must be 1.." + chunkSize + " bytes");
+        }
+        byte[] userKey = userAddressKey(userId);
+        SyncBatch batch = new SyncBatch();
+        try (PreparedStatement bump = conn.prepareStatement(BUMP_SQL);
+             PreparedStatement revive = conn.prepareStatement(REVIVE_SQL);
+             PreparedStatement ref = conn.prepareStatement(REF_SQL)) {
+            SealedChunk chunk = seal(userKey, plain, plain.length);
+            claim(bump, revive, ref, batch, userId, chunk);
+            batch.sync();
+            return chunk.address;
+        } finally {
+            Arrays.fill(userKey, (byte) 0);
+            batch.abandon();
+        }
+    }
+
+    // ==================== Read ====================
+
+    /**
+     * Load the manifest in order and check it against the file's stored tag; a missing or
+     * mismatched tag fails with IOException before any chunk is read.
+     */
+    private void loadManifest(int userId, int fileId, List<String> addresses, List<Integer> sizes) throws Exception {
+        ManifestTag tag = new ManifestTag(userId, fileId);
+        String stored = null;
+        try (Connection conn = dbManager.getConnection()) {
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT manifest_mac FROM vault_files WHERE id = ? AND user_id = ?")) {
+                ps.setInt(1, fileId);
+                ps.setInt(2, userId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) stored = rs.getString(1);
+                }
+            }
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT chunk_hash, plain_size FROM vault_file_chunks WHERE file_id = ? ORDER BY chunk_index")) {
+                ps.setInt(1, fileId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        String address = rs.getString(1);
+                        int size = rs.getInt(2);
+                        tag.add(address, size);
+                        addresses.add(address);
+                        sizes.add(size);
+                    }
+                }
+            }
+        }
+        if (stored == null || !MessageDigest.isEqual(HEX.parseHex(tag.finish()), parseTag(stored))) {
+            throw new IOException("Chunk manifest of file " + fileId + " failed authentication");
+        }
+    }
+
+    private static byte[] parseTag(String stored) {
+        try {
+            return HEX.parseHex(stored);
+        } catch (IllegalArgumentException e) {
+            return new byte[0];
+        }
+    }
+
+    @Override
+    public InputStream open(int userId, int fileId) throws Exception {
+        List<String> addresses = new ArrayList<>();
+        List<Integer> sizes = new ArrayList<>();
+        loadManifest(userId, fileId, addresses, sizes);
+        return new ChunkInputStream(userId, addresses, sizes, userAddressKey(userId));
+    }
+
+    @Override
+    public InputStream openCiphertext(int userId, int fileId) throws Exception {
+        List<String> addresses = new ArrayList<>();
+        loadManifest(userId, fileId, addresses, new ArrayList<>());
+        return new ChunkInputStream(userId, addresses, null, null);
+    }
+
+    /**
+     * Chunk boundaries come from the manifest's plain sizes, so only the chunks that
+     * overlap the range are read and decrypted.
+     */
+    @Override
+    public byte[] readRange(int userId, int fileId, long offset, int length) throws Exception {
+        if (offset < 0 || length < 0) throw new IllegalArgumentException("Negative offset or length");
+        List<String> addresses = new ArrayList<>();
+        List<Integer> sizes = new ArrayList<>();
+        loadManifest(userId, fileId, addresses, sizes);
+
+        long end = offset + length;
+        long chunkStart = 0;
+        int first = -1;
+        int last = -1;
+        long skip = 0;
+        for (int i = 0; i < sizes.size() && chunkStart < end; i++) {
+            long chunkEnd = chunkStart + sizes.get(i);
+            if (chunkEnd > offset) {
+                if (first < 0) {
+                    first = i;
+                    skip = offset - chunkStart;
+                }
+                last = i;
+            }
+            chunkStart = chunkEnd;
+        }
+        if (first < 0 || length == 0) return new byte[0];
+
+        try (InputStream in = new ChunkInputStream(userId, addresses.subList(first, last + 1),
+                sizes.subList(first, last + 1), userAddressKey(userId))) {
+            return FileBlobStore.skipAndRead(in, skip, length);
+        }
+    }
+
+    /**
+     * Chunks are read from disk, decrypted and verified in direct buffers on CryptoWorkers,
+     * then handed to out in order, so plaintext never passes through the heap.
+     */
+    @Override
+    public long decryptTo(int userId, int fileId, WritableByteChannel out, LongConsumer progress) throws Exception {
+        List<String> addresses = new ArrayList<>();
+        List<Integer> sizes = new ArrayList<>();
+        loadManifest(userId, fileId, addresses, sizes);
+
+        byte[] userKey = userAddressKey(userId);
+        ArrayDeque<Future<ByteBuffer>> ahead = new ArrayDeque<>();
+        int submitted = 0;
+        long total = 0;
+        try {
+            while (true) {
+                while (submitted < addresses.size() && ahead.size() < workers.getWindow()) {
+                    final int i = submitted++;
+                    ahead.add(workers.submit(() -> loadDirect(userId, userKey, i, addresses.get(i), sizes.get(i))));
+                }
+                Future<ByteBuffer> next = ahead.poll();
+                if (next == null) break;
+
+                ByteBuffer plain = await(next);
+                try {
+                    total += plain.remaining();
+                    while (plain.hasRemaining()) out.write(plain);
+                } finally {
+                    directPlain.release(plain);
+                }
+                if (progress != null) progress.accept(total);
+            }
+            return total;
+        } finally {
+            for (Future<ByteBuffer> f : ahead) {
+                try {
+                    directPlain.release(f.get());
+                } catch (Exception ignored) {
+                }
+            }
+            Arrays.fill(userKey, (byte) 0);
+        }
+    }
+
+    /**
+     * One chunk read, decrypted and checked against its address; returns the plaintext flipped.
+     */
+    private ByteBuffer loadDirect(int userId, byte[] userKey, int i, String address, int plainSize) throws Exception {
+        ByteBuffer sealed;
+        try (FileChannel ch = FileChannel.open(chunkPath(userId, address), StandardOpenOption.READ)) {
+            int size = (int) ch.size();
+            sealed = directSealed.acquire(size);
+            sealed.limit(size);
+            while (sealed.hasRemaining() && ch.read(sealed) != -1) {
+                // keep reading
+            }
+        } catch (IOException e) {
+            throw new IOException("Chunk " + i + " missing from store: " + address, e);
+        }
+
+        ByteBuffer plain = directPlain.acquire(plainSize);
+        try {
+            sealed.flip();
+            int n;
+            try {
+                n = encryption.decrypt(sealed, plain);
+            } catch (Exception e) {
+                throw new IOException("Chunk " + i + " failed authentication", e);
+            }
+            plain.flip();
+            Mac mac = addressMac(userKey);
+            mac.update(plain.duplicate());
+            if (n != plainSize || !MessageDigest.isEqual(mac.doFinal(), HEX.parseHex(address))) {
+                throw new IOException("Chunk " + i + " does not match its address");
+            }
+            return plain;
+        } catch (Exception e) {
+            directPlain.release(plain);
+            throw e;
+        } finally {
+            directSealed.release(sealed);
+        }
+    }
+
+    /**
+     * Reads the manifest's chunks in order. Up to getWindow() chunks ahead are read, decrypted
+     * and verified on CryptoWorkers while the caller consumes the current one.
+     * Without a user key it returns the stored ciphertext as-is.
+     */
+    private class ChunkInputStream extends InputStream {
+        private final int userId;
+        private final List<String> addresses;
+        private final List<Integer> sizes;
+        private final byte[] userKey;
+        private final ArrayDeque<Future<byte[]>> ahead = new ArrayDeque<>();
+        private int submitted = 0;
+        private int consumed = 0;
+        private byte[] current = new byte[0];
+        private int pos = 0;
+        private boolean closed = false;
+
+        ChunkInputStream(int userId, List<String> addresses, List<Integer> sizes, byte[] userKey) {
+            this.userId = userId;
+            this.addresses = addresses;
+            this.sizes = sizes;
+            this.userKey = userKey;
+        }
+
+        private byte[] load(int i) throws IOException {
+            String address = addresses.get(i);
+            byte[] sealed;
+            try {
+                sealed = Files.readAllBytes(chunkPath(userId, address));
+            } catch (IOException e) {
+                throw new IOException("Chunk " + i + " missing from store: " + address, e);
+            }
+            if (userKey == null) return sealed;
+
+            byte[] plain;
+            try {
+                plain = encryption.decryptFile(sealed);
+            } catch (Exception e) {
+                throw new IOException("Chunk " + i + " failed authentication", e);
+            }
+            try {
+                if (plain.length != sizes.get(i)
+                        || !MessageDigest.isEqual(address(userKey, plain, 0, plain.length), HEX.parseHex(address))) {
+                    Arrays.fill(plain, (byte) 0);
+                    throw new IOException("Chunk " + i + " does not match its address");
+                }
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException("Chunk " + i + " could not be verified", e);
+            }
+            return plain;
+        }
+
+        private boolean advance() throws IOException {
+            while (submitted < addresses.size() && ahead.size() < workers.getWindow()) {
+                final int i = submitted++;
+                ahead.add(workers.submit(() -> load(i)));
+            }
+            Future<byte[]> next = ahead.poll();
+            if (next == null) return false;
+            byte[] chunk;
+            try {
+                chunk = await(next);
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException("Chunk " + consumed + " could not be read", e);
+            }
+            if (userKey != null) Arrays.fill(current, (byte) 0);
+            current = chunk;
+            pos = 0;
+            consumed++;
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (closed) throw new IOException("Stream closed");
+            if (len == 0) return 0;
+            while (pos == current.length) {
+                if (!advance()) return -1;
+            }
+            int n = Math.min(len, current.length - pos);
+            System.arraycopy(current, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public void close() {
+            if (closed) return;
+            closed = true;
+            // Wait for read-ahead so no decrypted chunk is left unwiped
+            for (Future<byte[]> f : ahead) {
+                try {
+                    byte[] chunk = f.get();
+                    if (userKey != null) Arrays.fill(chunk, (byte) 0);
+                } catch (Exception ignored) {
+                }
+            }
+            ahead.clear();
+            if (userKey != null) {
+                Arrays.fill(current, (byte) 0);
+                Arrays.fill(userKey, (byte) 0);
+            }
+        }
+    }
+
+    // ==================== Delete / GC ====================
+
+    @Override
+    public void delete(Connection conn, int userId, int fileId) throws Exception {
+        List<String> addresses = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT chunk_hash FROM vault_file_chunks WHERE file_id = ?")) {
+            ps.setInt(1, fileId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) addresses.add(rs.getString(1));
+            }
+        }
+
+        release(conn, userId, addresses);
+        try (PreparedStatement ps = conn.prepareStatement("DELETE FROM vault_file_chunks WHERE file_id = ?")) {
+            ps.setInt(1, fileId);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Drop one reference to each address (a deleted file's manifest, an abandoned upload's
+     * chunks) on the caller's transaction. Rows that reach zero are stamped with released_at
+     * and kept; sweep() deletes them and their files once the grace period has passed.
+     */
+    void release(Connection conn, int userId, List<String> addresses) throws Exception {
+        // released_at is assigned before ref_count, so both MySQL and SQLite see the old count
+        try (PreparedStatement drop = conn.prepareStatement(
+                "UPDATE vault_chunk_refs SET released_at = CASE WHEN ref_count <= 1 THEN ? ELSE NULL END, " +
+                        "ref_count = ref_count - 1 WHERE user_id = ? AND chunk_hash = ? AND ref_count > 0")) {
+            long now = System.currentTimeMillis();
+            for (String address : addresses) {
+                drop.setLong(1, now);
+                drop.setInt(2, userId);
+                drop.setString(3, address);
+                drop.addBatch();
+            }
+            drop.executeBatch();
+        }
+    }
+
+    /** Run sweep() for this store's root now and every gcGraceMs, once per root per process. */
+    private void scheduleSweep() {
+        synchronized (ChunkBlobStore.class) {
+            if (!SWEPT_ROOTS.add(root.toAbsolutePath().normalize())) return;
+            if (reaper == null) {
+                reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread t = new Thread(r, "vault-chunk-reaper");
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                });
+            }
+        }
+        reaper.scheduleWithFixedDelay(this::sweep, 0, Math.max(gcGraceMs, 60_000L), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Delete chunks released longer than gcGraceMs ago, then chunk files older than that with no
+     * ref row (and stale temp files). Everything it needs is on disk and in the DB, so chunks
+     * left behind by a process that exited are collected by the next one.
+     */
+    void sweep() {
+        long cutoff = System.currentTimeMillis() - gcGraceMs;
+        int removed = 0;
+        try {
+            List<Object[]> released = new ArrayList<>();
+            try (Connection conn = dbManager.getConnection();
+                 PreparedStatement ps = conn.prepareStatement(
+                         "SELECT user_id, chunk_hash FROM vault_chunk_refs WHERE ref_count <= 0 AND released_at <= ?")) {
+                ps.setLong(1, cutoff);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) released.add(new Object[]{rs.getInt(1), rs.getString(2)});
+                }
+            }
+            for (Object[] r : released) {
+                if (reap((Integer) r[0], (String) r[1], cutoff, false)) removed++;
+            }
+            removed += sweepOrphans(cutoff);
+        } catch (Exception e) {
+            System.err.println("Chunk store cleanup failed: " + e.getMessage());
+        }
+        if (removed > 0) {
+            System.out.println("Chunk store: removed " + removed + " unreferenced chunk(s)");
+        }
+    }
+
+    /** Files under {root}/{userId}/{prefix}/ untouched since cutoff whose address has no ref row. */
+    private int sweepOrphans(long cutoff) throws Exception {
+        if (!Files.isDirectory(root)) return 0;
+        int removed = 0;
+        for (Path userDir : listDir(root)) {
+            int userId;
+            try {
+                userId = Integer.parseInt(userDir.getFileName().toString());
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            for (Path prefixDir : listDir(userDir)) {
+                List<String> candidates = new ArrayList<>();
+                for (Path file : listDir(prefixDir)) {
+                    String name = file.getFileName().toString();
+                    if (Files.getLastModifiedTime(file).toMillis() > cutoff) continue;
+                    if (name.endsWith(".tmp")) {
+                        // A writer's temp file never outlives its sync batch
+                        Files.deleteIfExists(file);
+                    } else if (name.length() == 64) {
+                        candidates.add(name);
+                    }
+                }
+                if (candidates.isEmpty()) continue;
+
+                Set<String> referenced = new HashSet<>();
+                try (Connection conn = dbManager.getConnection();
+                     PreparedStatement ps = conn.prepareStatement(
+                             "SELECT chunk_hash FROM vault_chunk_refs WHERE user_id = ? AND chunk_hash LIKE ?")) {
+                    ps.setInt(1, userId);
+                    ps.setString(2, prefixDir.getFileName() + "%");
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) referenced.add(rs.getString(1));
+                    }
+                }
+                for (String address : candidates) {
+                    if (!referenced.contains(address) && reap(userId, address, cutoff, true)) removed++;
+                }
+            }
+        }
+        return removed;
+    }
+
+    private static List<Path> listDir(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) return List.of();
+        try (Stream<Path> s = Files.list(dir)) {
+            return s.collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Delete one chunk's file in a transaction that first takes its ref row: the released row
+     * (only if still unreferenced and released before cutoff), or for an orphan a placeholder
+     * row inserted and dropped again. A writer claiming the address meanwhile blocks on that row
+     * and then finds neither row nor file; a row a writer took first is left alone.
+     * Returns whether the file was deleted.
+     */
+    private boolean reap(int userId, String address, long cutoff, boolean orphan) throws SQLException, IOException {
+        try (Connection conn = dbManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                if (orphan) {
+                    try (PreparedStatement ps = conn.prepareStatement(
+                            "INSERT INTO vault_chunk_refs (user_id, chunk_hash, ref_count, stored_size, released_at) " +
+                                    "VALUES (?, ?, 0, 0, ?)")) {
+                        ps.setInt(1, userId);
+                        ps.setString(2, address);
+                        ps.setLong(3, cutoff);
+                        ps.executeUpdate();
+                    } catch (SQLException claimed) {
+                        // A writer inserted the row (or the user is gone); not an orphan to take
+                        conn.rollback();
+                        return false;
+                    }
+                }
+                int taken;
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "DELETE FROM vault_chunk_refs WHERE user_id = ? AND chunk_hash = ? " +
+                                "AND ref_count <= 0 AND released_at <= ?")) {
+                    ps.setInt(1, userId);
+                    ps.setString(2, address);
+                    ps.setLong(3, cutoff);
+                    taken = ps.executeUpdate();
+                }
+                boolean deleted = taken > 0 && Files.deleteIfExists(chunkPath(userId, address));
+                conn.commit();
+                return deleted;
+            } catch (SQLException | IOException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+}
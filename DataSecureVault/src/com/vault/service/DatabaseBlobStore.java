@@ -0,0 +1,378 @@
+package com.vault.service;
+
+import com.vault.core.DatabaseManager;
+import com.vault.core.EncryptionManager;
+import com.vault.core.ParallelSegmentCipher;
+import com.vault.core.SegmentedCipher;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.security.DigestInputStream;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.function.LongConsumer;
+
+/**
+ * DatabaseBlobStore
+ * - Keeps a file's ciphertext in vault_files.encrypted_data as one segmented AES-GCM stream
+ * - Uploads go through setBinaryStream, downloads through getBinaryStream
+ * - Segments are encrypted / decrypted across cores (ParallelSegmentCipher)
+ * - Range reads fetch just the covering segments with SUBSTR, so only those are decrypted
+ * - content_hash (SHA-256 of the ciphertext) is recorded on write; rows that have one are
+ *   read through the local BlobCache, so repeat opens don't transfer the blob again
+ * - Blobs written before streaming (single AES-GCM envelope or legacy CBC) still open; the
+ *   row's cipher_format says which format it holds, nothing is inferred from the bytes
+ */
+class DatabaseBlobStore implements FileBlobStore {
+
+    static final String ID = "db";
+    /** cipher_format of a segmented stream; whole blobs are EncryptionManager formats. */
+    static final String FORMAT_SEGMENTED = "seg";
+
+    /** Whole-blob formats were capped at this size, which bounds the legacy read path. */
+    private static final int LEGACY_MAX_BLOB = 10 * 1024 * 1024 + 64;
+    /** Largest byte[] a range read allocates (segments covering the range, and their ciphertext). */
+    private static final long MAX_ARRAY = Integer.MAX_VALUE - 8;
+
+    private final DatabaseManager dbManager;
+    private final EncryptionManager encryption;
+    private final SegmentedCipher cipher;
+    private final ParallelSegmentCipher segmented;
+    private final int segmentSize;
+    private final BlobCache cache;
+
+    DatabaseBlobStore(DatabaseManager dbManager, EncryptionManager encryption, int segmentSize) {
+        this.dbManager = dbManager;
+        this.encryption = encryption;
+        this.cipher = encryption.segmented();
+        this.segmented = new ParallelSegmentCipher(cipher, segmentSize);
+        this.segmentSize = segmentSize;
+        this.cache = BlobCache.getInstance();
+    }
+
+    @Override
+    public String getId() {
+        return ID;
+    }
+
+    @Override
+    public String getCipherFormat() {
+        return FORMAT_SEGMENTED;
+    }
+
+    @Override
+    public void write(Connection conn, int userId, int fileId, InputStream plaintext, long size) throws Exception {
+        String sql = "UPDATE vault_files SET encrypted_data = ? WHERE id = ? AND user_id = ?";
+        MessageDigest sha = MessageDigest.getInstance("SHA-256");
+        VaultFileService.CountingInputStream stored = new VaultFileService.CountingInputStream(
+                new DigestInputStream(segmented.encryptingStream(plaintext, segmentSize), sha));
+        try (PreparedStatement ps = conn.prepareStatement(sql);
+             InputStream ciphertext = stored) {
+            if (size >= 0) {
+                ps.setBinaryStream(1, ciphertext, SegmentedCipher.ciphertextLength(size, segmentSize));
+            } else {
+                ps.setBinaryStream(1, ciphertext);
+            }
+            ps.setInt(2, fileId);
+            ps.setInt(3, userId);
+            ps.executeUpdate();
+        }
+
+        // The driver has consumed the whole stream, so the digest and count cover exactly what was stored;
+        // keeping the length here means reads never ask the database for LENGTH(encrypted_data)
+        try (PreparedStatement ps = conn.prepareStatement(
+                "UPDATE vault_files SET content_hash = ?, encrypted_size = ? WHERE id = ? AND user_id = ?")) {
+            ps.setString(1, HexFormat.of().formatHex(sha.digest()));
+            ps.setLong(2, stored.count);
+            ps.setInt(3, fileId);
+            ps.setInt(4, userId);
+            ps.executeUpdate();
+        }
+    }
+
+    @Override
+    public InputStream open(int userId, int fileId) throws Exception {
+        BlobInfo info = blobInfo(userId, fileId);
+        if (info == null) return null;
+        InputStream in = openCiphertext(userId, fileId, info);
+        if (in == null) return null;
+
+        try {
+            if (!info.segmented()) {
+                byte[] blob = readLegacyBlob(in);
+                in.close();
+                return new ByteArrayInputStream(encryption.decryptFile(blob, info.algorithm()));
+            }
+            // Authenticate the first segment up front, so a bad key or corrupt header fails here
+            PushbackInputStream plain = new PushbackInputStream(segmented.decryptingStream(in), 1);
+            int b = plain.read();
+            if (b != -1) plain.unread(b);
+            return plain;
+        } catch (Exception e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public long decryptTo(int userId, int fileId, WritableByteChannel out, LongConsumer progress) throws Exception {
+        BlobInfo info = blobInfo(userId, fileId);
+        InputStream in = info == null ? null : openCiphertext(userId, fileId, info);
+        if (in == null) throw new IOException("File content not found");
+
+        try {
+            // The stored marker decides the format; a segment that fails here is an error, not a fallback
+            if (info.segmented()) return segmented.decryptTo(in, out, progress);
+
+            // Whole-blob formats (at most 10 MB): decrypt in memory, then write
+            byte[] data = encryption.decryptFile(readLegacyBlob(in), info.algorithm());
+            try {
+                ByteBuffer buf = ByteBuffer.wrap(data);
+                while (buf.hasRemaining()) out.write(buf);
+                if (progress != null) progress.accept(data.length);
+                return data.length;
+            } finally {
+                Arrays.fill(data, (byte) 0);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads the header and blob length first, then only the ciphertext of the segments that
+     * overlap the range. Whole-blob formats fall back to decrypting from the start.
+     */
+    @Override
+    public byte[] readRange(int userId, int fileId, long offset, int length) throws Exception {
+        if (offset < 0 || length < 0) throw new IllegalArgumentException("Negative offset or length");
+
+        BlobInfo info = blobInfo(userId, fileId);
+        if (info == null) throw new IOException("File content not found");
+        if (!info.segmented()) {
+            return FileBlobStore.super.readRange(userId, fileId, offset, length);
+        }
+
+        ByteBuffer blob = cachedBlob(userId, fileId, info);
+        long blobLength = info.length;
+        byte[] head;
+        if (blob != null) {
+            head = slice(blob, 0, (int) Math.min(blobLength, SegmentedCipher.HEADER_LENGTH));
+        } else {
+            String sql = "SELECT SUBSTR(encrypted_data, 1, ?) FROM vault_files WHERE id = ? AND user_id = ?";
+            try (Connection conn = dbManager.getConnection();
+                 PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setInt(1, SegmentedCipher.HEADER_LENGTH);
+                ps.setInt(2, fileId);
+                ps.setInt(3, userId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) throw new IOException("File content not found");
+                    head = rs.getBytes(1);
+                }
+            }
+        }
+        if (head == null) throw new IOException("File content not found");
+
+        SegmentedCipher.Header header = SegmentedCipher.parseHeader(head);
+        long plainLength = header.plaintextLength(blobLength);
+        if (offset >= plainLength || length == 0) return new byte[0];
+
+        long end = Math.min(plainLength, offset + length);
+        long first = offset / header.segmentSize;
+        long last = (end - 1) / header.segmentSize;
+        long lastSegment = header.segmentCount(plainLength) - 1;
+        long from = header.segmentOffset(first);
+        long to = Math.min(blobLength, header.segmentOffset(last + 1));
+        long span = (last - first + 1) * header.segmentSize;
+        if (span > MAX_ARRAY || to - from > MAX_ARRAY) throw new IllegalArgumentException("Range too large: " + length + " bytes");
+
+        byte[] sealed;
+        if (blob != null) {
+            sealed = slice(blob, from, (int) (to - from));
+        } else {
+            String sql = "SELECT SUBSTR(encrypted_data, ?, ?) FROM vault_files WHERE id = ? AND user_id = ?";
+            try (Connection conn = dbManager.getConnection();
+                 PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setLong(1, from + 1);
+                ps.setLong(2, to - from);
+                ps.setInt(3, fileId);
+                ps.setInt(4, userId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) throw new IOException("File content not found");
+                    sealed = rs.getBytes(1);
+                }
+            }
+        }
+        if (sealed == null || sealed.length != to - from) throw new IOException("File content changed while reading");
+
+        byte[] plain = new byte[(int) span];
+        int produced = 0;
+        try {
+            int pos = 0;
+            for (long i = first; i <= last; i++) {
+                int n = Math.min(header.segmentSize + SegmentedCipher.TAG_LENGTH, sealed.length - pos);
+                produced += cipher.decryptSegment(header, i, i == lastSegment, sealed, pos, n, plain, produced);
+                pos += n;
+            }
+        } catch (GeneralSecurityException e) {
+            Arrays.fill(plain, (byte) 0);
+            throw new IOException("Segment failed authentication", e);
+        }
+        int skip = (int) (offset - first * header.segmentSize);
+        byte[] range = Arrays.copyOfRange(plain, skip, skip + (int) (end - offset));
+        Arrays.fill(plain, (byte) 0);
+        return range;
+    }
+
+    /**
+     * Stream of the stored ciphertext, or null: the cached copy when there is one,
+     * otherwise straight from the row.
+     */
+    @Override
+    public InputStream openCiphertext(int userId, int fileId) throws Exception {
+        BlobInfo info = blobInfo(userId, fileId);
+        return info == null ? null : openCiphertext(userId, fileId, info);
+    }
+
+    private InputStream openCiphertext(int userId, int fileId, BlobInfo info) throws Exception {
+        ByteBuffer blob = cachedBlob(userId, fileId, info);
+        return blob != null ? new BlobCache.BufferInputStream(blob) : queryCiphertext(userId, fileId);
+    }
+
+    /** What the row says about its blob, read without the blob itself. */
+    private static final class BlobInfo {
+        final String hash;      // content_hash, null for rows written before hashing
+        final long length;      // ciphertext bytes
+        final String format;    // cipher_format
+
+        BlobInfo(String hash, long length, String format) {
+            this.hash = hash;
+            this.length = length;
+            this.format = format;
+        }
+
+        boolean segmented() {
+            return FORMAT_SEGMENTED.equals(format);
+        }
+
+        /** Whole-blob format (v1 envelope or legacy CBC). */
+        EncryptionManager.Algorithm algorithm() {
+            return EncryptionManager.algorithmFor(format);
+        }
+    }
+
+    private BlobInfo blobInfo(int userId, int fileId) throws Exception {
+        // Rows from before encrypted_size fall back to LENGTH(), which reads the blob
+        String sql = "SELECT content_hash, COALESCE(encrypted_size, LENGTH(encrypted_data)), cipher_format " +
+                "FROM vault_files WHERE id = ? AND user_id = ?";
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, fileId);
+            ps.setInt(2, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? new BlobInfo(rs.getString(1), rs.getLong(2), rs.getString(3)) : null;
+            }
+        }
+    }
+
+    /**
+     * The blob from the local cache, copying it there on a miss. null when the row has no
+     * content_hash (written before hashing), doesn't fit in the cache, or changed mid-copy.
+     */
+    private ByteBuffer cachedBlob(int userId, int fileId, BlobInfo info) throws Exception {
+        if (info.hash == null || !cache.accepts(info.length)) return null;
+
+        ByteBuffer hit = cache.get(userId, fileId, info.hash);
+        if (hit != null) return hit;
+        try (InputStream in = queryCiphertext(userId, fileId)) {
+            return in == null ? null : cache.fill(userId, fileId, info.hash, in);
+        }
+    }
+
+    private static byte[] slice(ByteBuffer blob, long from, int length) {
+        byte[] out = new byte[length];
+        blob.get((int) from, out);
+        return out;
+    }
+
+    /**
+     * Stream of the row's ciphertext, or null. Closing it releases the result set,
+     * statement and pooled connection.
+     */
+    private InputStream queryCiphertext(int userId, int fileId) throws Exception {
+        String sql = "SELECT encrypted_data FROM vault_files WHERE id = ? AND user_id = ?";
+        Connection conn = dbManager.getConnection();
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = conn.prepareStatement(sql);
+            ps.setInt(1, fileId);
+            ps.setInt(2, userId);
+            rs = ps.executeQuery();
+            if (!rs.next()) {
+                closeQuietly(rs, ps, conn);
+                return null;
+            }
+            InputStream data = rs.getBinaryStream("encrypted_data");
+            if (data == null) data = new ByteArrayInputStream(new byte[0]);
+            return new ResultSetStream(data, rs, ps, conn);
+        } catch (Exception e) {
+            closeQuietly(rs, ps, conn);
+            throw e;
+        }
+    }
+
+    @Override
+    public void delete(Connection conn, int userId, int fileId) {
+        // The blob goes with the vault_files row; only the local copy needs dropping
+        cache.invalidate(userId, fileId);
+    }
+
+    private static byte[] readLegacyBlob(InputStream in) throws IOException {
+        byte[] blob = in.readNBytes(LEGACY_MAX_BLOB + 1);
+        if (blob.length > LEGACY_MAX_BLOB) throw new IOException("Unrecognised file format");
+        return blob;
+    }
+
+    static void closeQuietly(AutoCloseable... resources) {
+        for (AutoCloseable r : resources) {
+            if (r == null) continue;
+            try {
+                r.close();
+            } catch (Exception ignored) {
+            }
+        }
+    }
+
+    /** Binary column stream that owns the JDBC resources it was read from. */
+    private static class ResultSetStream extends FilterInputStream {
+        private final AutoCloseable[] owned;
+        private boolean closed = false;
+
+        ResultSetStream(InputStream in, AutoCloseable... owned) {
+            super(in);
+            this.owned = owned;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try {
+                super.close();
+            } finally {
+                closeQuietly(owned);
+            }
+        }
+    }
+}
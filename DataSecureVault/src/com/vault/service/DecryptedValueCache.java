@@ -0,0 +1,235 @@
+package com.vault.service;
+
+import com.vault.model.Secret;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DecryptedValueCache
+ * - Optional short-lived cache of decrypted secrets keyed by (userId, secretId)
+ * - Plaintext is held as UTF-8 bytes and zeroed on eviction, expiry, update, delete and clear
+ * - Strict budget on entries and plaintext bytes (LRU eviction)
+ * - Entries expire after ttlMs; everything is wiped after idleTimeoutMs without a lookup
+ * - When disabled no entries are ever stored and no timer thread is started
+ * - A generation counter, bumped by every invalidation, lets every fill (views and prefetch)
+ *   skip storing a value that may have changed while it was being read and decrypted
+ *
+ * Note: callers still receive the value as a String (the UI needs one), which the
+ * JVM cannot wipe; the cache only guarantees its own copy doesn't linger.
+ */
+public class DecryptedValueCache {
+
+    private static class Entry {
+        final String keyName;
+        final String encryptedValue;
+        final Timestamp createdAt;
+        final Timestamp updatedAt;
+        final byte[] plain;
+        final long expiresAt;
+
+        Entry(Secret s, long expiresAt) {
+            this.keyName = s.getKeyName();
+            this.encryptedValue = s.getEncryptedValue();
+            this.createdAt = s.getCreatedAt();
+            this.updatedAt = s.getUpdatedAt();
+            this.plain = s.getDecryptedValue().getBytes(StandardCharsets.UTF_8);
+            this.expiresAt = expiresAt;
+        }
+
+        void wipe() {
+            Arrays.fill(plain, (byte) 0);
+        }
+    }
+
+    private final boolean enabled;
+    private final long ttlMs;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long idleTimeoutMs;
+
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes = 0;
+    private long generation = 0;
+    private long lastAccess = System.currentTimeMillis();
+    private long hits;
+    private long misses;
+
+    public DecryptedValueCache(boolean enabled, long ttlMs, int maxEntries, long maxBytes, long idleTimeoutMs) {
+        this.enabled = enabled && ttlMs > 0 && maxEntries > 0 && maxBytes > 0;
+        this.ttlMs = ttlMs;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.idleTimeoutMs = idleTimeoutMs;
+
+        if (this.enabled) {
+            ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "vault-decrypted-cache-sweeper");
+                t.setDaemon(true);
+                return t;
+            });
+            long period = Math.max(250, Math.min(ttlMs, 1_000));
+            sweeper.scheduleWithFixedDelay(this::sweep, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Build from cache.decrypted.* system properties.
+     */
+    public static DecryptedValueCache fromSystemProperties() {
+        return new DecryptedValueCache(
+                Boolean.parseBoolean(System.getProperty("cache.decrypted.enabled", "false")),
+                Long.getLong("cache.decrypted.ttlMs", 30_000L),
+                Integer.getInteger("cache.decrypted.maxEntries", 64),
+                Long.getLong("cache.decrypted.maxBytes", 256 * 1024L),
+                Long.getLong("cache.decrypted.idleTimeoutMs", 120_000L));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    private static long key(int userId, int secretId) {
+        return ((long) userId << 32) | (secretId & 0xFFFFFFFFL);
+    }
+
+    // ==================== Lookup / store ====================
+
+    /**
+     * A fresh Secret (including decrypted value) or null on miss/expiry.
+     */
+    public synchronized Secret get(int userId, int secretId) {
+        if (!enabled) return null;
+        long now = System.currentTimeMillis();
+        lastAccess = now;
+
+        Entry e = entries.get(key(userId, secretId));
+        if (e == null || e.expiresAt <= now) {
+            if (e != null) evict(key(userId, secretId));
+            misses++;
+            return null;
+        }
+        hits++;
+
+        Secret s = new Secret();
+        s.setId(secretId);
+        s.setKeyName(e.keyName);
+        s.setEncryptedValue(e.encryptedValue);
+        s.setCreatedAt(e.createdAt);
+        s.setUpdatedAt(e.updatedAt);
+        s.setDecryptedValue(new String(e.plain, StandardCharsets.UTF_8));
+        return s;
+    }
+
+    /**
+     * Whether a fresh entry exists (not counted as a lookup; nothing is decrypted or copied).
+     */
+    public synchronized boolean contains(int userId, int secretId) {
+        if (!enabled) return false;
+        Entry e = entries.get(key(userId, secretId));
+        return e != null && e.expiresAt > System.currentTimeMillis();
+    }
+
+    /**
+     * Read before loading a secret from the database and pass to put(userId, s, generation).
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * put() unless something was invalidated since generation was read. Returns whether it was stored.
+     */
+    public synchronized boolean put(int userId, Secret s, long generation) {
+        if (generation != this.generation) return false;
+        put(userId, s);
+        return true;
+    }
+
+    private void put(int userId, Secret s) {
+        if (!enabled || s.getDecryptedValue() == null) return;
+        long now = System.currentTimeMillis();
+        lastAccess = now;
+
+        Entry e = new Entry(s, now + ttlMs);
+        if (e.plain.length > maxBytes) {
+            e.wipe();
+            return;
+        }
+        evict(key(userId, s.getId()));
+        entries.put(key(userId, s.getId()), e);
+        totalBytes += e.plain.length;
+
+        Iterator<Map.Entry<Long, Entry>> it = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || totalBytes > maxBytes) && it.hasNext()) {
+            Entry eldest = it.next().getValue();
+            it.remove();
+            totalBytes -= eldest.plain.length;
+            eldest.wipe();
+        }
+    }
+
+    // ==================== Invalidation ====================
+
+    public synchronized void evict(int userId, int secretId) {
+        generation++;
+        if (enabled) evict(key(userId, secretId));
+    }
+
+    private void evict(long key) {
+        Entry e = entries.remove(key);
+        if (e != null) {
+            totalBytes -= e.plain.length;
+            e.wipe();
+        }
+    }
+
+    public synchronized void clearUser(int userId) {
+        generation++;
+        Iterator<Map.Entry<Long, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, Entry> me = it.next();
+            if ((int) (me.getKey() >>> 32) == userId) {
+                it.remove();
+                totalBytes -= me.getValue().plain.length;
+                me.getValue().wipe();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        generation++;
+        for (Entry e : entries.values()) e.wipe();
+        entries.clear();
+        totalBytes = 0;
+    }
+
+    private synchronized void sweep() {
+        long now = System.currentTimeMillis();
+        if (idleTimeoutMs > 0 && now - lastAccess > idleTimeoutMs) {
+            clear();
+            return;
+        }
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry e = it.next();
+            if (e.expiresAt <= now) {
+                it.remove();
+                totalBytes -= e.plain.length;
+                e.wipe();
+            }
+        }
+    }
+
+    public synchronized String getStats() {
+        return "DecryptedValueCache{enabled=" + enabled + ", entries=" + entries.size()
+                + ", bytes=" + totalBytes + "/" + maxBytes + ", hits=" + hits + ", misses=" + misses + "}";
+    }
+}
@@ -0,0 +1,68 @@
+package com.vault.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
+import java.sql.Connection;
+import java.util.function.LongConsumer;
+
+/**
+ * FileBlobStore
+ * - Where the encrypted content of a vault_files row lives
+ * - The id is recorded in vault_files.storage so every file is read back from the store that wrote it
+ * - write/delete run inside the caller's transaction on conn
+ */
+public interface FileBlobStore {
+
+    /** Value stored in vault_files.storage. */
+    String getId();
+
+    /** Value stored in vault_files.cipher_format for files this store writes. */
+    String getCipherFormat();
+
+    /**
+     * Encrypt and store the plaintext for the (already inserted) file row.
+     * size is its exact length, or -1 when not known up front (e.g. compressed).
+     */
+    void write(Connection conn, int userId, int fileId, InputStream plaintext, long size) throws Exception;
+
+    /** Decrypted content; the caller closes the stream. */
+    InputStream open(int userId, int fileId) throws Exception;
+
+    /**
+     * Plaintext bytes [offset, offset + length), shorter at the end of the file.
+     * Stores override this to decrypt only the segments / chunks that cover the range.
+     */
+    default byte[] readRange(int userId, int fileId, long offset, int length) throws Exception {
+        try (InputStream in = open(userId, fileId)) {
+            if (in == null) throw new IOException("File content not found");
+            return skipAndRead(in, offset, length);
+        }
+    }
+
+    /**
+     * Decrypt the file straight into out (through direct buffers where the store can),
+     * reporting the running byte total to progress. Returns bytes written.
+     */
+    long decryptTo(int userId, int fileId, WritableByteChannel out, LongConsumer progress) throws Exception;
+
+    /** Stored ciphertext as-is, for display. */
+    InputStream openCiphertext(int userId, int fileId) throws Exception;
+
+    /** Drop the file's content (the caller deletes the vault_files row in the same transaction). */
+    void delete(Connection conn, int userId, int fileId) throws Exception;
+
+    /** Sequential range read: discard offset bytes of in, then read up to length. */
+    static byte[] skipAndRead(InputStream in, long offset, int length) throws IOException {
+        long skipped = 0;
+        while (skipped < offset) {
+            long n = in.skip(offset - skipped);
+            if (n <= 0) {
+                if (in.read() == -1) return new byte[0];
+                n = 1;
+            }
+            skipped += n;
+        }
+        return in.readNBytes(length);
+    }
+}
@@ -0,0 +1,355 @@
+package com.vault.service;
+
+import com.vault.core.ByteBufferPool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.LongConsumer;
+import java.util.zip.Deflater;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * FileCompression
+ * - Optional compression stage in front of file encryption (ciphertext doesn't compress)
+ * - Codec is chosen per upload from file_type and an entropy probe of the first bytes:
+ *   already-compressed formats (jpg, zip, docx, ...) and high-entropy data are stored as-is
+ * - The codec id is kept in vault_files.compression; downloads inflate as they stream
+ * - DEFLATE output is full-flushed every BLOCK_BYTES of plaintext, so inflating can restart at
+ *   any block; a BlockIndex of where each block ends lets readRange fetch and inflate only
+ *   the blocks that cover a range
+ */
+public class FileCompression {
+
+    public enum Codec {
+        NONE("none"),
+        DEFLATE("deflate");
+
+        public final String id;
+
+        Codec(String id) {
+            this.id = id;
+        }
+
+        public static Codec fromId(String id) {
+            if (id == null) return NONE;
+            for (Codec c : values()) {
+                if (c.id.equalsIgnoreCase(id)) return c;
+            }
+            throw new IllegalArgumentException("Unknown compression codec: " + id);
+        }
+    }
+
+    /** Bytes looked at by the entropy probe. */
+    public static final int PROBE_BYTES = 64 * 1024;
+
+    /** Plaintext bytes per restartable DEFLATE block. */
+    public static final int BLOCK_BYTES = 256 * 1024;
+
+    private static final int MAX_ARRAY = Integer.MAX_VALUE - 8;
+
+    /** Below this the deflate framing costs more than it saves. */
+    private static final int MIN_BYTES = 256;
+
+    // Output buffers for inflateTo; direct so channel writes skip the JDK's temporary copy
+    private static final ByteBufferPool INFLATE_BUFFERS = new ByteBufferPool(256 * 1024, 8, true);
+
+    // Containers that are compressed already; deflating them only burns CPU
+    private static final Set<String> PRECOMPRESSED = Set.of(
+            "jpg", "jpeg", "png", "gif", "webp", "heic",
+            "zip", "gz", "tgz", "bz2", "xz", "7z", "rar", "zst",
+            "docx", "xlsx", "pptx", "odt", "ods", "jar", "apk",
+            "mp3", "mp4", "m4a", "mkv", "mov", "avi", "ogg", "webm");
+
+    private final boolean enabled;
+    private final int level;
+    private final double maxEntropy;
+
+    public FileCompression(boolean enabled, int level, double maxEntropy) {
+        this.enabled = enabled;
+        this.level = level;
+        this.maxEntropy = maxEntropy;
+    }
+
+    /**
+     * Build from files.compression* system properties.
+     */
+    public static FileCompression fromSystemProperties() {
+        return new FileCompression(
+                !"off".equalsIgnoreCase(System.getProperty("files.compression", "auto")),
+                Integer.getInteger("files.compression.level", Deflater.DEFAULT_COMPRESSION),
+                Double.parseDouble(System.getProperty("files.compression.maxEntropy", "7.5")));
+    }
+
+    // ==================== Codec choice ====================
+
+    /**
+     * Pick the codec for an upload from its type and a sample of its first bytes.
+     */
+    public Codec choose(String fileType, byte[] probe, int len) {
+        if (!enabled || len < MIN_BYTES) return Codec.NONE;
+        if (fileType != null && PRECOMPRESSED.contains(fileType.toLowerCase(Locale.ROOT))) return Codec.NONE;
+        return entropy(probe, len) <= maxEntropy ? Codec.DEFLATE : Codec.NONE;
+    }
+
+    /**
+     * Shannon entropy in bits per byte (0 = constant, 8 = random / compressed / encrypted).
+     */
+    static double entropy(byte[] data, int len) {
+        int[] counts = new int[256];
+        for (int i = 0; i < len; i++) counts[data[i] & 0xFF]++;
+        double h = 0;
+        for (int c : counts) {
+            if (c == 0) continue;
+            double p = (double) c / len;
+            h -= p * (Math.log(p) / Math.log(2));
+        }
+        return h;
+    }
+
+    // ==================== Streams ====================
+
+    /**
+     * Compressed view of plaintext (pass-through for NONE). For DEFLATE, where each block ends
+     * in the stored stream is appended to index as the stream is read.
+     */
+    public InputStream compress(Codec codec, InputStream plaintext, BlockIndex index) {
+        if (codec == Codec.NONE) return plaintext;
+        return new BlockDeflaterInputStream(plaintext, new Deflater(level), index);
+    }
+
+    /** Decompressed view of stored content (pass-through for NONE). */
+    public InputStream decompress(Codec codec, InputStream stored) {
+        if (codec == Codec.NONE) return stored;
+        Inflater inflater = new Inflater();
+        return new InflaterInputStream(stored, inflater, 64 * 1024) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    // ==================== Blocks ====================
+
+    /**
+     * Stored (compressed) end offset of each BLOCK_BYTES block of plaintext, in order.
+     * Serialized with the file id, so an index copied onto another file is refused.
+     */
+    public static final class BlockIndex {
+        private long[] ends = new long[16];
+        private int count = 0;
+
+        void add(long end) {
+            if (count == ends.length) ends = Arrays.copyOf(ends, count * 2);
+            ends[count++] = end;
+        }
+
+        public int size() {
+            return count;
+        }
+
+        long start(int block) {
+            return block == 0 ? 0 : ends[block - 1];
+        }
+
+        long end(int block) {
+            return ends[block];
+        }
+
+        public byte[] toBytes(int fileId) {
+            ByteBuffer buf = ByteBuffer.allocate(8 + 8 * count);
+            buf.putInt(fileId).putInt(count);
+            for (int i = 0; i < count; i++) buf.putLong(ends[i]);
+            return buf.array();
+        }
+
+        public static BlockIndex fromBytes(int fileId, byte[] data) throws IOException {
+            ByteBuffer buf = ByteBuffer.wrap(data);
+            if (data.length < 8 || buf.getInt() != fileId) throw new IOException("Compression index belongs to another file");
+            int n = buf.getInt();
+            if (n < 0 || buf.remaining() != 8L * n) throw new IOException("Corrupt compression index");
+            BlockIndex index = new BlockIndex();
+            index.ends = new long[Math.max(1, n)];
+            long previous = 0;
+            for (int i = 0; i < n; i++) {
+                long end = buf.getLong();
+                if (end < previous) throw new IOException("Corrupt compression index");
+                index.ends[i] = previous = end;
+            }
+            index.count = n;
+            return index;
+        }
+    }
+
+    /** Reads stored bytes [start, start + length), shorter at the end. */
+    public interface StoredReader {
+        byte[] read(long start, int length) throws Exception;
+    }
+
+    /**
+     * Plaintext [offset, offset + length) of DEFLATE content, shorter at the end. Only the
+     * stored bytes of the blocks that overlap the range are read and inflated.
+     */
+    public static byte[] readRange(BlockIndex index, long offset, int length, StoredReader stored) throws Exception {
+        if (offset < 0 || length < 0) throw new IllegalArgumentException("Negative offset or length");
+        if (length == 0 || offset / BLOCK_BYTES >= index.size()) return new byte[0];
+        int first = (int) (offset / BLOCK_BYTES);
+        int last = (int) Math.min((offset + length - 1) / BLOCK_BYTES, index.size() - 1);
+        long span = index.end(last) - index.start(first);
+        long plainSpan = (long) (last - first + 1) * BLOCK_BYTES;
+        if (span > MAX_ARRAY || plainSpan > MAX_ARRAY) throw new IllegalArgumentException("Range too large: " + length);
+
+        byte[] compressed = stored.read(index.start(first), (int) span);
+        if (compressed == null || compressed.length != span) throw new IOException("Compressed content ends early");
+        // Block 0 starts with the zlib header; the others start right after a full flush
+        Inflater inflater = new Inflater(first > 0);
+        byte[] plain = new byte[(int) plainSpan];
+        try {
+            inflater.setInput(compressed);
+            int n = 0;
+            while (n < plain.length && !inflater.finished()) {
+                int k = inflater.inflate(plain, n, plain.length - n);
+                if (k == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                n += k;
+            }
+            int skip = (int) (offset - (long) first * BLOCK_BYTES);
+            return Arrays.copyOfRange(plain, Math.min(skip, n), (int) Math.min(n, (long) skip + length));
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed content", e);
+        } finally {
+            inflater.end();
+            Arrays.fill(plain, (byte) 0);
+        }
+    }
+
+    /**
+     * Deflates BLOCK_BYTES of plaintext at a time, ending each block with a full flush (byte
+     * aligned, no back-references across it) and recording the stored offset it ends at.
+     */
+    private static final class BlockDeflaterInputStream extends InputStream {
+        private final InputStream in;
+        private final Deflater deflater;
+        private final BlockIndex index;
+        private final byte[] block = new byte[BLOCK_BYTES];
+        private final byte[] out = new byte[64 * 1024];
+        private int outPos = 0;
+        private int outLen = 0;
+        private long produced = 0;
+        private boolean eof = false;
+        private boolean draining = false;
+        private boolean finishing = false;
+
+        BlockDeflaterInputStream(InputStream in, Deflater deflater, BlockIndex index) {
+            this.in = in;
+            this.deflater = deflater;
+            this.index = index;
+        }
+
+        /** Next piece of output into out; false at the end of the stream. */
+        private boolean fill() throws IOException {
+            outPos = 0;
+            outLen = 0;
+            if (!draining && !finishing) {
+                int n = eof ? 0 : in.readNBytes(block, 0, BLOCK_BYTES);
+                if (n < BLOCK_BYTES) eof = true;
+                if (n > 0) {
+                    deflater.setInput(block, 0, n);
+                    draining = true;
+                } else {
+                    deflater.finish();
+                    finishing = true;
+                }
+            }
+            if (draining) {
+                outLen = deflater.deflate(out, 0, out.length, Deflater.FULL_FLUSH);
+                produced += outLen;
+                // A flush that didn't fill the buffer is complete
+                if (outLen < out.length) {
+                    draining = false;
+                    if (index != null) index.add(produced);
+                }
+                return true;
+            }
+            if (deflater.finished()) return false;
+            outLen = deflater.deflate(out);
+            produced += outLen;
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            while (outPos == outLen) {
+                if (!fill()) return -1;
+            }
+            int n = Math.min(len, outLen - outPos);
+            System.arraycopy(out, outPos, b, off, n);
+            outPos += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                in.close();
+            } finally {
+                deflater.end();
+                Arrays.fill(block, (byte) 0);
+            }
+        }
+    }
+
+    /**
+     * Inflate stored content into out through a pooled direct buffer, reporting the running
+     * plaintext total to progress. Returns bytes written.
+     */
+    public long inflateTo(Codec codec, InputStream stored, WritableByteChannel out, LongConsumer progress) throws IOException {
+        if (codec != Codec.DEFLATE) throw new IllegalArgumentException("Not an inflatable codec: " + codec);
+        Inflater inflater = new Inflater();
+        ByteBuffer buf = INFLATE_BUFFERS.acquire();
+        byte[] input = new byte[64 * 1024];
+        long total = 0;
+        try {
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    int n = stored.read(input);
+                    if (n == -1) throw new IOException("Compressed content ends early");
+                    inflater.setInput(input, 0, n);
+                } else if (inflater.needsDictionary()) {
+                    throw new IOException("Compressed content needs a preset dictionary");
+                }
+                buf.clear();
+                try {
+                    inflater.inflate(buf);
+                } catch (DataFormatException e) {
+                    throw new IOException("Corrupt compressed content", e);
+                }
+                buf.flip();
+                total += buf.remaining();
+                while (buf.hasRemaining()) out.write(buf);
+                if (progress != null) progress.accept(total);
+            }
+            return total;
+        } finally {
+            inflater.end();
+            INFLATE_BUFFERS.release(buf);
+        }
+    }
+}
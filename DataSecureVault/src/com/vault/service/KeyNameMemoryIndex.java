@@ -0,0 +1,201 @@
+package com.vault.service;
+
+import com.vault.model.Secret;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * KeyNameMemoryIndex
+ * - In-memory counterpart of KeyNameSearchIndex for search-as-you-type: the same padded
+ *   lower-case trigrams, held per user in a map of trigram -> secret ids
+ * - Built once per session from the user's metadata (never values), then patched on
+ *   add / update / delete, so typing never touches the database
+ * - Queries of 3+ characters intersect the id sets, smallest first; shorter ones scan the
+ *   lower-cased names, which are kept alongside
+ * - Matches are ranked as KeyNameSearchIndex.rank does, but only the top limit are kept
+ *   (bounded heap), so a one-letter query over a large vault doesn't sort every match
+ * - Bounded by total secrets across users; a user who doesn't fit is searched in the database
+ * - A per-user version guards against installing an index that raced with a write
+ */
+public class KeyNameMemoryIndex {
+
+    private final int maxEntries;
+    private final Map<Integer, UserIndex> users = new HashMap<>();
+    private final Map<Integer, Long> versions = new HashMap<>();
+    private int totalEntries = 0;
+
+    // Best match first: score, then position, then length, then name (as KeyNameSearchIndex.rank)
+    private static final Comparator<Match> RANK = Comparator
+            .comparingLong((Match m) -> m.key)
+            .thenComparing(m -> m.entry.meta.getKeyName());
+
+    /** An indexed secret and its lower-cased key name. */
+    private static final class Entry {
+        final Secret meta;
+        final String lower;
+
+        Entry(Secret meta) {
+            this.meta = meta;
+            this.lower = meta.getKeyName().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /** A matching entry with its rank packed into one long (score | position | length). */
+    private static final class Match {
+        final Entry entry;
+        final long key;
+
+        Match(Entry entry, long key) {
+            this.entry = entry;
+            this.key = key;
+        }
+    }
+
+    /** One user's secrets by id and their trigrams. */
+    private static final class UserIndex {
+        final Map<Integer, Entry> secrets = new HashMap<>();
+        final Map<String, Set<Integer>> grams = new HashMap<>();
+
+        void add(Secret meta) {
+            secrets.put(meta.getId(), new Entry(meta));
+            for (String gram : KeyNameSearchIndex.trigrams(meta.getKeyName())) {
+                grams.computeIfAbsent(gram, g -> new HashSet<>()).add(meta.getId());
+            }
+        }
+
+        boolean remove(int secretId) {
+            Entry old = secrets.remove(secretId);
+            if (old == null) return false;
+            for (String gram : KeyNameSearchIndex.trigrams(old.meta.getKeyName())) {
+                Set<Integer> ids = grams.get(gram);
+                if (ids != null && ids.remove(secretId) && ids.isEmpty()) grams.remove(gram);
+            }
+            return true;
+        }
+    }
+
+    public KeyNameMemoryIndex(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    // ==================== Build ====================
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Version to pass to build(); capture it before loading the user's metadata.
+     */
+    public synchronized long version(int userId) {
+        return versions.getOrDefault(userId, 0L);
+    }
+
+    /**
+     * Index a freshly loaded listing unless a write for this user happened since version
+     * was read, or it would take the index past maxEntries. Returns whether it was indexed.
+     */
+    public synchronized boolean build(int userId, List<Secret> listing, long version) {
+        if (maxEntries <= 0 || version != version(userId)) return false;
+        UserIndex previous = users.get(userId);
+        int others = totalEntries - (previous != null ? previous.secrets.size() : 0);
+        if (others + listing.size() > maxEntries) return false;
+
+        UserIndex index = new UserIndex();
+        for (Secret meta : listing) index.add(meta);
+        users.put(userId, index);
+        totalEntries = others + index.secrets.size();
+        return true;
+    }
+
+    // ==================== Maintenance ====================
+
+    /**
+     * Insert or replace one secret after add/update.
+     */
+    public synchronized void upsert(int userId, Secret meta) {
+        bump(userId);
+        UserIndex index = users.get(userId);
+        if (index == null) return;
+        if (index.remove(meta.getId())) totalEntries--;
+        index.add(meta);
+        totalEntries++;
+    }
+
+    public synchronized void remove(int userId, int secretId) {
+        bump(userId);
+        UserIndex index = users.get(userId);
+        if (index != null && index.remove(secretId)) totalEntries--;
+    }
+
+    public synchronized void invalidate(int userId) {
+        bump(userId);
+        UserIndex previous = users.remove(userId);
+        if (previous != null) totalEntries -= previous.secrets.size();
+    }
+
+    private void bump(int userId) {
+        versions.merge(userId, 1L, Long::sum);
+    }
+
+    // ==================== Search ====================
+
+    /**
+     * Secrets whose key name contains query (case-insensitive), best matches first,
+     * or null when userId isn't indexed.
+     */
+    public synchronized List<Secret> search(int userId, String query, int limit) {
+        UserIndex index = users.get(userId);
+        if (index == null) return null;
+
+        String q = query.toLowerCase(Locale.ROOT);
+        // Worst of the best limit matches on top
+        PriorityQueue<Match> best = new PriorityQueue<>(Math.min(limit, 1024) + 1, RANK.reversed());
+        if (q.length() >= 3) {
+            List<Set<Integer>> postings = new ArrayList<>();
+            for (String gram : KeyNameSearchIndex.queryTrigrams(q)) {
+                Set<Integer> ids = index.grams.get(gram);
+                if (ids == null) return new ArrayList<>();
+                postings.add(ids);
+            }
+            postings.sort(Comparator.comparingInt(Set::size));
+            outer:
+            for (Integer id : postings.get(0)) {
+                for (int i = 1; i < postings.size(); i++) {
+                    if (!postings.get(i).contains(id)) continue outer;
+                }
+                offer(best, index.secrets.get(id), q, limit);
+            }
+        } else {
+            for (Entry e : index.secrets.values()) offer(best, e, q, limit);
+        }
+
+        List<Match> ranked = new ArrayList<>(best);
+        ranked.sort(RANK);
+        List<Secret> out = new ArrayList<>(ranked.size());
+        for (Match m : ranked) out.add(m.entry.meta);
+        return out;
+    }
+
+    private static void offer(PriorityQueue<Match> best, Entry e, String q, int limit) {
+        int at = e.lower.indexOf(q);
+        if (at < 0) return;   // trigram false positive
+        long key = ((long) KeyNameSearchIndex.score(e.lower, q) << 48) | ((long) at << 24) | e.lower.length();
+        if (best.size() >= limit && key > best.peek().key) return;
+        Match m = new Match(e, key);
+        if (best.size() < limit) {
+            best.add(m);
+        } else if (RANK.compare(m, best.peek()) < 0) {
+            best.poll();
+            best.add(m);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.vault.service;
+
+import com.vault.model.Secret;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * KeyNameSearchIndex
+ * - Trigram index over vault_data.key_name stored in secret_key_trigrams
+ * - Each name is indexed as lower-case trigrams starting at every character
+ *   (the tail is padded), so any substring of length >= 1 maps to an index range
+ * - Queries of 3+ characters intersect their trigrams; shorter ones use a prefix range
+ * - Candidates are verified in memory and ranked: exact, prefix, word start, anywhere
+ * - Works the same on MySQL and SQLite (no FULLTEXT / FTS5 dependency)
+ */
+public class KeyNameSearchIndex {
+
+    private static final char PAD = '\u0001';
+
+    private static final String DELETE_SQL = "DELETE FROM secret_key_trigrams WHERE secret_id = ?";
+    private static final String INSERT_SQL =
+            "INSERT INTO secret_key_trigrams (user_id, trigram, secret_id) VALUES (?, ?, ?)";
+
+    // Users whose index has been checked against vault_data in this process
+    private final Set<Integer> verifiedUsers = ConcurrentHashMap.newKeySet();
+
+    // ==================== Maintenance ====================
+
+    /**
+     * (Re)index one secret. Call inside the same transaction as the vault_data change.
+     */
+    public void index(Connection conn, int userId, int secretId, String keyName) throws SQLException {
+        remove(conn, secretId);
+        try (PreparedStatement ps = conn.prepareStatement(INSERT_SQL)) {
+            for (String gram : trigrams(keyName)) {
+                ps.setInt(1, userId);
+                ps.setString(2, gram);
+                ps.setInt(3, secretId);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    public void remove(Connection conn, int secretId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(DELETE_SQL)) {
+            ps.setInt(1, secretId);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Backfill a user's index once per process if it is out of step with vault_data
+     * (e.g. secrets created before the index existed).
+     */
+    public void ensureIndexed(Connection conn, int userId) throws SQLException {
+        if (verifiedUsers.contains(userId)) return;
+
+        int secrets = count(conn, "SELECT COUNT(*) FROM vault_data WHERE user_id = ?", userId);
+        int indexed = count(conn, "SELECT COUNT(DISTINCT secret_id) FROM secret_key_trigrams WHERE user_id = ?", userId);
+        if (secrets != indexed) {
+            rebuild(conn, userId);
+        }
+        verifiedUsers.add(userId);
+    }
+
+    private void rebuild(Connection conn, int userId) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            try (PreparedStatement del = conn.prepareStatement("DELETE FROM secret_key_trigrams WHERE user_id = ?")) {
+                del.setInt(1, userId);
+                del.executeUpdate();
+            }
+            try (PreparedStatement sel = conn.prepareStatement("SELECT id, key_name FROM vault_data WHERE user_id = ?");
+                 PreparedStatement ins = conn.prepareStatement(INSERT_SQL)) {
+                sel.setInt(1, userId);
+                try (ResultSet rs = sel.executeQuery()) {
+                    int pending = 0;
+                    while (rs.next()) {
+                        int id = rs.getInt("id");
+                        for (String gram : trigrams(rs.getString("key_name"))) {
+                            ins.setInt(1, userId);
+                            ins.setString(2, gram);
+                            ins.setInt(3, id);
+                            ins.addBatch();
+                            if (++pending == 1000) {
+                                ins.executeBatch();
+                                pending = 0;
+                            }
+                        }
+                    }
+                    if (pending > 0) ins.executeBatch();
+                }
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    private int count(Connection conn, String sql, int userId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    // ==================== Search ====================
+
+    /**
+     * Secrets whose key name contains query (case-insensitive), best matches first.
+     */
+    public List<Secret> search(Connection conn, int userId, String query, int limit) throws SQLException {
+        String q = query.toLowerCase(Locale.ROOT);
+        List<Secret> candidates = new ArrayList<>();
+
+        String sql;
+        List<String> grams = new ArrayList<>();
+        if (q.length() >= 3) {
+            grams.addAll(trigrams(q, false));
+            StringBuilder in = new StringBuilder();
+            for (int i = 0; i < grams.size(); i++) in.append(i == 0 ? "?" : ", ?");
+            sql = "SELECT v.id, v.key_name, v.created_at, v.updated_at FROM vault_data v JOIN (" +
+                    "SELECT secret_id FROM secret_key_trigrams WHERE user_id = ? AND trigram IN (" + in + ") " +
+                    "GROUP BY secret_id HAVING COUNT(*) = ?) m ON m.secret_id = v.id WHERE v.user_id = ?";
+        } else {
+            sql = "SELECT v.id, v.key_name, v.created_at, v.updated_at FROM vault_data v JOIN (" +
+                    "SELECT DISTINCT secret_id FROM secret_key_trigrams WHERE user_id = ? " +
+                    "AND trigram >= ? AND trigram < ?) m ON m.secret_id = v.id WHERE v.user_id = ?";
+        }
+
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            int p = 1;
+            ps.setInt(p++, userId);
+            if (q.length() >= 3) {
+                for (String gram : grams) ps.setString(p++, gram);
+                ps.setInt(p++, grams.size());
+            } else {
+                ps.setString(p++, q);
+                ps.setString(p++, q + Character.MAX_VALUE);
+            }
+            ps.setInt(p, userId);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Secret s = new Secret();
+                    s.setId(rs.getInt("id"));
+                    s.setKeyName(rs.getString("key_name"));
+                    s.setCreatedAt(rs.getTimestamp("created_at"));
+                    s.setUpdatedAt(rs.getTimestamp("updated_at"));
+                    candidates.add(s);
+                }
+            }
+        }
+
+        return rank(candidates, q, limit);
+    }
+
+    /**
+     * Drop trigram false positives and order by match quality.
+     * Shared with in-memory filtering so both paths rank identically.
+     */
+    static List<Secret> rank(List<Secret> candidates, String lowerQuery, int limit) {
+        List<Secret> matches = new ArrayList<>();
+        for (Secret s : candidates) {
+            if (s.getKeyName().toLowerCase(Locale.ROOT).contains(lowerQuery)) {
+                matches.add(s);
+            }
+        }
+        matches.sort(Comparator
+                .comparingInt((Secret s) -> score(s.getKeyName().toLowerCase(Locale.ROOT), lowerQuery))
+                .thenComparingInt(s -> s.getKeyName().toLowerCase(Locale.ROOT).indexOf(lowerQuery))
+                .thenComparingInt(s -> s.getKeyName().length())
+                .thenComparing(Secret::getKeyName));
+        return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+    }
+
+    static int score(String name, String q) {
+        if (name.equals(q)) return 0;
+        if (name.startsWith(q)) return 1;
+        int at = name.indexOf(q);
+        if (at > 0 && !Character.isLetterOrDigit(name.charAt(at - 1))) return 2;
+        return 3;
+    }
+
+    // ==================== Trigrams ====================
+
+    static Set<String> trigrams(String keyName) {
+        return trigrams(keyName.toLowerCase(Locale.ROOT), true);
+    }
+
+    /** Trigrams a query's matches must all contain. */
+    static Set<String> queryTrigrams(String lowerQuery) {
+        return trigrams(lowerQuery, false);
+    }
+
+    /**
+     * padded=true: one gram per character of the name (tail padded), used for indexing.
+     * padded=false: only the full trigrams inside the text, used for queries.
+     */
+    private static Set<String> trigrams(String lower, boolean padded) {
+        Set<String> out = new LinkedHashSet<>();
+        String s = padded ? lower + PAD + PAD : lower;
+        int last = padded ? lower.length() : lower.length() - 2;
+        for (int i = 0; i < last; i++) {
+            out.add(s.substring(i, i + 3));
+        }
+        return out;
+    }
+}
@@ -0,0 +1,163 @@
+package com.vault.service;
+
+import com.vault.model.Secret;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SecretMetadataCache
+ * - Per-user listing of secret metadata (id, key name, timestamps; never values)
+ * - Kept in listing order (updated_at DESC, id DESC) and patched row-by-row on writes
+ * - Bounded by total rows across users; least recently used users are evicted first
+ * - A per-user version guards against caching a listing that raced with a write
+ * - Tracks hits / misses / evictions for diagnostics
+ */
+public class SecretMetadataCache {
+
+    static final Comparator<Secret> LISTING_ORDER = Comparator
+            .comparingLong((Secret s) -> s.getUpdatedAt() != null ? s.getUpdatedAt().getTime() : 0L)
+            .thenComparingInt(Secret::getId)
+            .reversed();
+
+    private final int maxEntries;
+    private final LinkedHashMap<Integer, List<Secret>> listings = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Integer, Long> versions = new HashMap<>();
+    private int totalEntries = 0;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public SecretMetadataCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    // ==================== Reads ====================
+
+    /**
+     * Cached listing for userId (read-only, listing order), or null on a miss.
+     */
+    public synchronized List<Secret> get(int userId) {
+        List<Secret> listing = listings.get(userId);
+        if (listing == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return Collections.unmodifiableList(new ArrayList<>(listing));
+    }
+
+    /**
+     * Rows [from, to) of the cached listing (clamped), or null on a miss. Copies only the slice.
+     */
+    public synchronized List<Secret> slice(int userId, int from, int to) {
+        List<Secret> listing = listings.get(userId);
+        if (listing == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        int end = Math.min(to, listing.size());
+        return from >= end ? new ArrayList<>() : new ArrayList<>(listing.subList(from, end));
+    }
+
+    /**
+     * Row count of the cached listing, or -1 when it isn't cached (not counted as a lookup).
+     */
+    public synchronized int size(int userId) {
+        List<Secret> listing = listings.get(userId);
+        return listing == null ? -1 : listing.size();
+    }
+
+    /**
+     * Version to pass to put(); capture it before querying the database.
+     */
+    public synchronized long version(int userId) {
+        return versions.getOrDefault(userId, 0L);
+    }
+
+    /**
+     * Cache a freshly loaded listing unless a write for this user happened since version was read.
+     */
+    public synchronized void put(int userId, List<Secret> listing, long version) {
+        if (maxEntries <= 0 || version != version(userId) || listing.size() > maxEntries) return;
+
+        List<Secret> previous = listings.put(userId, new ArrayList<>(listing));
+        if (previous != null) totalEntries -= previous.size();
+        totalEntries += listing.size();
+        evictOverflow(userId);
+    }
+
+    // ==================== Precise invalidation ====================
+
+    /**
+     * Insert or replace one row after add/update.
+     */
+    public synchronized void upsert(int userId, Secret meta) {
+        bump(userId);
+        List<Secret> listing = listings.get(userId);
+        if (listing == null) return;
+
+        if (removeById(listing, meta.getId())) totalEntries--;
+        int at = Collections.binarySearch(listing, meta, LISTING_ORDER);
+        listing.add(at < 0 ? -at - 1 : at, meta);
+        totalEntries++;
+        evictOverflow(userId);
+    }
+
+    public synchronized void remove(int userId, int secretId) {
+        bump(userId);
+        List<Secret> listing = listings.get(userId);
+        if (listing != null && removeById(listing, secretId)) totalEntries--;
+    }
+
+    public synchronized void invalidate(int userId) {
+        bump(userId);
+        List<Secret> previous = listings.remove(userId);
+        if (previous != null) totalEntries -= previous.size();
+    }
+
+    private void bump(int userId) {
+        versions.merge(userId, 1L, Long::sum);
+    }
+
+    private static boolean removeById(List<Secret> listing, int secretId) {
+        for (Iterator<Secret> it = listing.iterator(); it.hasNext(); ) {
+            if (it.next().getId() == secretId) {
+                it.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void evictOverflow(int keepUserId) {
+        Iterator<Map.Entry<Integer, List<Secret>>> it = listings.entrySet().iterator();
+        while (totalEntries > maxEntries && it.hasNext()) {
+            Map.Entry<Integer, List<Secret>> eldest = it.next();
+            if (eldest.getKey() == keepUserId && listings.size() > 1) continue;
+            totalEntries -= eldest.getValue().size();
+            it.remove();
+            evictions++;
+        }
+    }
+
+    // ==================== Stats ====================
+
+    public synchronized double hitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : hits / (double) lookups;
+    }
+
+    public synchronized String getStats() {
+        return String.format("SecretMetadataCache{users=%d, entries=%d/%d, hits=%d, misses=%d, evictions=%d, hitRate=%.2f}",
+                listings.size(), totalEntries, maxEntries, hits, misses, evictions, hitRate());
+    }
+}
@@ -11,9 +11,11 @@ import java.sql.ResultSet;
 public class UserService {
 
     private final DatabaseManager db;
+    private final AuditLogWriter audit;
 
     public UserService() throws Exception {
         this.db = DatabaseManager.getInstance();
+        this.audit = AuditLogWriter.getInstance();
     }
 
     // ===================== Registration =====================
@@ -86,18 +88,18 @@ public class UserService {
 
     // ===================== Logging =====================
 
+    /**
+     * Queue an audit entry; the INSERT happens in batches on AuditLogWriter's flusher thread.
+     */
     public void logAccess(int userId, String action, String keyName) {
-        try (Connection conn = db.getConnection();
-             PreparedStatement ps = conn.prepareStatement(
-                     "INSERT INTO access_logs (user_id, action, key_name) VALUES (?, ?, ?)")) {
-            ps.setInt(1, userId);
-            ps.setString(2, action);
-            ps.setString(3, keyName);
-            ps.executeUpdate();
-        } catch (Exception e) {
-            // Non-fatal: log and continue
-            e.printStackTrace();
-        }
+        audit.submit(userId, action, keyName);
+    }
+
+    /**
+     * Write all queued audit entries now (used on logout).
+     */
+    public void flushAccessLog() {
+        audit.flush();
     }
 
     // ===================== Helpers =====================
@@ -2,106 +2,991 @@ package com.vault.service;
 
 import com.vault.core.DatabaseManager;
 import com.vault.core.EncryptionManager;
+import com.vault.core.SegmentedCipher;
+import com.vault.core.SessionKeyManager;
 
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.LongConsumer;
 
+/**
+ * VaultFileService
+ * - Files are encrypted as they stream, so uploads and downloads run in bounded memory
+ * - Content lives in a pluggable FileBlobStore: DB blobs ("db") or the local
+ *   content-addressed chunk store ("chunks"), chosen by files.storage for new uploads
+ * - vault_files.storage records which store holds each file, so both kinds read back
+ * - Text-like content is compressed before encryption (vault_files.compression), in
+ *   restartable blocks whose index is kept encrypted in vault_files.compression_index
+ * - Image previews are cached encrypted in vault_file_thumbnails, keyed by file id
+ * - Files are addressed by id; names aren't unique, and a name lookup finds the newest
+ * - Large uploads can run as resumable sessions: chunks are acknowledged one by one into the
+ *   chunk store and committed as a file atomically; idle sessions expire
+ */
 public class VaultFileService {
 
+    /** Catalog entry: metadata only, never content. */
     public static class FileInfo {
+        public final int id;
         public final String fileName;
-        public final int fileSize;
-        public FileInfo(String fileName, int fileSize) {
-            this.fileName = fileName; this.fileSize = fileSize;
+        public final String fileType;
+        public final long fileSize;
+        public final String contentHash;   // SHA-256 of the stored ciphertext (DB-stored files), else null
+        public final Timestamp createdAt;
+        public FileInfo(int id, String fileName, String fileType, long fileSize, String contentHash, Timestamp createdAt) {
+            this.id = id; this.fileName = fileName; this.fileType = fileType;
+            this.fileSize = fileSize; this.contentHash = contentHash; this.createdAt = createdAt;
         }
+
+        /** "name (size)", as shown in file pickers. */
+        @Override
+        public String toString() {
+            String size = fileSize < 1024 ? fileSize + " B"
+                    : fileSize < 1024 * 1024 ? (fileSize / 1024) + " KB"
+                    : (fileSize / (1024 * 1024)) + " MB";
+            return fileName + " (" + size + ")";
+        }
+    }
+
+    /** Listing orders; each has a matching (user_id, ...) index. */
+    public enum FileSort {
+        NEWEST, NAME, LARGEST
     }
 
+    /** One page of the catalog plus the cursor for the next (null on the last page). */
+    public static class FilePage {
+        public final List<FileInfo> items;
+        public final String nextCursor;
+        public FilePage(List<FileInfo> items, String nextCursor) {
+            this.items = items; this.nextCursor = nextCursor;
+        }
+        public boolean hasMore() { return nextCursor != null; }
+    }
+
+    /** Download progress: plaintext bytes so far, the file's size, and the current rate. */
+    public interface TransferListener {
+        void onProgress(long bytesDone, long totalBytes, double bytesPerSecond);
+    }
+
+    /** A resumable upload: send chunk nextChunk next (bytes from bytesReceived on). */
+    public static class UploadStatus {
+        public final int sessionId;
+        public final String fileName;
+        public final String fileType;
+        public final long expectedSize;
+        public final int chunkSize;
+        public final int nextChunk;
+        public final long bytesReceived;
+        public final String sourceFingerprint;   // see sourceFingerprint(); null for sessions started without one
+        public UploadStatus(int sessionId, String fileName, String fileType, long expectedSize,
+                            int chunkSize, int nextChunk, long bytesReceived, String sourceFingerprint) {
+            this.sessionId = sessionId; this.fileName = fileName; this.fileType = fileType;
+            this.expectedSize = expectedSize; this.chunkSize = chunkSize;
+            this.nextChunk = nextChunk; this.bytesReceived = bytesReceived;
+            this.sourceFingerprint = sourceFingerprint;
+        }
+        public boolean isComplete() { return bytesReceived == expectedSize; }
+    }
+
+    /** Row id plus where and how the content is stored. */
+    private static class FileRef {
+        final int id;
+        final String storage;
+        final FileCompression.Codec codec;
+        final long size;
+        FileRef(int id, String storage, FileCompression.Codec codec, long size) {
+            this.id = id; this.storage = storage; this.codec = codec; this.size = size;
+        }
+    }
+
+    // Minimum gap between progress callbacks during a download
+    private static final long PROGRESS_INTERVAL_NANOS = 100_000_000L;
+
+    private static final String SESSION_COLUMNS =
+            "SELECT id, file_name, file_type, expected_size, next_chunk, received_size, source_fingerprint FROM upload_sessions ";
+
+    private static final String CATALOG_COLUMNS =
+            "SELECT id, file_name, file_type, file_size, content_hash, created_at FROM vault_files ";
+
     private final DatabaseManager dbManager;
     private final EncryptionManager encryption;
+    private final Map<String, FileBlobStore> stores = new HashMap<>();
+    private final FileBlobStore uploadStore;
+    private final ChunkBlobStore chunkStore;
+    private final long uploadSessionTtlMs;
+    private final FileCompression compression = FileCompression.fromSystemProperties();
 
-    public VaultFileService(String masterPassword) throws Exception {
+    public VaultFileService(SessionKeyManager session) throws Exception {
         this.dbManager = DatabaseManager.getInstance();
-        this.encryption = new EncryptionManager(masterPassword);
+        this.encryption = session.getEncryptionManager();
+
+        int segmentSize = Integer.getInteger("files.segmentSize", SegmentedCipher.DEFAULT_SEGMENT_SIZE);
+        register(new DatabaseBlobStore(dbManager, encryption, segmentSize));
+        this.chunkStore = ChunkBlobStore.fromSystemProperties(dbManager, encryption, session.getKey());
+        register(chunkStore);
+        this.uploadSessionTtlMs = Long.getLong("files.upload.sessionTtlMs", 24L * 60 * 60 * 1000);
+
+        String storage = System.getProperty("files.storage", DatabaseBlobStore.ID);
+        this.uploadStore = stores.get(storage);
+        if (uploadStore == null) throw new IllegalArgumentException("Unknown files.storage: " + storage);
+    }
+
+    private void register(FileBlobStore store) {
+        stores.put(store.getId(), store);
+    }
+
+    private FileBlobStore store(String id) {
+        FileBlobStore store = stores.get(id == null ? DatabaseBlobStore.ID : id);
+        if (store == null) throw new IllegalStateException("No blob store for '" + id + "'");
+        return store;
+    }
+
+    // ==================== Upload ====================
+
+    // Save file: stream it from disk through the blob store. Returns the new file id.
+    public int saveFile(int userId, String fileName, String fileType, Path source) throws Exception {
+        long size = Files.size(source);
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ);
+             InputStream in = Channels.newInputStream(channel)) {
+            return saveFile(userId, fileName, fileType, in, size);
+        }
     }
 
-    // Save file: encrypt bytes and insert into DB
-    public void saveFile(int userId, String fileName, String fileType, byte[] rawBytes) throws Exception {
+    // Save file from memory (small payloads). Returns the new file id.
+    public int saveFile(int userId, String fileName, String fileType, byte[] rawBytes) throws Exception {
         if (rawBytes == null) throw new IllegalArgumentException("No file data");
+        return saveFile(userId, fileName, fileType, new ByteArrayInputStream(rawBytes), rawBytes.length);
+    }
+
+    /**
+     * Insert the file row and store exactly size bytes of plaintext, in one transaction.
+     * Compressible content is deflated before it is encrypted. Returns the new file id.
+     */
+    public int saveFile(int userId, String fileName, String fileType, InputStream plaintext, long size) throws Exception {
+        if (plaintext == null) throw new IllegalArgumentException("No file data");
+        if (size < 0) throw new IllegalArgumentException("Invalid file size");
 
-        // 10 MB max (explicit service-side enforcement)
-        if (rawBytes.length > 10 * 1024 * 1024) {
-            throw new IllegalArgumentException("File too large. Max 10 MB.");
+        PushbackInputStream probed = new PushbackInputStream(plaintext, FileCompression.PROBE_BYTES);
+        byte[] probe = probed.readNBytes(FileCompression.PROBE_BYTES);
+        probed.unread(probe);
+        FileCompression.Codec codec = compression.choose(fileType, probe, probe.length);
+        CountingInputStream counted = new CountingInputStream(probed);
+        FileCompression.BlockIndex blocks = new FileCompression.BlockIndex();
+
+        String sql = "INSERT INTO vault_files (user_id, file_name, file_type, file_size, storage, compression, cipher_format) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?)";
+        try (Connection conn = dbManager.getConnection();
+             InputStream stored = compression.compress(codec, counted, blocks)) {
+            conn.setAutoCommit(false);
+            try {
+                int fileId;
+                try (PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                    ps.setInt(1, userId);
+                    ps.setString(2, fileName);
+                    ps.setString(3, fileType);
+                    ps.setLong(4, size);  // store original size
+                    ps.setString(5, uploadStore.getId());
+                    ps.setString(6, codec.id);
+                    ps.setString(7, uploadStore.getCipherFormat());
+                    ps.executeUpdate();
+                    try (ResultSet keys = ps.getGeneratedKeys()) {
+                        if (!keys.next()) throw new SQLException("No id generated for file");
+                        fileId = keys.getInt(1);
+                    }
+                }
+                uploadStore.write(conn, userId, fileId, stored, codec == FileCompression.Codec.NONE ? size : -1);
+                if (counted.count != size) {
+                    throw new IOException("File changed while uploading (expected " + size + " bytes, read " + counted.count + ")");
+                }
+                if (codec != FileCompression.Codec.NONE) storeBlockIndex(conn, userId, fileId, blocks);
+                conn.commit();
+                return fileId;
+            } catch (Exception e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
         }
+    }
 
-        byte[] encrypted = encryption.encryptFile(rawBytes);
+    // ==================== Resumable uploads ====================
 
-        String sql = "INSERT INTO vault_files (user_id, file_name, file_type, file_size, encrypted_data) " +
-                "VALUES (?, ?, ?, ?, ?)";
+    /**
+     * Start a resumable upload of expectedSize bytes. Chunks go to the chunk store whatever
+     * files.storage says, since a DB blob can't be appended to piece by piece. Also expires
+     * sessions idle for longer than files.upload.sessionTtlMs. sourceFingerprint (from
+     * sourceFingerprint()) is what a later resume must match.
+     */
+    public UploadStatus beginUpload(int userId, String fileName, String fileType, long expectedSize,
+                                    String sourceFingerprint) throws Exception {
+        if (expectedSize < 0) throw new IllegalArgumentException("Invalid file size");
+        expireUploads();
+        String sql = "INSERT INTO upload_sessions (user_id, file_name, file_type, expected_size, last_activity, source_fingerprint) " +
+                "VALUES (?, ?, ?, ?, ?, ?)";
         try (Connection conn = dbManager.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
+             PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             ps.setInt(1, userId);
             ps.setString(2, fileName);
             ps.setString(3, fileType);
-            ps.setInt(4, rawBytes.length);  // store original size
-            ps.setBytes(5, encrypted);
+            ps.setLong(4, expectedSize);
+            ps.setLong(5, System.currentTimeMillis());
+            ps.setString(6, sourceFingerprint);
+            ps.executeUpdate();
+            try (ResultSet keys = ps.getGeneratedKeys()) {
+                if (!keys.next()) throw new SQLException("No id generated for upload session");
+                return new UploadStatus(keys.getInt(1), fileName, fileType, expectedSize, chunkStore.getChunkSize(), 0, 0,
+                        sourceFingerprint);
+            }
+        }
+    }
+
+    /** Where a session stands, or null if it was committed, aborted or expired. */
+    public UploadStatus getUpload(int userId, int sessionId) throws Exception {
+        try (Connection conn = dbManager.getConnection()) {
+            return findSession(conn, userId, sessionId);
+        }
+    }
+
+    /** The user's unfinished uploads, oldest first (to offer resuming after a restart). */
+    public List<UploadStatus> getPendingUploads(int userId) throws Exception {
+        List<UploadStatus> out = new ArrayList<>();
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement ps = conn.prepareStatement(SESSION_COLUMNS + "WHERE user_id = ? ORDER BY id")) {
+            ps.setInt(1, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) out.add(mapSession(rs));
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Store chunk chunkIndex of the upload. Every chunk is chunkSize bytes except the last,
+     * which holds the remainder. Once this returns the chunk is durable and acknowledged.
+     * Sending an acknowledged chunk again with the same content is a no-op, so a client
+     * that lost the reply can simply retry. Returns the updated status.
+     */
+    public UploadStatus appendChunk(int userId, int sessionId, int chunkIndex, byte[] data) throws Exception {
+        if (data == null) throw new IllegalArgumentException("No chunk data");
+        try (Connection conn = dbManager.getConnection()) {
+            UploadStatus status = findSession(conn, userId, sessionId);
+            if (status == null) throw new IllegalArgumentException("Unknown or expired upload session: " + sessionId);
+            if (chunkIndex < status.nextChunk) return replayedChunk(conn, userId, status, chunkIndex, data);
+            if (chunkIndex > status.nextChunk) {
+                throw new IllegalStateException("Expected chunk " + status.nextChunk + ", got " + chunkIndex);
+            }
+            long expected = Math.min(status.chunkSize, status.expectedSize - status.bytesReceived);
+            if (data.length != expected) {
+                throw new IllegalArgumentException("Chunk " + chunkIndex + " must be " + expected + " bytes, got " + data.length);
+            }
+
+            String address = null;
+            conn.setAutoCommit(false);
+            try {
+                address = chunkStore.putChunk(conn, userId, data);
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "INSERT INTO upload_session_chunks (session_id, chunk_index, chunk_hash, plain_size) VALUES (?, ?, ?, ?)")) {
+                    ps.setInt(1, sessionId);
+                    ps.setInt(2, chunkIndex);
+                    ps.setString(3, address);
+                    ps.setInt(4, data.length);
+                    ps.executeUpdate();
+                }
+                // Conditional on next_chunk, so of two concurrent sends of one chunk only one lands
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "UPDATE upload_sessions SET next_chunk = next_chunk + 1, received_size = received_size + ?, " +
+                                "last_activity = ? WHERE id = ? AND user_id = ? AND next_chunk = ?")) {
+                    ps.setLong(1, data.length);
+                    ps.setLong(2, System.currentTimeMillis());
+                    ps.setInt(3, sessionId);
+                    ps.setInt(4, userId);
+                    ps.setInt(5, chunkIndex);
+                    if (ps.executeUpdate() != 1) throw new IllegalStateException("Upload session changed concurrently");
+                }
+                conn.commit();
+            } catch (Exception e) {
+                conn.rollback();
+                // A chunk file written for this send may now have no ref row; the chunk store's sweep collects it
+                UploadStatus now = findSession(conn, userId, sessionId);
+                if (now != null && chunkIndex < now.nextChunk) return replayedChunk(conn, userId, now, chunkIndex, data);
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+            return new UploadStatus(sessionId, status.fileName, status.fileType, status.expectedSize,
+                    status.chunkSize, chunkIndex + 1, status.bytesReceived + data.length, status.sourceFingerprint);
+        }
+    }
+
+    /**
+     * Turn a fully received upload into a file, atomically: the row, its chunk manifest and the
+     * session's removal commit together, and the chunk references pass from session to file.
+     * Returns the new file id.
+     */
+    public int commitUpload(int userId, int sessionId) throws Exception {
+        try (Connection conn = dbManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                UploadStatus status = findSession(conn, userId, sessionId);
+                if (status == null) throw new IllegalArgumentException("Unknown or expired upload session: " + sessionId);
+                if (!status.isComplete()) {
+                    throw new IllegalStateException("Upload incomplete: " + status.bytesReceived + " of " + status.expectedSize + " bytes");
+                }
+
+                int fileId;
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "INSERT INTO vault_files (user_id, file_name, file_type, file_size, storage, compression, cipher_format) " +
+                                "VALUES (?, ?, ?, ?, ?, ?, ?)", Statement.RETURN_GENERATED_KEYS)) {
+                    ps.setInt(1, userId);
+                    ps.setString(2, status.fileName);
+                    ps.setString(3, status.fileType);
+                    ps.setLong(4, status.expectedSize);
+                    ps.setString(5, chunkStore.getId());
+                    ps.setString(6, FileCompression.Codec.NONE.id);
+                    ps.setString(7, chunkStore.getCipherFormat());
+                    ps.executeUpdate();
+                    try (ResultSet keys = ps.getGeneratedKeys()) {
+                        if (!keys.next()) throw new SQLException("No id generated for file");
+                        fileId = keys.getInt(1);
+                    }
+                }
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "INSERT INTO vault_file_chunks (file_id, chunk_index, chunk_hash, plain_size) " +
+                                "SELECT ?, chunk_index, chunk_hash, plain_size FROM upload_session_chunks WHERE session_id = ?")) {
+                    ps.setInt(1, fileId);
+                    ps.setInt(2, sessionId);
+                    ps.executeUpdate();
+                }
+                chunkStore.sealManifest(conn, userId, fileId);
+                if (!removeSession(conn, userId, sessionId)) {
+                    throw new IllegalStateException("Upload session was committed or aborted concurrently");
+                }
+                conn.commit();
+                return fileId;
+            } catch (Exception e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /** Drop an unfinished upload and release its chunks. Returns false if it no longer exists. */
+    public boolean abortUpload(int userId, int sessionId) throws Exception {
+        try (Connection conn = dbManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                List<String> addresses = new ArrayList<>();
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "SELECT c.chunk_hash FROM upload_session_chunks c JOIN upload_sessions s ON s.id = c.session_id " +
+                                "WHERE s.id = ? AND s.user_id = ?")) {
+                    ps.setInt(1, sessionId);
+                    ps.setInt(2, userId);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) addresses.add(rs.getString(1));
+                    }
+                }
+                if (!removeSession(conn, userId, sessionId)) {
+                    conn.rollback();
+                    return false;
+                }
+                chunkStore.release(conn, userId, addresses);
+                conn.commit();
+                return true;
+            } catch (Exception e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /** Abort every session idle for longer than files.upload.sessionTtlMs. Returns how many. */
+    public int expireUploads() throws Exception {
+        List<int[]> idle = new ArrayList<>();
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement ps = conn.prepareStatement(
+                     "SELECT id, user_id FROM upload_sessions WHERE last_activity < ?")) {
+            ps.setLong(1, System.currentTimeMillis() - uploadSessionTtlMs);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) idle.add(new int[]{rs.getInt(1), rs.getInt(2)});
+            }
+        }
+        int expired = 0;
+        for (int[] s : idle) {
+            if (abortUpload(s[1], s[0])) expired++;
+        }
+        if (expired > 0) System.out.println("Expired " + expired + " idle upload session(s)");
+        return expired;
+    }
+
+    /**
+     * Identifies an upload source for resuming: a per-user keyed hash of its size, last-modified
+     * time and first chunk, so a different file under the same name and size doesn't match.
+     */
+    public String sourceFingerprint(int userId, Path source) throws Exception {
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            long size = channel.size();
+            byte[] data = new byte[16 + (int) Math.min(chunkStore.getChunkSize(), size)];
+            ByteBuffer buf = ByteBuffer.wrap(data);
+            buf.putLong(size).putLong(Files.getLastModifiedTime(source).toMillis());
+            while (buf.hasRemaining()) {
+                if (channel.read(buf, buf.position() - 16) < 0) throw new IOException("Source ended early");
+            }
+            try {
+                return chunkStore.fingerprintOf(userId, data);
+            } finally {
+                Arrays.fill(data, (byte) 0);
+            }
+        }
+    }
+
+    /**
+     * Send source through the session from its first unacknowledged chunk, then commit.
+     * Works the same for a fresh session and for one resumed after a crash, but only from
+     * the source the session was started with: a session whose fingerprint doesn't match
+     * source (or that has none, once chunks were received) is refused. Returns the new file id.
+     */
+    public int uploadFrom(int userId, UploadStatus session, Path source, TransferListener listener) throws Exception {
+        UploadStatus status = session;
+        String fingerprint = sourceFingerprint(userId, source);
+        if (status.sourceFingerprint != null ? !status.sourceFingerprint.equalsIgnoreCase(fingerprint) : status.bytesReceived > 0) {
+            throw new IllegalStateException("Upload session " + status.sessionId + " was started from a different file; start a new upload");
+        }
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            if (channel.size() != status.expectedSize) {
+                throw new IOException("Source is " + channel.size() + " bytes, upload expects " + status.expectedSize);
+            }
+            long start = System.nanoTime();
+            long resumedAt = status.bytesReceived;
+            while (!status.isComplete()) {
+                int n = (int) Math.min(status.chunkSize, status.expectedSize - status.bytesReceived);
+                byte[] chunk = new byte[n];
+                ByteBuffer buf = ByteBuffer.wrap(chunk);
+                while (buf.hasRemaining()) {
+                    if (channel.read(buf, status.bytesReceived + buf.position()) < 0) {
+                        throw new IOException("Source ended early");
+                    }
+                }
+                try {
+                    status = appendChunk(userId, status.sessionId, status.nextChunk, chunk);
+                } finally {
+                    Arrays.fill(chunk, (byte) 0);
+                }
+                if (listener != null) {
+                    double seconds = Math.max(1e-9, (System.nanoTime() - start) / 1e9);
+                    listener.onProgress(status.bytesReceived, status.expectedSize, (status.bytesReceived - resumedAt) / seconds);
+                }
+            }
+        }
+        if (!sourceFingerprint(userId, source).equals(fingerprint)) {
+            throw new IOException("Source changed during the upload; start a new upload");
+        }
+        return commitUpload(userId, status.sessionId);
+    }
+
+    private UploadStatus replayedChunk(Connection conn, int userId, UploadStatus status, int chunkIndex, byte[] data) throws Exception {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT chunk_hash, plain_size FROM upload_session_chunks WHERE session_id = ? AND chunk_index = ?")) {
+            ps.setInt(1, status.sessionId);
+            ps.setInt(2, chunkIndex);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next() && rs.getInt(2) == data.length
+                        && rs.getString(1).equalsIgnoreCase(chunkStore.addressOf(userId, data))) {
+                    return status;
+                }
+            }
+        }
+        throw new IllegalStateException("Chunk " + chunkIndex + " was already received with different content");
+    }
+
+    private UploadStatus findSession(Connection conn, int userId, int sessionId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(SESSION_COLUMNS + "WHERE id = ? AND user_id = ?")) {
+            ps.setInt(1, sessionId);
+            ps.setInt(2, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? mapSession(rs) : null;
+            }
+        }
+    }
+
+    private UploadStatus mapSession(ResultSet rs) throws SQLException {
+        return new UploadStatus(rs.getInt("id"), rs.getString("file_name"), rs.getString("file_type"),
+                rs.getLong("expected_size"), chunkStore.getChunkSize(), rs.getInt("next_chunk"), rs.getLong("received_size"),
+                rs.getString("source_fingerprint"));
+    }
+
+    // Session row and its chunk list (explicitly: SQLite only cascades with foreign_keys on)
+    private static boolean removeSession(Connection conn, int userId, int sessionId) throws SQLException {
+        int removed;
+        try (PreparedStatement ps = conn.prepareStatement("DELETE FROM upload_sessions WHERE id = ? AND user_id = ?")) {
+            ps.setInt(1, sessionId);
+            ps.setInt(2, userId);
+            removed = ps.executeUpdate();
+        }
+        if (removed == 0) return false;
+        try (PreparedStatement ps = conn.prepareStatement("DELETE FROM upload_session_chunks WHERE session_id = ?")) {
+            ps.setInt(1, sessionId);
             ps.executeUpdate();
         }
+        return true;
     }
 
-    // List a user's files (name and original size)
+    // ==================== Catalog ====================
+
+    // All of a user's files, newest first (prefer listFiles for large catalogs)
     public List<FileInfo> getUserFiles(int userId) throws Exception {
-        String sql = "SELECT file_name, file_size FROM vault_files WHERE user_id = ? ORDER BY id DESC";
         List<FileInfo> out = new ArrayList<>();
         try (Connection conn = dbManager.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
+             PreparedStatement ps = conn.prepareStatement(CATALOG_COLUMNS + "WHERE user_id = ? ORDER BY id DESC")) {
             ps.setInt(1, userId);
             try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) {
-                    out.add(new FileInfo(rs.getString("file_name"), rs.getInt("file_size")));
+                    out.add(mapFileInfo(rs));
                 }
             }
         }
         return out;
     }
 
-    // Get decrypted bytes for preview/download
-    public byte[] getFile(int userId, String fileName) throws Exception {
-        String sql = "SELECT encrypted_data FROM vault_files WHERE user_id = ? AND file_name = ?";
+    /**
+     * One page of the catalog in the given order, using keyset pagination on (sort column, id)
+     * so every page is one range scan of the matching index. Pass the previous page's cursor
+     * to continue, or null for the first page.
+     */
+    public FilePage listFiles(int userId, FileSort sort, String cursor, int pageSize) throws Exception {
+        if (pageSize < 1) throw new IllegalArgumentException("pageSize must be positive");
+        String[] after = cursor == null ? null : decodeCursor(cursor);
+
+        String sql;
+        switch (sort) {
+            case NAME:
+                sql = CATALOG_COLUMNS + "WHERE user_id = ? " +
+                        (after != null ? "AND (file_name > ? OR (file_name = ? AND id > ?)) " : "") +
+                        "ORDER BY file_name, id LIMIT ?";
+                break;
+            case LARGEST:
+                sql = CATALOG_COLUMNS + "WHERE user_id = ? " +
+                        (after != null ? "AND (file_size < ? OR (file_size = ? AND id < ?)) " : "") +
+                        "ORDER BY file_size DESC, id DESC LIMIT ?";
+                break;
+            default:
+                sql = CATALOG_COLUMNS + "WHERE user_id = ? " +
+                        (after != null ? "AND id < ? " : "") +
+                        "ORDER BY id DESC LIMIT ?";
+        }
+
+        List<FileInfo> items = new ArrayList<>(pageSize);
         try (Connection conn = dbManager.getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setInt(1, userId);
-            ps.setString(2, fileName);
+            int p = 1;
+            ps.setInt(p++, userId);
+            if (after != null) {
+                int afterId = Integer.parseInt(after[0]);
+                if (sort == FileSort.NAME) {
+                    ps.setString(p++, after[1]);
+                    ps.setString(p++, after[1]);
+                    ps.setInt(p++, afterId);
+                } else if (sort == FileSort.LARGEST) {
+                    long size = Long.parseLong(after[1]);
+                    ps.setLong(p++, size);
+                    ps.setLong(p++, size);
+                    ps.setInt(p++, afterId);
+                } else {
+                    ps.setInt(p++, afterId);
+                }
+            }
+            // Fetch one extra row to learn whether another page exists
+            ps.setInt(p, pageSize + 1);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    items.add(mapFileInfo(rs));
+                }
+            }
+        }
+
+        String next = null;
+        if (items.size() > pageSize) {
+            items.remove(pageSize);
+            FileInfo last = items.get(pageSize - 1);
+            next = encodeCursor(last.id, sort == FileSort.NAME ? last.fileName
+                    : sort == FileSort.LARGEST ? Long.toString(last.fileSize) : "");
+        }
+        return new FilePage(items, next);
+    }
+
+    /** Metadata of one file, or null if it doesn't exist (or isn't the user's). */
+    public FileInfo getFileInfo(int userId, int fileId) throws Exception {
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement ps = conn.prepareStatement(CATALOG_COLUMNS + "WHERE id = ? AND user_id = ?")) {
+            ps.setInt(1, fileId);
+            ps.setInt(2, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? mapFileInfo(rs) : null;
+            }
+        }
+    }
+
+    /** Id of the newest file with this name, or null. */
+    public Integer findFileId(int userId, String fileName) throws Exception {
+        FileRef ref = findFile(userId, fileName);
+        return ref == null ? null : ref.id;
+    }
+
+    // ==================== Download ====================
+
+    /**
+     * Open a file's decrypted content as a stream, or null if it doesn't exist.
+     * The caller must close the stream (DB-backed streams hold a pooled connection).
+     */
+    public InputStream openFile(int userId, int fileId) throws Exception {
+        return openFile(userId, findFile(userId, fileId));
+    }
+
+    // Newest file with that name
+    public InputStream openFile(int userId, String fileName) throws Exception {
+        return openFile(userId, findFile(userId, fileName));
+    }
+
+    private InputStream openFile(int userId, FileRef ref) throws Exception {
+        if (ref == null) return null;
+        InputStream stored = store(ref.storage).open(userId, ref.id);
+        return stored == null ? null : compression.decompress(ref.codec, stored);
+    }
+
+    // Get decrypted bytes for preview (whole file in memory; prefer openFile/downloadTo for large files)
+    public byte[] getFile(int userId, int fileId) throws Exception {
+        try (InputStream in = openFile(userId, fileId)) {
+            return in == null ? null : in.readAllBytes();
+        }
+    }
+
+    // Newest file with that name
+    public byte[] getFile(int userId, String fileName) throws Exception {
+        try (InputStream in = openFile(userId, fileName)) {
+            return in == null ? null : in.readAllBytes();
+        }
+    }
+
+    /**
+     * Plaintext bytes [offset, offset + length) of a file, shorter at the end, or null if the
+     * file doesn't exist. Only the segments / chunks covering the range are decrypted; compressed
+     * files are read through their block index, so only the blocks covering it are inflated
+     * (files stored without an index are inflated from the start).
+     */
+    public byte[] readRange(int userId, int fileId, long offset, int length) throws Exception {
+        FileRef ref = findFile(userId, fileId);
+        return ref == null ? null : readRange(userId, ref, offset, length);
+    }
+
+    /** The last length bytes of a file (all of it if shorter), or null if it doesn't exist. */
+    public byte[] readTail(int userId, int fileId, int length) throws Exception {
+        FileRef ref = findFile(userId, fileId);
+        return ref == null ? null : readRange(userId, ref, Math.max(0, ref.size - length), length);
+    }
+
+    private byte[] readRange(int userId, FileRef ref, long offset, int length) throws Exception {
+        FileBlobStore store = store(ref.storage);
+        if (ref.codec == FileCompression.Codec.NONE) {
+            return store.readRange(userId, ref.id, offset, length);
+        }
+        FileCompression.BlockIndex blocks = loadBlockIndex(userId, ref.id);
+        if (blocks != null) {
+            return FileCompression.readRange(blocks, offset, length,
+                    (start, len) -> store.readRange(userId, ref.id, start, len));
+        }
+        InputStream stored = store.open(userId, ref.id);
+        if (stored == null) throw new IOException("File content not found");
+        try (InputStream in = compression.decompress(ref.codec, stored)) {
+            return FileBlobStore.skipAndRead(in, offset, length);
+        }
+    }
+
+    /** Seal the block index (it reveals per-block compressibility) and keep it with the file. */
+    private void storeBlockIndex(Connection conn, int userId, int fileId, FileCompression.BlockIndex blocks) throws Exception {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "UPDATE vault_files SET compression_index = ? WHERE id = ? AND user_id = ?")) {
+            ps.setBytes(1, encryption.encryptFile(blocks.toBytes(fileId)));
+            ps.setInt(2, fileId);
+            ps.setInt(3, userId);
+            ps.executeUpdate();
+        }
+    }
+
+    /** The file's block index, or null if it was stored without one. */
+    private FileCompression.BlockIndex loadBlockIndex(int userId, int fileId) throws Exception {
+        byte[] sealed = null;
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement ps = conn.prepareStatement(
+                     "SELECT compression_index FROM vault_files WHERE id = ? AND user_id = ?")) {
+            ps.setInt(1, fileId);
+            ps.setInt(2, userId);
             try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    byte[] encrypted = rs.getBytes("encrypted_data");
-                    return encryption.decryptFile(encrypted);
+                if (rs.next()) sealed = rs.getBytes(1);
+            }
+        }
+        return sealed == null ? null : FileCompression.BlockIndex.fromBytes(fileId, encryption.decryptFile(sealed));
+    }
+
+    public long downloadTo(int userId, int fileId, Path target) throws Exception {
+        return downloadTo(userId, fileId, target, null);
+    }
+
+    /**
+     * Decrypt a file straight to target. Plaintext goes from the store's direct buffers into
+     * a FileChannel on a temp file beside target, which is synced and renamed into place, so a
+     * failed download never leaves a truncated file. listener (optional) is told about progress
+     * at most every 100 ms, plus once at the end. Returns bytes written.
+     */
+    public long downloadTo(int userId, int fileId, Path target, TransferListener listener) throws Exception {
+        FileRef ref = findFile(userId, fileId);
+        if (ref == null) throw new IllegalArgumentException("File not found: " + fileId);
+        FileBlobStore store = store(ref.storage);
+
+        Path dir = target.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(dir, ".vault-", ".part");
+        long start = System.nanoTime();
+        long[] lastReport = {start};
+        LongConsumer progress = listener == null ? null : done -> {
+            long now = System.nanoTime();
+            if (now - lastReport[0] < PROGRESS_INTERVAL_NANOS) return;
+            lastReport[0] = now;
+            listener.onProgress(done, ref.size, rate(done, now - start));
+        };
+        try {
+            long written;
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                if (ref.codec == FileCompression.Codec.NONE) {
+                    written = store.decryptTo(userId, ref.id, out, progress);
+                } else {
+                    try (InputStream stored = store.open(userId, ref.id)) {
+                        written = compression.inflateTo(ref.codec, stored, out, progress);
+                    }
                 }
+                out.force(true);
             }
+            try {
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            if (listener != null) listener.onProgress(written, ref.size, rate(written, System.nanoTime() - start));
+            return written;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static double rate(long bytes, long nanos) {
+        return nanos <= 0 ? 0 : bytes * 1e9 / nanos;
+    }
+
+    // Return raw encrypted bytes for proof display (first maxBytes only; files can be huge)
+    public byte[] getEncryptedBytes(int userId, int fileId, int maxBytes) throws Exception {
+        FileRef ref = findFile(userId, fileId);
+        if (ref == null) return null;
+        try (InputStream in = store(ref.storage).openCiphertext(userId, ref.id)) {
+            return in == null ? null : in.readNBytes(maxBytes);
         }
-        return null;
     }
 
-    // Return raw encrypted bytes (IV || CIPHERTEXT) for proof display
-    public byte[] getEncryptedBytes(int userId, String fileName) throws Exception {
-        String sql = "SELECT encrypted_data FROM vault_files WHERE user_id = ? AND file_name = ?";
+    // ==================== Thumbnails ====================
+
+    /**
+     * Cached preview image (encoded PNG / JPEG) for a file, or null if none has been made yet.
+     * Files never change under an id, so a cached thumbnail is never stale.
+     */
+    public byte[] getThumbnail(int userId, int fileId) throws Exception {
+        String sql = "SELECT t.thumbnail FROM vault_file_thumbnails t JOIN vault_files f ON f.id = t.file_id " +
+                "WHERE f.id = ? AND f.user_id = ?";
         try (Connection conn = dbManager.getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, fileId);
+            ps.setInt(2, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? encryption.decryptFile(rs.getBytes(1)) : null;
+            }
+        }
+    }
+
+    /** Store (or replace) the encrypted preview image for a file. */
+    public void saveThumbnail(int userId, int fileId, byte[] image) throws Exception {
+        try (Connection conn = dbManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                FileRef ref = findFile(conn, userId, fileId);
+                if (ref == null) {
+                    conn.rollback();
+                    return;
+                }
+                // Delete + insert instead of an upsert, which MySQL and SQLite spell differently
+                try (PreparedStatement del = conn.prepareStatement(
+                        "DELETE FROM vault_file_thumbnails WHERE file_id = ?");
+                     PreparedStatement ins = conn.prepareStatement(
+                             "INSERT INTO vault_file_thumbnails (file_id, thumbnail) VALUES (?, ?)")) {
+                    del.setInt(1, ref.id);
+                    del.executeUpdate();
+                    ins.setInt(1, ref.id);
+                    ins.setBytes(2, encryption.encryptFile(image));
+                    ins.executeUpdate();
+                }
+                conn.commit();
+            } catch (Exception e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    // ==================== Delete ====================
+
+    public boolean deleteFile(int userId, int fileId) throws Exception {
+        try (Connection conn = dbManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                FileRef ref = findFile(conn, userId, fileId);
+                if (ref == null) {
+                    conn.rollback();
+                    return false;
+                }
+                store(ref.storage).delete(conn, userId, ref.id);
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "DELETE FROM vault_file_thumbnails WHERE file_id = ?")) {
+                    ps.setInt(1, ref.id);
+                    ps.executeUpdate();
+                }
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "DELETE FROM vault_files WHERE id = ? AND user_id = ?")) {
+                    ps.setInt(1, ref.id);
+                    ps.setInt(2, userId);
+                    ps.executeUpdate();
+                }
+                conn.commit();
+                return true;
+            } catch (Exception e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    // ==================== Internals ====================
+
+    private FileRef findFile(int userId, String fileName) throws SQLException {
+        try (Connection conn = dbManager.getConnection()) {
+            return findFile(conn, userId, fileName);
+        }
+    }
+
+    // Newest file with that name (names aren't unique): the last idx_user_file entry for the name, then one row read
+    private FileRef findFile(Connection conn, int userId, String fileName) throws SQLException {
+        String sql = "SELECT id, storage, compression, file_size FROM vault_files WHERE user_id = ? AND file_name = ? ORDER BY id DESC LIMIT 1";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setInt(1, userId);
             ps.setString(2, fileName);
             try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getBytes("encrypted_data");
-                }
+                return rs.next() ? mapFileRef(rs) : null;
             }
         }
-        return null;
     }
-    private String headHex(byte[] data, int n) {
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < Math.min(n, data.length); i++) {
-            sb.append(String.format("%02X ", data[i]));
+
+    private FileRef findFile(int userId, int fileId) throws SQLException {
+        try (Connection conn = dbManager.getConnection()) {
+            return findFile(conn, userId, fileId);
+        }
+    }
+
+    // Primary-key probe; the user_id check keeps ids from other users unreachable
+    private FileRef findFile(Connection conn, int userId, int fileId) throws SQLException {
+        String sql = "SELECT id, storage, compression, file_size FROM vault_files WHERE id = ? AND user_id = ?";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, fileId);
+            ps.setInt(2, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? mapFileRef(rs) : null;
+            }
+        }
+    }
+
+    private static FileRef mapFileRef(ResultSet rs) throws SQLException {
+        return new FileRef(rs.getInt("id"), rs.getString("storage"),
+                FileCompression.Codec.fromId(rs.getString("compression")), rs.getLong("file_size"));
+    }
+
+    private static FileInfo mapFileInfo(ResultSet rs) throws SQLException {
+        return new FileInfo(rs.getInt("id"), rs.getString("file_name"), rs.getString("file_type"),
+                rs.getLong("file_size"), rs.getString("content_hash"), rs.getTimestamp("created_at"));
+    }
+
+    private static String encodeCursor(int id, String value) {
+        String raw = id + ":" + value;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // {id, sort value}
+    private static String[] decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int sep = raw.indexOf(':');
+            Integer.parseInt(raw.substring(0, sep));
+            return new String[]{raw.substring(0, sep), raw.substring(sep + 1)};
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid page cursor");
+        }
+    }
+
+    /** Counts bytes consumed: plaintext against an upload's declared size, ciphertext as stored. */
+    static class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
         }
-        return sb.toString().trim();
     }
 }
@@ -2,109 +2,502 @@ package com.vault.service;
 
 import com.vault.core.DatabaseManager;
 import com.vault.core.EncryptionManager;
+import com.vault.core.SessionKeyManager;
 import com.vault.model.Secret;
+import com.vault.model.SecretPage;
 
+import java.nio.charset.StandardCharsets;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 
 public class VaultService {
 
+    private static final String METADATA_COLUMNS = "SELECT id, key_name, created_at, updated_at ";
+    private static final String SECRET_COLUMNS = "SELECT id, key_name, secret_value, cipher_format, created_at, updated_at ";
+    private static final int STREAM_CHUNK_SIZE = 500;
+    // Unfiltered listings up to this size are loaded whole into the metadata cache on first count
+    private static final int CACHE_WARM_LIMIT = 5_000;
+    private static final KeyNameSearchIndex SEARCH_INDEX = new KeyNameSearchIndex();
+    private static final SecretMetadataCache METADATA_CACHE =
+            new SecretMetadataCache(Integer.getInteger("cache.metadata.maxEntries", 50_000));
+    private static final KeyNameMemoryIndex MEMORY_INDEX =
+            new KeyNameMemoryIndex(Integer.getInteger("search.memoryIndex.maxEntries", 200_000));
+    private static final DecryptedValueCache DECRYPTED_CACHE = DecryptedValueCache.fromSystemProperties();
+
     private final DatabaseManager db;
     private final EncryptionManager enc;
 
-    // This matches MainVaultFrame: new VaultService(masterPassword)
-    public VaultService(String masterPassword) throws Exception {
+    // Uses the session's shared key; MainVaultFrame unlocks the session at login
+    public VaultService(SessionKeyManager session) throws Exception {
         this.db = DatabaseManager.getInstance();
-        this.enc = new EncryptionManager(masterPassword);
+        this.enc = session.getEncryptionManager();
     }
 
     // =============== CRUD for secrets ===============
 
+    /**
+     * Full listing or filtered search. The listing is served from the metadata cache when
+     * the user's listing is cached, otherwise loaded (and cached) from the database;
+     * searches go to the in-memory key-name index and return every match, best first.
+     */
     public List<Secret> getSecrets(int userId, String query) throws Exception {
+        if (query != null && !query.trim().isEmpty()) {
+            return searchKeyNames(userId, query.trim(), Integer.MAX_VALUE);
+        }
+        List<Secret> cached = METADATA_CACHE.get(userId);
+        if (cached != null) return cached;
+
+        long version = METADATA_CACHE.version(userId);
         List<Secret> out = new ArrayList<>();
-        String sql = "SELECT id, key_name, secret_value, created_at, updated_at " +
-                "FROM vault_data WHERE user_id = ? " +
-                (query == null || query.isEmpty() ? "" : "AND key_name LIKE ? ") +
-                "ORDER BY updated_at DESC, created_at DESC";
+        streamSecrets(userId, null, out::add);
+        METADATA_CACHE.put(userId, out, version);
+        return out;
+    }
+
+    /**
+     * Search-as-you-type: the best limit matches, answered from the in-memory key-name index,
+     * which is built from the user's metadata on first use. Users with more secrets than the
+     * index holds are searched in the database instead.
+     */
+    private List<Secret> searchKeyNames(int userId, String query, int limit) throws Exception {
+        List<Secret> hits = MEMORY_INDEX.search(userId, query, limit);
+        if (hits != null) return hits;
 
+        long version = MEMORY_INDEX.version(userId);
+        List<Secret> listing = METADATA_CACHE.get(userId);
+        if (listing == null && countRows(userId) <= MEMORY_INDEX.getMaxEntries()) {
+            listing = new ArrayList<>();
+            streamSecrets(userId, null, listing::add);
+        }
+        if (listing != null && MEMORY_INDEX.build(userId, listing, version)) {
+            hits = MEMORY_INDEX.search(userId, query, limit);
+            if (hits != null) return hits;
+        }
+        return searchSecrets(userId, query, limit);
+    }
+
+    /**
+     * Drop per-user cached state (called on logout).
+     */
+    public void clearSessionCaches(int userId) {
+        MEMORY_INDEX.invalidate(userId);
+        METADATA_CACHE.invalidate(userId);
+        DECRYPTED_CACHE.clearUser(userId);
+    }
+
+    public static String getMetadataCacheStats() {
+        return METADATA_CACHE.getStats();
+    }
+
+    public static String getDecryptedCacheStats() {
+        return DECRYPTED_CACHE.getStats();
+    }
+
+    /**
+     * Ranked, index-backed substring search over key names (metadata only).
+     */
+    public List<Secret> searchSecrets(int userId, String query, int limit) throws Exception {
+        try (Connection conn = db.getConnection()) {
+            SEARCH_INDEX.ensureIndexed(conn, userId);
+            return SEARCH_INDEX.search(conn, userId, query, limit);
+        }
+    }
+
+    // =============== Paginated / streaming listing ===============
+
+    /**
+     * One page of metadata (no ciphertext), newest first, using keyset
+     * pagination on (updated_at, id). Pass the previous page's cursor to
+     * continue, or null for the first page.
+     * The cursor carries updated_at exactly as the database returned it as text and is
+     * bound back as text, so it compares in the column's own storage format (SQLite keeps
+     * TIMESTAMP columns as TEXT; a bound java.sql.Timestamp would be an INTEGER there).
+     */
+    public SecretPage listSecrets(int userId, String query, String cursor, int pageSize) throws Exception {
+        if (pageSize < 1) throw new IllegalArgumentException("pageSize must be positive");
+        boolean filtered = query != null && !query.isEmpty();
+        String[] after = cursor == null ? null : decodeCursor(cursor);
+
+        String sql = METADATA_COLUMNS + "FROM vault_data WHERE user_id = ? " +
+                (filtered ? "AND key_name LIKE ? " : "") +
+                (after != null ? "AND (updated_at < ? OR (updated_at = ? AND id < ?)) " : "") +
+                "ORDER BY updated_at DESC, id DESC LIMIT ?";
+
+        List<Secret> items = new ArrayList<>(pageSize);
+        String lastUpdated = null;
         try (Connection conn = db.getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
+            int p = 1;
+            ps.setInt(p++, userId);
+            if (filtered) ps.setString(p++, "%" + query + "%");
+            if (after != null) {
+                ps.setString(p++, after[1]);
+                ps.setString(p++, after[1]);
+                ps.setInt(p++, Integer.parseInt(after[0]));
+            }
+            // Fetch one extra row to learn whether another page exists
+            ps.setInt(p, pageSize + 1);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    items.add(mapMetadata(rs));
+                    if (items.size() == pageSize) lastUpdated = rs.getString("updated_at");
+                }
+            }
+        }
 
+        String next = null;
+        if (items.size() > pageSize) {
+            items.remove(pageSize);
+            next = encodeCursor(items.get(pageSize - 1).getId(), lastUpdated);
+        }
+        return new SecretPage(items, next);
+    }
+
+    /**
+     * Number of rows getSecrets(userId, query) returns. Small unfiltered listings are
+     * loaded into the metadata cache here, so paging through them never hits the database.
+     */
+    public int countSecrets(int userId, String query) throws Exception {
+        if (query != null && !query.trim().isEmpty()) {
+            return getSecrets(userId, query).size();
+        }
+        int cached = METADATA_CACHE.size(userId);
+        if (cached >= 0) return cached;
+
+        int count = countRows(userId);
+        if (count <= CACHE_WARM_LIMIT) {
+            return getSecrets(userId, null).size();
+        }
+        return count;
+    }
+
+    private int countRows(int userId) throws SQLException {
+        try (Connection conn = db.getConnection();
+             PreparedStatement ps = conn.prepareStatement("SELECT COUNT(*) FROM vault_data WHERE user_id = ?")) {
             ps.setInt(1, userId);
-            if (query != null && !query.isEmpty()) {
-                ps.setString(2, "%" + query + "%");
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
             }
+        }
+    }
+
+    /**
+     * Rows [offset, offset + limit) of getSecrets(userId, query), in the same order, with the
+     * cursor of the row after them when read from the database (null otherwise).
+     * cursor / cursorOffset is a known position at or before offset: a cursor an earlier call
+     * returned and the row it starts at, or null / 0 for the start.
+     * Unfiltered listings are sliced from the metadata cache when cached; otherwise the rows
+     * between cursorOffset and offset are skipped by keyset on idx_user_updated, reading only
+     * (updated_at, id), and the page itself comes from listSecrets. Filtered results (every
+     * match, ranked) are sliced in memory.
+     */
+    public SecretPage getSecretRange(int userId, String query, int offset, int limit,
+                                     String cursor, int cursorOffset) throws Exception {
+        if (offset < 0 || limit < 1) throw new IllegalArgumentException("Invalid range");
+        if (cursorOffset < 0 || cursorOffset > offset || (cursor == null && cursorOffset != 0)) {
+            throw new IllegalArgumentException("Invalid cursor position");
+        }
+        if (query != null && !query.trim().isEmpty()) {
+            List<Secret> matches = getSecrets(userId, query);
+            int end = Math.min(matches.size(), offset + limit);
+            return new SecretPage(offset >= end ? new ArrayList<>() : new ArrayList<>(matches.subList(offset, end)), null);
+        }
+        List<Secret> cached = METADATA_CACHE.slice(userId, offset, offset + limit);
+        if (cached != null) return new SecretPage(cached, null);
 
+        String from = cursor;
+        if (offset > cursorOffset) {
+            from = skipSecrets(userId, cursor, offset - cursorOffset);
+            if (from == null) return new SecretPage(new ArrayList<>(), null);
+        }
+        return listSecrets(userId, null, from, limit);
+    }
+
+    /**
+     * The cursor rows rows past cursor (null for the start), or null when fewer rows follow it.
+     * Walks only (updated_at, id), which idx_user_updated covers, so no row data is read.
+     */
+    private String skipSecrets(int userId, String cursor, int rows) throws SQLException {
+        String[] after = cursor == null ? null : decodeCursor(cursor);
+        String sql = "SELECT id, updated_at FROM vault_data WHERE user_id = ? " +
+                (after != null ? "AND (updated_at < ? OR (updated_at = ? AND id < ?)) " : "") +
+                "ORDER BY updated_at DESC, id DESC LIMIT ?";
+
+        int seen = 0;
+        int lastId = 0;
+        String lastUpdated = null;
+        try (Connection conn = db.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            int p = 1;
+            ps.setInt(p++, userId);
+            if (after != null) {
+                ps.setString(p++, after[1]);
+                ps.setString(p++, after[1]);
+                ps.setInt(p++, Integer.parseInt(after[0]));
+            }
+            ps.setInt(p, rows);
+            ps.setFetchSize(Math.min(rows, STREAM_CHUNK_SIZE));
             try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) {
-                    Secret s = new Secret();
-                    s.setId(rs.getInt("id"));
-                    s.setKeyName(rs.getString("key_name"));
-                    s.setEncryptedValue(rs.getString("secret_value"));
-                    s.setCreatedAt(rs.getTimestamp("created_at"));
-                    s.setUpdatedAt(rs.getTimestamp("updated_at"));
-                    out.add(s);
+                    seen++;
+                    lastId = rs.getInt(1);
+                    lastUpdated = rs.getString(2);
                 }
             }
         }
-        return out;
+        return seen < rows ? null : encodeCursor(lastId, lastUpdated);
+    }
+
+    /**
+     * Stream every matching row's metadata to the consumer without
+     * materialising the full list. Rows are read STREAM_CHUNK_SIZE at a time
+     * with listSecrets' keyset cursor; each chunk is buffered and its
+     * connection returned to the pool before the consumer sees it, so the
+     * consumer may use the database itself (SQLite's pool has one connection).
+     * Returns the row count.
+     */
+    public int streamSecrets(int userId, String query, Consumer<Secret> consumer) throws Exception {
+        int count = 0;
+        String cursor = null;
+        do {
+            SecretPage page = listSecrets(userId, query, cursor, STREAM_CHUNK_SIZE);
+            for (Secret s : page.getItems()) {
+                consumer.accept(s);
+                count++;
+            }
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return count;
+    }
+
+    private Secret loadMetadata(Connection conn, int userId, int id) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                METADATA_COLUMNS + "FROM vault_data WHERE user_id = ? AND id = ?")) {
+            ps.setInt(1, userId);
+            ps.setInt(2, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? mapMetadata(rs) : null;
+            }
+        }
+    }
+
+    private Secret mapMetadata(ResultSet rs) throws SQLException {
+        Secret s = new Secret();
+        s.setId(rs.getInt("id"));
+        s.setKeyName(rs.getString("key_name"));
+        s.setCreatedAt(rs.getTimestamp("created_at"));
+        s.setUpdatedAt(rs.getTimestamp("updated_at"));
+        return s;
+    }
+
+    // Cursor = "<id>:<updated_at as stored>"; the timestamp text itself contains colons
+    private static String encodeCursor(int id, String updatedAt) {
+        String raw = id + ":" + (updatedAt != null ? updatedAt : "");
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String[] decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int sep = raw.indexOf(':');
+            Integer.parseInt(raw.substring(0, sep));
+            return new String[]{raw.substring(0, sep), raw.substring(sep + 1)};
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid page cursor");
+        }
+    }
+
+    /**
+     * Id of the user's secret with exactly this key name (unique_user_key), or null.
+     */
+    public Integer findSecretId(int userId, String keyName) throws Exception {
+        try (Connection conn = db.getConnection();
+             PreparedStatement ps = conn.prepareStatement(
+                     "SELECT id FROM vault_data WHERE user_id = ? AND key_name = ?")) {
+            ps.setInt(1, userId);
+            ps.setString(2, keyName);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt("id") : null;
+            }
+        }
     }
 
     public Secret getSecretById(int userId, int id) throws Exception {
-        String sql = "SELECT id, key_name, secret_value, created_at, updated_at " +
-                "FROM vault_data WHERE user_id = ? AND id = ?";
+        Secret cached = DECRYPTED_CACHE.get(userId, id);
+        if (cached != null) return cached;
+
+        // Read before the SELECT: an update committing in between evicts, and the fill below is dropped
+        long generation = DECRYPTED_CACHE.generation();
+        String sql = SECRET_COLUMNS + "FROM vault_data WHERE user_id = ? AND id = ?";
         try (Connection conn = db.getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setInt(1, userId);
             ps.setInt(2, id);
             try (ResultSet rs = ps.executeQuery()) {
                 if (!rs.next()) return null;
-                Secret s = new Secret();
-                s.setId(rs.getInt("id"));
-                s.setKeyName(rs.getString("key_name"));
-                s.setEncryptedValue(rs.getString("secret_value"));
-                s.setCreatedAt(rs.getTimestamp("created_at"));
-                s.setUpdatedAt(rs.getTimestamp("updated_at"));
+                Secret s = mapSecret(rs);
                 // Decrypt on demand in UI: s.getDecryptedValue() uses EncryptionManager
-                s.setDecryptedValue(enc.decrypt(s.getEncryptedValue()));
+                s.setDecryptedValue(decryptValue(s));
+                DECRYPTED_CACHE.put(userId, s, generation);
                 return s;
             }
         }
     }
 
-    public void addSecret(int userId, String keyName, String plainValue) throws Exception {
-        String encVal = enc.encrypt(plainValue);
-        String sql = "INSERT INTO vault_data (user_id, key_name, secret_value) VALUES (?, ?, ?)";
+    /**
+     * Speculatively decrypt ids (e.g. the selected row and its neighbours) into the
+     * decrypted-value cache, so the next getSecretById for them needs no query or decrypt.
+     * Cached ids are skipped and the rest read in one query, then decrypted in the order
+     * given (most wanted first). Stops between rows once
+     * cancelled says so. Nothing is stored if a write or logout invalidated the cache
+     * meanwhile. No-op when the cache is disabled. Returns how many were cached.
+     */
+    public int prefetchSecrets(int userId, List<Integer> ids, BooleanSupplier cancelled) throws Exception {
+        if (!DECRYPTED_CACHE.isEnabled()) return 0;
+        List<Integer> missing = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            if (id != null && !missing.contains(id) && !DECRYPTED_CACHE.contains(userId, id)) missing.add(id);
+        }
+        if (missing.isEmpty() || cancelled.getAsBoolean()) return 0;
+
+        long generation = DECRYPTED_CACHE.generation();
+        StringBuilder in = new StringBuilder();
+        for (int i = 0; i < missing.size(); i++) in.append(i == 0 ? "?" : ", ?");
+        String sql = SECRET_COLUMNS + "FROM vault_data WHERE user_id = ? AND id IN (" + in + ")";
+
+        Map<Integer, Secret> rows = new HashMap<>();
         try (Connection conn = db.getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setInt(1, userId);
-            ps.setString(2, keyName);
-            ps.setString(3, encVal);
-            ps.executeUpdate();
+            for (int i = 0; i < missing.size(); i++) ps.setInt(i + 2, missing.get(i));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Secret s = mapSecret(rs);
+                    rows.put(s.getId(), s);
+                }
+            }
+        }
+
+        int cached = 0;
+        for (Integer id : missing) {
+            Secret s = rows.get(id);
+            if (s == null) continue;
+            if (cancelled.getAsBoolean()) break;
+            s.setDecryptedValue(decryptValue(s));
+            if (!DECRYPTED_CACHE.put(userId, s, generation)) break;
+            cached++;
+        }
+        return cached;
+    }
+
+    private Secret mapSecret(ResultSet rs) throws SQLException {
+        Secret s = mapMetadata(rs);
+        s.setEncryptedValue(rs.getString("secret_value"));
+        s.setCipherFormat(rs.getString("cipher_format"));
+        return s;
+    }
+
+    // Legacy CBC rows are decrypted as such because their row says so, never by trial
+    private String decryptValue(Secret s) throws Exception {
+        return enc.decrypt(s.getEncryptedValue(), EncryptionManager.algorithmFor(s.getCipherFormat()));
+    }
+
+    // Each write updates vault_data and the key-name search index in one transaction
+
+    public void addSecret(int userId, String keyName, String plainValue) throws Exception {
+        String encVal = enc.encrypt(plainValue);
+        String sql = "INSERT INTO vault_data (user_id, key_name, secret_value, cipher_format) VALUES (?, ?, ?, ?)";
+        try (Connection conn = db.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                ps.setInt(1, userId);
+                ps.setString(2, keyName);
+                ps.setString(3, encVal);
+                ps.setString(4, EncryptionManager.FORMAT_ENVELOPE);
+                ps.executeUpdate();
+                int id;
+                try (ResultSet rs = ps.getGeneratedKeys()) {
+                    if (!rs.next()) throw new SQLException("Failed to create secret");
+                    id = rs.getInt(1);
+                }
+                SEARCH_INDEX.index(conn, userId, id, keyName);
+                Secret meta = loadMetadata(conn, userId, id);
+                conn.commit();
+                refreshCachedRow(userId, id, meta);
+            } catch (Exception e) {
+                conn.rollback();
+                throw e;
+            }
         }
     }
 
     public void updateSecret(int userId, int id, String keyName, String plainValue) throws Exception {
+        DECRYPTED_CACHE.evict(userId, id);
         String encVal = enc.encrypt(plainValue);
-        String sql = "UPDATE vault_data SET key_name = ?, secret_value = ? WHERE user_id = ? AND id = ?";
-        try (Connection conn = db.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, keyName);
-            ps.setString(2, encVal);
-            ps.setInt(3, userId);
-            ps.setInt(4, id);
-            ps.executeUpdate();
+        String sql = "UPDATE vault_data SET key_name = ?, secret_value = ?, cipher_format = ? WHERE user_id = ? AND id = ?";
+        try (Connection conn = db.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setString(1, keyName);
+                ps.setString(2, encVal);
+                ps.setString(3, EncryptionManager.FORMAT_ENVELOPE);
+                ps.setInt(4, userId);
+                ps.setInt(5, id);
+                Secret meta = null;
+                if (ps.executeUpdate() > 0) {
+                    SEARCH_INDEX.index(conn, userId, id, keyName);
+                    meta = loadMetadata(conn, userId, id);
+                }
+                conn.commit();
+                refreshCachedRow(userId, id, meta);
+            } catch (Exception e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                // again after the write; a view that read the old row before this bumps the
+                // cache generation, so its fill is dropped instead of re-caching the old value
+                DECRYPTED_CACHE.evict(userId, id);
+            }
         }
     }
 
     public void deleteSecret(int userId, int id) throws Exception {
+        DECRYPTED_CACHE.evict(userId, id);
         String sql = "DELETE FROM vault_data WHERE user_id = ? AND id = ?";
-        try (Connection conn = db.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setInt(1, userId);
-            ps.setInt(2, id);
-            ps.executeUpdate();
+        try (Connection conn = db.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setInt(1, userId);
+                ps.setInt(2, id);
+                if (ps.executeUpdate() > 0) {
+                    SEARCH_INDEX.remove(conn, id);
+                }
+                conn.commit();
+                METADATA_CACHE.remove(userId, id);
+                MEMORY_INDEX.remove(userId, id);
+            } catch (Exception e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                DECRYPTED_CACHE.evict(userId, id);
+            }
+        }
+    }
+
+    private void refreshCachedRow(int userId, int id, Secret meta) {
+        if (meta != null) {
+            METADATA_CACHE.upsert(userId, meta);
+            MEMORY_INDEX.upsert(userId, meta);
+        } else {
+            METADATA_CACHE.remove(userId, id);
+            MEMORY_INDEX.remove(userId, id);
         }
     }
 }
@@ -139,25 +139,29 @@ public class AddSecretDialog extends JDialog {
             return;
         }
 
-        try {
+        UiTasks.<Void>of(task -> {
             // Service handles encryption and DB insert
             vaultService.addSecret(currentUser.getId(), keyName, value);
             userService.logAccess(currentUser.getId(), "ADD", keyName);
-
-            JOptionPane.showMessageDialog(this,
-                    "Secret '" + keyName + "' added successfully!",
-                    "Success",
-                    JOptionPane.INFORMATION_MESSAGE);
-
-            isSaved = true;
-            dispose();
-        } catch (Exception ex) {
-            JOptionPane.showMessageDialog(this,
-                    "Failed to add secret: " + ex.getMessage(),
-                    "Error",
-                    JOptionPane.ERROR_MESSAGE);
-            ex.printStackTrace();
-        }
+            return null;
+        }).disabling(saveButton, cancelButton)
+                .onSuccess(v -> {
+                    JOptionPane.showMessageDialog(this,
+                            "Secret '" + keyName + "' added successfully!",
+                            "Success",
+                            JOptionPane.INFORMATION_MESSAGE);
+
+                    isSaved = true;
+                    dispose();
+                })
+                .onError(ex -> {
+                    JOptionPane.showMessageDialog(this,
+                            "Failed to add secret: " + ex.getMessage(),
+                            "Error",
+                            JOptionPane.ERROR_MESSAGE);
+                    ex.printStackTrace();
+                })
+                .start();
     }
 
     private void onCancel() {
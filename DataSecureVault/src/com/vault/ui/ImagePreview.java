@@ -0,0 +1,178 @@
+package com.vault.ui;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageInputStreamImpl;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * ImagePreview
+ * - Decodes images for preview with ImageIO source subsampling, so only about the target
+ *   size worth of pixels is ever decoded, however large the original is
+ * - Reads the content through a seekable stream over ranged reads, one WINDOW at a time, so
+ *   neither the whole image nor ImageIO's temp-file cache (plaintext on disk) is ever kept
+ * - Encodes previews compactly (JPEG, or PNG when there's transparency) for the thumbnail cache
+ */
+public class ImagePreview {
+
+    private static final float JPEG_QUALITY = 0.85f;
+
+    /** Bytes of the source held at a time (aligned, so it matches 1 MB chunks). */
+    private static final int WINDOW = 1024 * 1024;
+
+    /** Bytes [offset, offset + length) of the source, shorter at the end. */
+    public interface RangeReader {
+        byte[] read(long offset, int length) throws Exception;
+    }
+
+    private ImagePreview() {
+    }
+
+    /**
+     * Decode the first image in the length bytes of source, fitted inside maxW x maxH.
+     * Returns null if no ImageIO reader recognises the format.
+     */
+    public static BufferedImage decode(RangeReader source, long length, int maxW, int maxH) throws IOException {
+        try (ImageInputStream iis = new RangeImageInputStream(source, length)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if (!readers.hasNext()) return null;
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, true, true);
+                int w = reader.getWidth(0);
+                int h = reader.getHeight(0);
+
+                // Largest whole-number step that still leaves at least the target size;
+                // fit() does the remaining (under 2x) reduction smoothly
+                int step = (int) Math.max(1, Math.max((double) w / maxW, (double) h / maxH));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                return fit(reader.read(0, param), maxW, maxH);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /** Scale down (never up) to fit inside maxW x maxH. */
+    public static BufferedImage fit(BufferedImage src, int maxW, int maxH) {
+        int w = src.getWidth();
+        int h = src.getHeight();
+        double scale = Math.min(1.0, Math.min((double) maxW / w, (double) maxH / h));
+        int tw = Math.max(1, (int) Math.round(w * scale));
+        int th = Math.max(1, (int) Math.round(h * scale));
+        boolean alpha = src.getColorModel().hasAlpha();
+        if (tw == w && th == h && src.getType() == (alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB)) {
+            return src;
+        }
+
+        BufferedImage out = new BufferedImage(tw, th, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = out.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(src, 0, 0, tw, th, null);
+        } finally {
+            g.dispose();
+        }
+        return out;
+    }
+
+    /** JPEG bytes, or PNG when the image has an alpha channel. */
+    public static byte[] encode(BufferedImage img) throws IOException {
+        boolean png = img.getColorModel().hasAlpha();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(png ? "png" : "jpeg").next();
+        try (MemoryCacheImageOutputStream out = new MemoryCacheImageOutputStream(bytes)) {
+            writer.setOutput(out);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (!png) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(JPEG_QUALITY);
+            }
+            writer.write(null, new IIOImage(img, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Decode bytes made by encode(). */
+    public static BufferedImage read(byte[] encoded) throws IOException {
+        return ImageIO.read(new MemoryCacheImageInputStream(new ByteArrayInputStream(encoded)));
+    }
+
+    /**
+     * Seekable stream over a RangeReader: holds one WINDOW of the source, and seeking outside
+     * it (ImageIO seeks back to re-read headers) reloads just that window.
+     */
+    private static final class RangeImageInputStream extends ImageInputStreamImpl {
+        private final RangeReader source;
+        private final long length;
+        private byte[] window = new byte[0];
+        private long windowStart = 0;
+
+        RangeImageInputStream(RangeReader source, long length) {
+            this.source = source;
+            this.length = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            checkClosed();
+            bitOffset = 0;
+            if (len == 0) return 0;
+            if (streamPos >= length) return -1;
+            if (streamPos < windowStart || streamPos >= windowStart + window.length) load(streamPos - streamPos % WINDOW);
+            int n = Math.min(len, (int) (windowStart + window.length - streamPos));
+            if (n <= 0) return -1;   // the source is shorter than length
+            System.arraycopy(window, (int) (streamPos - windowStart), b, off, n);
+            streamPos += n;
+            return n;
+        }
+
+        private void load(long start) throws IOException {
+            Arrays.fill(window, (byte) 0);
+            byte[] data;
+            try {
+                data = source.read(start, (int) Math.min(WINDOW, length - start));
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e.getMessage(), e);
+            }
+            window = data != null ? data : new byte[0];
+            windowStart = start;
+        }
+
+        @Override
+        public long length() {
+            return length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            Arrays.fill(window, (byte) 0);
+        }
+    }
+}
@@ -1,9 +1,13 @@
 package com.vault.ui;
 
+import com.vault.core.SessionKeyManager;
 import com.vault.service.UserService;
+import com.vault.service.VaultFileService;
+import com.vault.service.VaultService;
 import com.vault.model.User;
 import javax.swing.*;
 import java.awt.*;
+import java.util.Arrays;
 
 public class LoginFrame extends JFrame {
 
@@ -14,24 +18,53 @@ public class LoginFrame extends JFrame {
     private JCheckBox showPasswordCheckbox;
     private UserService userService;
 
-    public LoginFrame() {
-        super("Secure Data Vault - Login");
+    /** A successful login: the user plus the services built for the session, off the EDT. */
+    private static class LoginResult {
+        final User user;
+        final VaultService vaultService;
+        final VaultFileService fileService;
 
-        try {
-            userService = new UserService();
-        } catch (Exception e) {
-            JOptionPane.showMessageDialog(this,
-                    "Failed to initialize user service: " + e.getMessage(),
-                    "Initialization Error",
-                    JOptionPane.ERROR_MESSAGE);
-            System.exit(1);
+        LoginResult(User user, VaultService vaultService, VaultFileService fileService) {
+            this.user = user;
+            this.vaultService = vaultService;
+            this.fileService = fileService;
         }
+    }
+
+    public LoginFrame() {
+        this(null);
+    }
+
+    /**
+     * userService is the one from the session that just logged out, or null to build one
+     * in the background (login stays disabled until it's ready).
+     */
+    public LoginFrame(UserService userService) {
+        super("Secure Data Vault - Login");
+        this.userService = userService;
 
         initializeComponents();
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setSize(480, 320);
         setLocationRelativeTo(null);
         setResizable(false);
+        if (userService == null) initializeUserService();
+    }
+
+    private void initializeUserService() {
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        UiTasks.<UserService>of(task -> new UserService())
+                .disabling(loginButton, registerButton, passwordField)
+                .onFinish(() -> setCursor(Cursor.getDefaultCursor()))
+                .onSuccess(service -> userService = service)
+                .onError(ex -> {
+                    JOptionPane.showMessageDialog(this,
+                            "Failed to initialize user service: " + ex.getMessage(),
+                            "Initialization Error",
+                            JOptionPane.ERROR_MESSAGE);
+                    System.exit(1);
+                })
+                .start();
     }
 
     private void initializeComponents() {
@@ -126,36 +159,58 @@ public class LoginFrame extends JFrame {
             return;
         }
 
-        try {
-            User user = userService.loginUser(username, password);
-
-            if (user != null) {
+        // Password check, key derivation (PBKDF2, hundreds of ms each) and building the
+        // session's services all happen off the EDT
+        char[] secret = passwordField.getPassword();
+        SessionKeyManager session = SessionKeyManager.getInstance();
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        UiTasks.<LoginResult>of(task -> {
+            try {
+                User user = userService.loginUser(username, password);
+                if (user == null) return null;
                 userService.logAccess(user.getId(), "LOGIN", null);
-
-                JOptionPane.showMessageDialog(this,
-                        "Welcome back, " + username + "!",
-                        "Login Successful",
-                        JOptionPane.INFORMATION_MESSAGE);
-
-                dispose();
-                SwingUtilities.invokeLater(() -> {
-                    MainVaultFrame mainFrame = new MainVaultFrame(user, password);
-                    mainFrame.setVisible(true);
-                });
-            } else {
-                JOptionPane.showMessageDialog(this,
-                        "Invalid username or password.\nPlease try again.",
-                        "Login Failed",
-                        JOptionPane.ERROR_MESSAGE);
-                passwordField.setText("");
+                // Derive the vault data key once; every service shares it
+                session.unlock(secret);
+                try {
+                    return new LoginResult(user, new VaultService(session), new VaultFileService(session));
+                } catch (Exception e) {
+                    session.lock();
+                    throw e;
+                }
+            } finally {
+                Arrays.fill(secret, '\0');
             }
-        } catch (Exception ex) {
-            JOptionPane.showMessageDialog(this,
-                    "An error occurred during login:\n" + ex.getMessage(),
-                    "Error",
-                    JOptionPane.ERROR_MESSAGE);
-            ex.printStackTrace();
-        }
+        }).disabling(loginButton, registerButton, usernameField, passwordField)
+                .onFinish(() -> setCursor(Cursor.getDefaultCursor()))
+                .onSuccess(result -> {
+                    if (result == null) {
+                        JOptionPane.showMessageDialog(this,
+                                "Invalid username or password.\nPlease try again.",
+                                "Login Failed",
+                                JOptionPane.ERROR_MESSAGE);
+                        passwordField.setText("");
+                        return;
+                    }
+                    JOptionPane.showMessageDialog(this,
+                            "Welcome back, " + username + "!",
+                            "Login Successful",
+                            JOptionPane.INFORMATION_MESSAGE);
+
+                    dispose();
+                    SwingUtilities.invokeLater(() -> {
+                        MainVaultFrame mainFrame = new MainVaultFrame(result.user, session,
+                                result.vaultService, userService, result.fileService);
+                        mainFrame.setVisible(true);
+                    });
+                })
+                .onError(ex -> {
+                    JOptionPane.showMessageDialog(this,
+                            "An error occurred during login:\n" + ex.getMessage(),
+                            "Error",
+                            JOptionPane.ERROR_MESSAGE);
+                    ex.printStackTrace();
+                })
+                .start();
     }
 
     private void handleRegister() {
@@ -178,28 +233,34 @@ public class LoginFrame extends JFrame {
             return;
         }
 
-        try {
-            User user = userService.registerUser(username, password);
-
-            if (user != null) {
-                JOptionPane.showMessageDialog(this,
-                        "Registration successful!\nYou can now log in with your credentials.",
-                        "Success",
-                        JOptionPane.INFORMATION_MESSAGE);
-
-                passwordField.setText("");
-            }
-        } catch (IllegalArgumentException ex) {
-            JOptionPane.showMessageDialog(this,
-                    ex.getMessage(),
-                    "Registration Failed",
-                    JOptionPane.WARNING_MESSAGE);
-        } catch (Exception ex) {
-            JOptionPane.showMessageDialog(this,
-                    "An error occurred during registration:\n" + ex.getMessage(),
-                    "Error",
-                    JOptionPane.ERROR_MESSAGE);
-            ex.printStackTrace();
-        }
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        UiTasks.<User>of(task -> userService.registerUser(username, password))
+                .disabling(loginButton, registerButton, usernameField, passwordField)
+                .onFinish(() -> setCursor(Cursor.getDefaultCursor()))
+                .onSuccess(user -> {
+                    if (user != null) {
+                        JOptionPane.showMessageDialog(this,
+                                "Registration successful!\nYou can now log in with your credentials.",
+                                "Success",
+                                JOptionPane.INFORMATION_MESSAGE);
+
+                        passwordField.setText("");
+                    }
+                })
+                .onError(ex -> {
+                    if (ex instanceof IllegalArgumentException) {
+                        JOptionPane.showMessageDialog(this,
+                                ex.getMessage(),
+                                "Registration Failed",
+                                JOptionPane.WARNING_MESSAGE);
+                        return;
+                    }
+                    JOptionPane.showMessageDialog(this,
+                            "An error occurred during registration:\n" + ex.getMessage(),
+                            "Error",
+                            JOptionPane.ERROR_MESSAGE);
+                    ex.printStackTrace();
+                })
+                .start();
     }
 }
@@ -1,5 +1,6 @@
 package com.vault.ui;
 
+import com.vault.core.SessionKeyManager;
 import com.vault.model.Secret;
 import com.vault.model.User;
 import com.vault.service.UserService;
@@ -7,42 +8,64 @@ import com.vault.service.VaultService;
 import com.vault.service.VaultFileService;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 public class MainVaultFrame extends JFrame {
 
     private final User currentUser;
-    private final String masterPassword;
+    private final SessionKeyManager session;
 
     private final VaultService vaultService;
     private final UserService userService;
     private final VaultFileService fileService;
 
+    // Image previews are decoded (subsampled) to fit this box, then cached as thumbnails
+    private static final int PREVIEW_MAX_WIDTH = 640;
+    private static final int PREVIEW_MAX_HEIGHT = 480;
+    private static final int CIPHER_VIEW_MAX_BYTES = 64 * 1024;
+    // Files at least this large upload as resumable sessions
+    private static final long RESUMABLE_UPLOAD_MIN_BYTES = 64L * 1024 * 1024;
+    // File pickers list this many files per catalog page, newest first; MORE_FILES pages on
+    private static final int FILE_CHOOSER_LIMIT = 200;
+    private static final String MORE_FILES = "More files...";
+    // Search runs once typing pauses this long
+    private static final int SEARCH_DEBOUNCE_MS = 150;
+    // Rows either side of the selection whose secrets are prefetched too
+    private static final int PREFETCH_NEIGHBOURS = 1;
+    // How long logout waits for cancelled tasks to stop before locking anyway
+    private static final long LOGOUT_DRAIN_MS = 10_000;
+
     private JTable table;
-    private DefaultTableModel model;
+    private SecretTableModel model;
     private JTextField searchField;
+    private Timer searchTimer;
     private JLabel statusLabel;
 
-    public MainVaultFrame(User user, String masterPassword) {
+    /**
+     * The services come ready-built from LoginFrame's login task (off the EDT); the vault and
+     * file services share the key it derived when it unlocked the session.
+     */
+    public MainVaultFrame(User user, SessionKeyManager session, VaultService vaultService,
+                          UserService userService, VaultFileService fileService) {
         super("Secure Data Vault - " + user.getUsername());
         this.currentUser = user;
-        this.masterPassword = masterPassword;
-
-        try {
-            this.vaultService = new VaultService(masterPassword);
-            this.userService = new UserService();
-            this.fileService = new VaultFileService(masterPassword);
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to initialize services: " + e.getMessage(), e);
-        }
+        this.session = session;
+        this.vaultService = vaultService;
+        this.userService = userService;
+        this.fileService = fileService;
 
         initUI();
         loadSecrets("");
@@ -68,7 +91,16 @@ public class MainVaultFrame extends JFrame {
         JPanel searchPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 5, 0));
         searchField = new JTextField(24);
         JButton searchBtn = new JButton("🔎");
-        searchBtn.addActionListener(e -> loadSecrets(searchField.getText().trim()));
+        searchBtn.addActionListener(e -> searchNow());
+        // Search as you type (debounced); Enter searches immediately
+        searchTimer = new Timer(SEARCH_DEBOUNCE_MS, e -> searchNow());
+        searchTimer.setRepeats(false);
+        searchField.addActionListener(e -> searchNow());
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override public void insertUpdate(DocumentEvent e) { searchTimer.restart(); }
+            @Override public void removeUpdate(DocumentEvent e) { searchTimer.restart(); }
+            @Override public void changedUpdate(DocumentEvent e) { }
+        });
         searchPanel.add(new JLabel("Search:"));
         searchPanel.add(searchField);
         searchPanel.add(searchBtn);
@@ -83,14 +115,25 @@ public class MainVaultFrame extends JFrame {
 
 
         // Table
-        model = new DefaultTableModel(new Object[]{"ID", "Key Name", "Created", "Updated"}, 0) {
-            @Override public boolean isCellEditable(int row, int column) { return false; }
-        };
+        // Virtual model: rows are paged in as they're painted
+        model = new SecretTableModel(vaultService, currentUser.getId());
         table = new JTable(model);
         table.setRowHeight(22);
         table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        // Decrypt the selected secret ahead of time so View / Update / Cipher open at once
+        table.getSelectionModel().addListSelectionListener(e -> {
+            if (!e.getValueIsAdjusting()) prefetchAround(table.getSelectedRow());
+        });
         JScrollPane scrollPane = new JScrollPane(table);
         scrollPane.setBorder(BorderFactory.createEmptyBorder(0, 10, 0, 10));
+        // Drop page fetches for rows scrolled past before they arrive
+        scrollPane.getViewport().addChangeListener(e -> {
+            Rectangle view = table.getVisibleRect();
+            int first = table.rowAtPoint(view.getLocation());
+            if (first < 0) return;
+            int last = table.rowAtPoint(new Point(view.x, view.y + view.height - 1));
+            model.setVisibleRows(first, last >= 0 ? last : model.getRowCount() - 1);
+        });
         add(scrollPane, BorderLayout.CENTER);
 
         // Footer
@@ -113,6 +156,8 @@ public class MainVaultFrame extends JFrame {
         previewFileBtn.addActionListener(e -> handlePreviewFile());          // NEW
         JButton viewFileCipherBtn = new JButton("🔑 File Cipher");           // NEW
         viewFileCipherBtn.addActionListener(e -> handleViewFileCipher());    // NEW
+        JButton deleteFileBtn = new JButton("🗑️ Delete File");
+        deleteFileBtn.addActionListener(e -> handleDeleteFile());
 
         addBtn.addActionListener(e -> handleAdd());
         viewBtn.addActionListener(e -> handleView());
@@ -134,6 +179,7 @@ public class MainVaultFrame extends JFrame {
         buttons.add(viewFilesBtn);
         buttons.add(previewFileBtn);       // NEW
         buttons.add(viewFileCipherBtn);    // NEW
+        buttons.add(deleteFileBtn);
 
         statusLabel = new JLabel("Loaded 0 secret(s)");
         footer.add(buttons, BorderLayout.WEST);
@@ -143,30 +189,41 @@ public class MainVaultFrame extends JFrame {
     }
 
     private void loadSecrets(String query) {
-        try {
-            model.setRowCount(0);
-            DateTimeFormatter fmt = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
-            List<Secret> secrets = vaultService.getSecrets(currentUser.getId(), query);
-            for (Secret s : secrets) {
-                model.addRow(new Object[]{
-                        s.getId(),
-                        s.getKeyName(),
-                        s.getCreatedAt() != null ? fmt.format(s.getCreatedAt().toLocalDateTime()) : "",
-                        s.getUpdatedAt() != null ? fmt.format(s.getUpdatedAt().toLocalDateTime()) : ""
+        statusLabel.setText("Loading...");
+        model.reload(query,
+                count -> statusLabel.setText("Loaded " + count + " secret(s)"),
+                ex -> {
+                    statusLabel.setText("Load failed");
+                    showError("Failed to load secrets: " + ex.getMessage());
                 });
-            }
-            statusLabel.setText("Loaded " + secrets.size() + " secret(s)");
-        } catch (Exception ex) {
-            showError("Failed to load secrets: " + ex.getMessage());
+    }
+
+    private void searchNow() {
+        searchTimer.stop();
+        loadSecrets(searchField.getText().trim());
+    }
+
+    private void prefetchAround(int row) {
+        if (row < 0) return;
+        // Selected row first, then its neighbours nearest first (ids of unloaded rows are null)
+        List<Integer> ids = new ArrayList<>();
+        ids.add(model.getSecretId(row));
+        for (int d = 1; d <= PREFETCH_NEIGHBOURS; d++) {
+            if (row - d >= 0) ids.add(model.getSecretId(row - d));
+            if (row + d < model.getRowCount()) ids.add(model.getSecretId(row + d));
         }
+        // Coalesced: moving the selection cancels the prefetch for the old one
+        UiTasks.<Integer>of(task -> vaultService.prefetchSecrets(currentUser.getId(), ids, task::isCancelled))
+                .coalesce("secret-prefetch")
+                .lowPriority()
+                .onError(ex -> System.err.println("Prefetch failed: " + ex.getMessage()))
+                .start();
     }
 
     private Integer getSelectedSecretId() {
         int row = table.getSelectedRow();
         if (row < 0) return null;
-        Object val = model.getValueAt(row, 0);
-        if (val == null) return null;
-        return Integer.parseInt(val.toString());
+        return model.getSecretId(row);
     }
 
     // ================== Actions ==================
@@ -181,11 +238,7 @@ public class MainVaultFrame extends JFrame {
         dialog.setVisible(true);
 
         if (dialog.isSaved()) {
-            try {
-                loadSecrets(searchField.getText().trim());
-            } catch (Exception ex) {
-                showError("Failed to refresh list: " + ex.getMessage());
-            }
+            loadSecrets(searchField.getText().trim());
         }
     }
 
@@ -195,29 +248,33 @@ public class MainVaultFrame extends JFrame {
             showWarn("Please select a secret to view.");
             return;
         }
-        try {
+        UiTasks.<Secret>of(task -> {
             Secret s = vaultService.getSecretById(currentUser.getId(), id);
-            if (s == null) {
-                showWarn("Secret not found.");
-                return;
-            }
-            userService.logAccess(currentUser.getId(), "VIEW", s.getKeyName());
-            new ViewSecretDialog(this, s.getKeyName(), s.getDecryptedValue()).setVisible(true);
-        } catch (Exception ex) {
-            showError("Failed to decrypt/view secret: " + ex.getMessage());
-        }
+            if (s != null) userService.logAccess(currentUser.getId(), "VIEW", s.getKeyName());
+            return s;
+        }).coalesce("secret-view")
+                .onSuccess(s -> {
+                    if (s == null) {
+                        showWarn("Secret not found.");
+                        return;
+                    }
+                    new ViewSecretDialog(this, s.getKeyName(), s.getDecryptedValue()).setVisible(true);
+                })
+                .onError(ex -> showError("Failed to decrypt/view secret: " + ex.getMessage()))
+                .start();
     }
     // NEW: View raw ciphertext stored in DB
     private void handleViewCipher() {
         Integer id = getSelectedSecretId();
         if (id == null) { showWarn("Please select a secret first."); return; }
-        try {
-            Secret s = vaultService.getSecretById(currentUser.getId(), id);
-            if (s == null) { showWarn("Secret not found."); return; }
-            new ViewCipherDialog(this, s.getKeyName(), s.getEncryptedValue()).setVisible(true);
-        } catch (Exception ex) {
-            showError("Failed to load ciphertext: " + ex.getMessage());
-        }
+        UiTasks.<Secret>of(task -> vaultService.getSecretById(currentUser.getId(), id))
+                .coalesce("secret-cipher")
+                .onSuccess(s -> {
+                    if (s == null) { showWarn("Secret not found."); return; }
+                    new ViewCipherDialog(this, s.getKeyName(), s.getEncryptedValue()).setVisible(true);
+                })
+                .onError(ex -> showError("Failed to load ciphertext: " + ex.getMessage()))
+                .start();
     }
     private void handleUpdate() {
         Integer id = getSelectedSecretId();
@@ -225,28 +282,29 @@ public class MainVaultFrame extends JFrame {
             showWarn("Please select a secret to update.");
             return;
         }
-        try {
-            Secret s = vaultService.getSecretById(currentUser.getId(), id);
-            if (s == null) {
-                showWarn("Secret not found.");
-                return;
-            }
-            UpdateSecretDialog dialog = new UpdateSecretDialog(
-                    this,
-                    currentUser,
-                    s.getId(),
-                    s.getKeyName(),
-                    s.getDecryptedValue(),
-                    vaultService,
-                    userService
-            );
-            dialog.setVisible(true);
-            if (dialog.isSaved()) {
-                loadSecrets(searchField.getText().trim());
-            }
-        } catch (Exception ex) {
-            showError("Failed to update secret: " + ex.getMessage());
-        }
+        UiTasks.<Secret>of(task -> vaultService.getSecretById(currentUser.getId(), id))
+                .coalesce("secret-update")
+                .onSuccess(s -> {
+                    if (s == null) {
+                        showWarn("Secret not found.");
+                        return;
+                    }
+                    UpdateSecretDialog dialog = new UpdateSecretDialog(
+                            this,
+                            currentUser,
+                            s.getId(),
+                            s.getKeyName(),
+                            s.getDecryptedValue(),
+                            vaultService,
+                            userService
+                    );
+                    dialog.setVisible(true);
+                    if (dialog.isSaved()) {
+                        loadSecrets(searchField.getText().trim());
+                    }
+                })
+                .onError(ex -> showError("Failed to update secret: " + ex.getMessage()))
+                .start();
     }
 
     private void handleDelete() {
@@ -260,13 +318,13 @@ public class MainVaultFrame extends JFrame {
                 JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
         if (confirm != JOptionPane.YES_OPTION) return;
 
-        try {
+        UiTasks.<Void>of(task -> {
             vaultService.deleteSecret(currentUser.getId(), id);
             userService.logAccess(currentUser.getId(), "DELETE", String.valueOf(id));
-            loadSecrets(searchField.getText().trim());
-        } catch (Exception ex) {
-            showError("Failed to delete: " + ex.getMessage());
-        }
+            return null;
+        }).onSuccess(v -> loadSecrets(searchField.getText().trim()))
+                .onError(ex -> showError("Failed to delete: " + ex.getMessage()))
+                .start();
     }
 
     private void handleLogout() {
@@ -274,8 +332,24 @@ public class MainVaultFrame extends JFrame {
                 "Logout and close the vault?", "Logout",
                 JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE);
         if (confirm == JOptionPane.YES_OPTION) {
-            dispose();
-            SwingUtilities.invokeLater(() -> new LoginFrame().setVisible(true));
+            setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+            searchTimer.stop();
+            UiTasks.cancelAll();
+            UiTasks.<Void>of(task -> {
+                // Stop page loads, prefetches and transfers first, so none is using the key when it is wiped
+                if (!UiTasks.cancelAllAndWait(task, LOGOUT_DRAIN_MS)) {
+                    System.err.println("Logout: some background tasks did not stop in time");
+                }
+                userService.flushAccessLog();
+                vaultService.clearSessionCaches(currentUser.getId());
+                return null;
+            }).onFinish(() -> {
+                // Lock even if the flush failed; the key must not outlive the window
+                session.lock();
+                dispose();
+                new LoginFrame(userService).setVisible(true);
+            }).onError(ex -> System.err.println("Logout cleanup failed: " + ex.getMessage()))
+                    .start();
         }
     }
 
@@ -287,189 +361,255 @@ public class MainVaultFrame extends JFrame {
                 "Common Files (*.txt, *.pdf, *.jpg, *.png, *.docx, *.xlsx, *.zip)",
                 "txt", "pdf", "jpg", "jpeg", "png", "docx", "xlsx", "zip"));
 
-        if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
-            File file = fileChooser.getSelectedFile();
+        if (fileChooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        File file = fileChooser.getSelectedFile();
+        String fileType = getFileExtension(file.getName());
+        int userId = currentUser.getId();
+
+        if (file.length() < RESUMABLE_UPLOAD_MIN_BYTES) {
+            // Streamed from disk in segments; no size cap and no full copy in memory
+            runTransfer("Add File", "Encrypting " + file.getName() + "...", task -> {
+                try (InputStream in = task.track(Files.newInputStream(file.toPath()), file.length())) {
+                    fileService.saveFile(userId, file.getName(), fileType, in, file.length());
+                }
+                userService.logAccess(userId, "ADD_FILE", file.getName());
+                return null;
+            }, v -> showInfo("File encrypted and saved: " + file.getName()), "Failed to save file: ", null);
+            return;
+        }
 
-            if (file.length() > 10L * 1024 * 1024) {
-                showError("File too large. Max allowed is 10 MB.");
-                return;
+        // Chunk by chunk, so an interrupted upload can pick up where it stopped; only a session
+        // started from this very file (same fingerprint) is offered for resuming
+        UiTasks.<List<VaultFileService.UploadStatus>>of(task -> {
+            String fingerprint = fileService.sourceFingerprint(userId, file.toPath());
+            List<VaultFileService.UploadStatus> same = new ArrayList<>();
+            for (VaultFileService.UploadStatus s : fileService.getPendingUploads(userId)) {
+                if (s.fileName.equals(file.getName()) && fingerprint.equalsIgnoreCase(s.sourceFingerprint)) same.add(s);
             }
+            return same;
+        })
+                .onSuccess(pending -> {
+                    VaultFileService.UploadStatus resume = null;
+                    List<Integer> declined = new ArrayList<>();
+                    for (VaultFileService.UploadStatus s : pending) {
+                        if (confirmResume(s)) {
+                            resume = s;
+                            break;
+                        }
+                        declined.add(s.sessionId);
+                    }
+                    VaultFileService.UploadStatus session = resume;
+                    runTransfer("Add File", "Encrypting " + file.getName() + "...", task -> {
+                        for (int id : declined) fileService.abortUpload(userId, id);
+                        VaultFileService.UploadStatus s = session != null ? session
+                                : fileService.beginUpload(userId, file.getName(), fileType, file.length(),
+                                        fileService.sourceFingerprint(userId, file.toPath()));
+                        fileService.uploadFrom(userId, s, file.toPath(), (done, total, bytesPerSecond) -> {
+                            task.checkCancelled();
+                            task.progress(done, total);
+                        });
+                        userService.logAccess(userId, "ADD_FILE", file.getName());
+                        return null;
+                    }, v -> showInfo("File encrypted and saved: " + file.getName()), "Failed to save file: ",
+                            "Upload paused. Add the same file again to resume it.");
+                })
+                .onError(ex -> showError("Failed to save file: " + ex.getMessage()))
+                .start();
+    }
 
-            try {
-                byte[] fileData = Files.readAllBytes(file.toPath());
-                String fileType = getFileExtension(file.getName());
-                fileService.saveFile(currentUser.getId(), file.getName(), fileType, fileData);
-                userService.logAccess(currentUser.getId(), "ADD_FILE", file.getName());
-                showInfo("File encrypted and saved: " + file.getName());
-            } catch (Exception ex) {
-                showError("Failed to save file: " + ex.getMessage());
-            }
-        }
+    // An unfinished upload of the same file was found: resume it?
+    private boolean confirmResume(VaultFileService.UploadStatus s) {
+        int c = JOptionPane.showConfirmDialog(this,
+                String.format("An earlier upload of %s stopped at %d%% (%s of %s). Resume it?",
+                        s.fileName, s.bytesReceived * 100 / Math.max(1, s.expectedSize),
+                        formatSize(s.bytesReceived), formatSize(s.expectedSize)),
+                "Resume Upload", JOptionPane.YES_NO_OPTION);
+        return c == JOptionPane.YES_OPTION;
     }
 
     private void handleViewFiles() {
-        try {
-            List<VaultFileService.FileInfo> files = fileService.getUserFiles(currentUser.getId());
-            if (files.isEmpty()) {
-                showInfo("No files stored yet.");
-                return;
-            }
-
-            String[] options = files.stream()
-                    .map(f -> f.fileName + " (" + formatSize(f.fileSize) + ")")
-                    .toArray(String[]::new);
-
-            String choice = (String) JOptionPane.showInputDialog(
-                    this,
-                    "Select a file to download:",
-                    "Stored Files",
-                    JOptionPane.PLAIN_MESSAGE,
-                    null,
-                    options,
-                    options[0]);
-
-            if (choice == null) return;
-            String fileName = choice.split(" \\(")[0];
-            downloadFile(fileName);
-        } catch (Exception ex) {
-            showError("Failed to list files: " + ex.getMessage());
-        }
+        chooseFile("Select a file to download:", "Stored Files", this::downloadFile);
     }
 
-    // Preview images and text files in-app
     // Preview images and text files in-app
     private void handlePreviewFile() {
-        try {
-            var files = fileService.getUserFiles(currentUser.getId());
-            if (files.isEmpty()) { showInfo("No files stored yet."); return; }
-
-            String[] names = files.stream()
-                    .map(f -> f.fileName + " (" + formatSize(f.fileSize) + ")")
-                    .toArray(String[]::new);
-
-            String choice = (String) JOptionPane.showInputDialog(
-                    this, "Select a file to preview:", "Preview",
-                    JOptionPane.PLAIN_MESSAGE, null, names, names[0]);
-            if (choice == null) return;
-
-            String fileName = choice.split(" \\(")[0];
-            byte[] data = fileService.getFile(currentUser.getId(), fileName);
-            if (data == null) { showError("File not found."); return; }
+        chooseFile("Select a file to preview:", "Preview", choice -> {
+            String ext = getFileExtension(choice.fileName);
+            if (ext.matches("txt|csv|log")) {
+                // Paged: only what's on screen is decrypted, so any size works
+                new TextPreviewDialog(this, fileService, currentUser.getId(), choice).setVisible(true);
+                return;
+            }
 
-            String ext = getFileExtension(fileName);
             switch (ext) {
                 case "png":
                 case "jpg":
                 case "jpeg":
                 case "gif":
-                    showImagePreview(fileName, data);
-                    break;
-                case "txt":
-                case "csv":
-                case "log":
-                    showTextPreview(fileName, data);
+                    showImagePreview(choice);
                     break;
                 default:
                     int c = JOptionPane.showConfirmDialog(this,
                             "Preview not supported for ." + ext + ". Save and open externally?",
                             "Preview", JOptionPane.YES_NO_OPTION);
                     if (c == JOptionPane.YES_OPTION) {
-                        downloadFile(fileName);
+                        downloadFile(choice);
                     }
             }
-        } catch (Exception ex) {
-            showError("Failed to preview file: " + ex.getMessage());
-        }
+        });
     }
     // NEW: View raw encrypted bytes (Base64) of a stored file
     private void handleViewFileCipher() {                                // NEW
-        try {                                                            // NEW
-            var files = fileService.getUserFiles(currentUser.getId());   // NEW
-            if (files.isEmpty()) { showInfo("No files stored yet."); return; } // NEW
-
-            String[] names = files.stream()                               // NEW
-                    .map(f -> f.fileName + " (" + formatSize(f.fileSize) + ")") // NEW
-                    .toArray(String[]::new);                              // NEW
-
-            String choice = (String) JOptionPane.showInputDialog(         // NEW
-                    this, "Select a file:", "File Cipher",                // NEW
-                    JOptionPane.PLAIN_MESSAGE, null, names, names[0]);    // NEW
-            if (choice == null) return;                                   // NEW
-
-            String fileName = choice.split(" \\(")[0];                    // NEW
-            byte[] encrypted = fileService.getEncryptedBytes(currentUser.getId(), fileName); // NEW
-            if (encrypted == null) { showError("Encrypted data not found."); return; }       // NEW
-
-            String b64 = java.util.Base64.getEncoder().encodeToString(encrypted); // NEW
-            JTextArea area = new JTextArea(14, 60);                      // NEW
-            area.setEditable(false); area.setLineWrap(true); area.setWrapStyleWord(true); // NEW
-            area.setText(b64);                                           // NEW
-            JScrollPane scroll = new JScrollPane(area);                  // NEW
-            JDialog dlg = new JDialog(this, "Ciphertext: " + fileName, true); // NEW
-            dlg.getContentPane().add(scroll);                            // NEW
-            dlg.setSize(760, 520);                                       // NEW
-            dlg.setLocationRelativeTo(this);                             // NEW
-            dlg.setVisible(true);                                        // NEW
-        } catch (Exception ex) {                                         // NEW
-            showError("Failed to load file ciphertext: " + ex.getMessage()); // NEW
-        }                                                                // NEW
+        chooseFile("Select a file:", "File Cipher", choice ->             // NEW
+                UiTasks.<byte[]>of(task -> fileService.getEncryptedBytes(currentUser.getId(), choice.id, CIPHER_VIEW_MAX_BYTES)) // NEW
+                        .onSuccess(encrypted -> {                        // NEW
+                            if (encrypted == null) { showError("Encrypted data not found."); return; } // NEW
+
+                            String b64 = java.util.Base64.getEncoder().encodeToString(encrypted); // NEW
+                            JTextArea area = new JTextArea(14, 60);      // NEW
+                            area.setEditable(false); area.setLineWrap(true); area.setWrapStyleWord(true); // NEW
+                            area.setText(b64);                           // NEW
+                            JScrollPane scroll = new JScrollPane(area);  // NEW
+                            JDialog dlg = new JDialog(this, "Ciphertext (first " + formatSize(encrypted.length) + "): " + choice.fileName, true); // NEW
+                            dlg.getContentPane().add(scroll);            // NEW
+                            dlg.setSize(760, 520);                       // NEW
+                            dlg.setLocationRelativeTo(this);             // NEW
+                            dlg.setVisible(true);                        // NEW
+                        })                                               // NEW
+                        .onError(ex -> showError("Failed to load file ciphertext: " + ex.getMessage())) // NEW
+                        .start());                                       // NEW
     }
-    private void showImagePreview(String fileName, byte[] data) {
-        ImageIcon icon = new ImageIcon(data);
-        Image img = icon.getImage();
-        // scale down if too large
-        int maxW = 640, maxH = 480;
-        int w = icon.getIconWidth(), h = icon.getIconHeight();
-        if (w > maxW || h > maxH) {
-            double scale = Math.min((double)maxW / w, (double)maxH / h);
-            img = img.getScaledInstance((int)(w*scale), (int)(h*scale), Image.SCALE_SMOOTH);
-            icon = new ImageIcon(img);
-        }
-        JLabel label = new JLabel(icon);
-        JScrollPane scroll = new JScrollPane(label);
-        JDialog dlg = new JDialog(this, "Preview: " + fileName, true);
-        dlg.getContentPane().add(scroll);
-        dlg.setSize(700, 520);
-        dlg.setLocationRelativeTo(this);
-        dlg.setVisible(true);
+    private void handleDeleteFile() {
+        chooseFile("Select a file to delete:", "Delete File", choice -> {
+            String fileName = choice.fileName;
+            int confirm = JOptionPane.showConfirmDialog(this,
+                    "Delete " + fileName + "?", "Confirm Delete",
+                    JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
+            if (confirm != JOptionPane.YES_OPTION) return;
+
+            UiTasks.<Boolean>of(task -> {
+                boolean deleted = fileService.deleteFile(currentUser.getId(), choice.id);
+                if (deleted) userService.logAccess(currentUser.getId(), "DELETE_FILE", fileName);
+                return deleted;
+            }).onSuccess(deleted -> {
+                if (deleted) showInfo("File deleted: " + fileName);
+                else showError("File not found.");
+            }).onError(ex -> showError("Failed to delete file: " + ex.getMessage()))
+                    .start();
+        });
     }
 
-    private void showTextPreview(String fileName, byte[] data) {
-        String text;
-        try { text = new String(data, java.nio.charset.StandardCharsets.UTF_8); }
-        catch (Exception e) { text = "[Unable to decode text]"; }
-
-        JTextArea area = new JTextArea(text, 20, 60);
-        area.setEditable(false);
-        area.setLineWrap(true);
-        area.setWrapStyleWord(true);
-        JScrollPane scroll = new JScrollPane(area);
-
-        JDialog dlg = new JDialog(this, "Preview: " + fileName, true);
-        dlg.getContentPane().add(scroll);
-        dlg.setSize(700, 520);
-        dlg.setLocationRelativeTo(this);
-        dlg.setVisible(true);
+    /**
+     * Pick one of the user's files, newest first, and hand it to then. Entries carry the
+     * file id, so files that share a name stay distinct. The listing loads in the background.
+     */
+    private void chooseFile(String prompt, String title, Consumer<VaultFileService.FileInfo> then) {
+        chooseFile(prompt, title, null, then);
     }
 
-    private void downloadFile(String fileName) {
-        try {
-            byte[] data = fileService.getFile(currentUser.getId(), fileName);
-            if (data == null) {
-                showError("File not found.");
-                return;
-            }
+    /**
+     * One catalog page of the picker. When there are older files, a MORE_FILES entry at the
+     * end loads the next page from the keyset cursor, so every file can be reached.
+     */
+    private void chooseFile(String prompt, String title, String cursor, Consumer<VaultFileService.FileInfo> then) {
+        UiTasks.<VaultFileService.FilePage>of(task -> fileService.listFiles(currentUser.getId(),
+                        VaultFileService.FileSort.NEWEST, cursor, FILE_CHOOSER_LIMIT))
+                .coalesce("file-list")
+                .onSuccess(page -> {
+                    if (page.items.isEmpty()) {
+                        showInfo(cursor == null ? "No files stored yet." : "No older files.");
+                        return;
+                    }
+                    List<Object> options = new ArrayList<>(page.items);
+                    if (page.hasMore()) options.add(MORE_FILES);
+                    String text = page.hasMore() ? prompt + " (choose \"" + MORE_FILES + "\" for older files)" : prompt;
+                    Object choice = JOptionPane.showInputDialog(
+                            this, text, title, JOptionPane.PLAIN_MESSAGE, null, options.toArray(), options.get(0));
+                    if (choice == MORE_FILES) {
+                        chooseFile(prompt, title, page.nextCursor, then);
+                    } else if (choice != null) {
+                        then.accept((VaultFileService.FileInfo) choice);
+                    }
+                })
+                .onError(ex -> showError("Failed to list files: " + ex.getMessage()))
+                .start();
+    }
 
-            JFileChooser saver = new JFileChooser();
-            saver.setSelectedFile(new File(fileName));
-            if (saver.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
-                Files.write(saver.getSelectedFile().toPath(), data);
-                userService.logAccess(currentUser.getId(), "DOWNLOAD_FILE", fileName);
-                showInfo("File decrypted and saved: " + saver.getSelectedFile().getAbsolutePath());
+    private void showImagePreview(VaultFileService.FileInfo file) {
+        int userId = currentUser.getId();
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        UiTasks.<BufferedImage>of(task -> {
+            // Cached thumbnail first; otherwise decode subsampled through ranged reads and cache it
+            byte[] cached = fileService.getThumbnail(userId, file.id);
+            BufferedImage img = cached != null ? ImagePreview.read(cached) : null;
+            if (img != null) return img;
+            img = ImagePreview.decode((offset, length) -> {
+                byte[] range = fileService.readRange(userId, file.id, offset, length);
+                if (range == null) throw new IOException("File not found.");
+                return range;
+            }, file.fileSize, PREVIEW_MAX_WIDTH, PREVIEW_MAX_HEIGHT);
+            if (img == null) throw new IOException("Unrecognised or corrupt image.");
+            try {
+                fileService.saveThumbnail(userId, file.id, ImagePreview.encode(img));
+            } catch (Exception e) {
+                System.err.println("Thumbnail not cached: " + e.getMessage());
             }
-        } catch (Exception ex) {
-            showError("Failed to download file: " + ex.getMessage());
-        }
+            return img;
+        }).coalesce("image-preview")
+                .onFinish(() -> setCursor(Cursor.getDefaultCursor()))
+                .onSuccess(img -> {
+                    JLabel label = new JLabel(new ImageIcon(img));
+                    JScrollPane scroll = new JScrollPane(label);
+                    JDialog dlg = new JDialog(this, "Preview: " + file.fileName, true);
+                    dlg.getContentPane().add(scroll);
+                    dlg.setSize(700, 520);
+                    dlg.setLocationRelativeTo(this);
+                    dlg.setVisible(true);
+                })
+                .onError(ex -> showError("Failed to preview file: " + ex.getMessage()))
+                .start();
+    }
+
+    private void downloadFile(VaultFileService.FileInfo file) {
+        String fileName = file.fileName;
+        JFileChooser saver = new JFileChooser();
+        saver.setSelectedFile(new File(fileName));
+        if (saver.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        File target = saver.getSelectedFile();
+        double[] rate = {0};
+        this.<Long>runTransfer("Download", "Decrypting " + fileName + "...", task -> {
+            long written = fileService.downloadTo(currentUser.getId(), file.id, target.toPath(),
+                    (done, total, bytesPerSecond) -> {
+                        task.checkCancelled();
+                        rate[0] = bytesPerSecond;
+                        task.progress(done, total);
+                    });
+            userService.logAccess(currentUser.getId(), "DOWNLOAD_FILE", fileName);
+            return written;
+        }, written -> showInfo(String.format("File decrypted and saved: %s%n%s at %.1f MB/s",
+                target.getAbsolutePath(), formatSize(written), rate[0] / (1024 * 1024))),
+                "Failed to download file: ", null);
+    }
+
+    /**
+     * Run a file transfer behind a modal progress dialog whose Cancel button cancels it.
+     * The work reports progress through its task and stops at task.checkCancelled().
+     */
+    private <T> void runTransfer(String title, String message, UiTasks.Work<T> work, Consumer<T> onDone,
+                                 String failurePrefix, String cancelledMessage) {
+        UiTasks.ProgressDialog[] dialog = new UiTasks.ProgressDialog[1];
+        UiTasks.Task<T> task = UiTasks.of(work);
+        task.onProgress((done, total) -> dialog[0].setProgress(done, total,
+                        formatSize(done) + " of " + formatSize(total)))
+                .onFinish(() -> {
+                    dialog[0].close();
+                    if (task.isCancelled() && cancelledMessage != null) showInfo(cancelledMessage);
+                })
+                .onSuccess(onDone)
+                .onError(ex -> showError(failurePrefix + ex.getMessage()));
+        dialog[0] = new UiTasks.ProgressDialog(this, title, message, task);
+        task.start();
+        dialog[0].setVisible(true);
     }
 
     // ================== Utils ==================
@@ -483,7 +623,7 @@ public class MainVaultFrame extends JFrame {
         return (i > 0 && i < name.length() - 1) ? name.substring(i + 1).toLowerCase() : "unknown";
     }
 
-    private String formatSize(int bytes) {
+    private String formatSize(long bytes) {
         if (bytes < 1024) return bytes + " B";
         if (bytes < 1024 * 1024) return (bytes / 1024) + " KB";
         return (bytes / (1024 * 1024)) + " MB";
@@ -0,0 +1,269 @@
+package com.vault.ui;
+
+import com.vault.model.Secret;
+import com.vault.model.SecretPage;
+import com.vault.service.VaultService;
+
+import javax.swing.Timer;
+import javax.swing.table.AbstractTableModel;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * SecretTableModel
+ * - Virtual model for the secrets table: the row count comes first, and rows are fetched
+ *   PAGE_ROWS at a time in the background only when the table paints them
+ * - At most MAX_PAGES pages are held; the least recently painted page is dropped first
+ * - Pages are stored column-wise in arrays (ids and epoch millis as primitives); dates are
+ *   formatted only for the cells being painted
+ * - One event per change: a loaded page fires a single rows-updated event, reload() a single
+ *   data-changed event, so even a 100k-row vault opens instantly
+ * - Rows whose page hasn't arrived yet show a placeholder
+ * - Pages are read by keyset from the nearest page whose start cursor is known (the cursor
+ *   after each loaded page is kept), never with OFFSET
+ * - setVisibleRows() cancels fetches for pages scrolled out of view, so a fast scroll doesn't
+ *   queue up pages nobody will see
+ * - A page that fails to load is retried with exponential back-off (RETRY_MS up to
+ *   MAX_RETRY_MS), and the failure is logged once, not on every repaint
+ */
+public class SecretTableModel extends AbstractTableModel {
+
+    static final int PAGE_ROWS = 200;
+    static final int MAX_PAGES = 32;
+    static final int RETRY_MS = 1000;
+    static final int MAX_RETRY_MS = 30_000;
+
+    private static final String[] COLUMNS = {"ID", "Key Name", "Created", "Updated"};
+    private static final String LOADING = "Loading...";
+    private static final String FAILED = "Couldn't load, retrying...";
+    private static final DateTimeFormatter DATE_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").withZone(ZoneId.systemDefault());
+
+    private final VaultService vaultService;
+    private final int userId;
+
+    private String query = "";
+    private int rowCount = 0;
+    private int generation = 0;   // bumped by reload(); pages from an older listing are dropped
+    private final Map<Integer, UiTasks.Task<SecretPage>> loading = new HashMap<>();
+    private final Map<Integer, Backoff> failed = new HashMap<>();
+    // Page index -> listSecrets cursor of its first row; page 0 starts at null
+    private final TreeMap<Integer, String> cursors = new TreeMap<>();
+    private final LinkedHashMap<Integer, Page> pages = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Page> eldest) {
+            return size() > MAX_PAGES;
+        }
+    };
+
+    /** PAGE_ROWS (or fewer, at the end) rows, column-wise; timestamps are epoch millis, -1 for none. */
+    private static final class Page {
+        final int[] ids;
+        final String[] names;
+        final long[] created;
+        final long[] updated;
+
+        Page(List<Secret> rows) {
+            int n = rows.size();
+            ids = new int[n];
+            names = new String[n];
+            created = new long[n];
+            updated = new long[n];
+            for (int i = 0; i < n; i++) {
+                Secret s = rows.get(i);
+                ids[i] = s.getId();
+                names[i] = s.getKeyName();
+                created[i] = s.getCreatedAt() != null ? s.getCreatedAt().getTime() : -1;
+                updated[i] = s.getUpdatedAt() != null ? s.getUpdatedAt().getTime() : -1;
+            }
+        }
+    }
+
+    /** Failed attempts at a page and when it may be fetched again. */
+    private static final class Backoff {
+        int attempts;
+        long retryAt;
+    }
+
+    /** What reload() fetches in one go: the row count and the first page. */
+    private static final class Listing {
+        final int count;
+        final SecretPage first;
+
+        Listing(int count, SecretPage first) {
+            this.count = count;
+            this.first = first;
+        }
+    }
+
+    public SecretTableModel(VaultService vaultService, int userId) {
+        this.vaultService = vaultService;
+        this.userId = userId;
+    }
+
+    /**
+     * Start over for query (blank for everything). The current rows stay on screen until the
+     * count and first page arrive; onLoaded then gets the row count. Callbacks run on the EDT.
+     */
+    public void reload(String query, IntConsumer onLoaded, Consumer<Exception> onError) {
+        String q = query == null ? "" : query;
+        // Coalesced: a newer refresh / search supersedes one still running
+        UiTasks.<Listing>of(task -> {
+            int count = vaultService.countSecrets(userId, q);
+            task.checkCancelled();
+            return new Listing(count, count == 0 ? new SecretPage(List.of(), null)
+                    : vaultService.getSecretRange(userId, q, 0, PAGE_ROWS, null, 0));
+        }).coalesce("secrets")
+                .onSuccess(listing -> {
+                    this.query = q;
+                    generation++;
+                    for (UiTasks.Task<SecretPage> t : loading.values()) t.cancel();
+                    loading.clear();
+                    failed.clear();
+                    cursors.clear();
+                    pages.clear();
+                    rowCount = listing.count;
+                    if (!listing.first.getItems().isEmpty()) pages.put(0, new Page(listing.first.getItems()));
+                    if (listing.first.hasMore()) cursors.put(1, listing.first.getNextCursor());
+                    fireTableDataChanged();
+                    onLoaded.accept(rowCount);
+                })
+                .onError(onError)
+                .start();
+    }
+
+    /**
+     * Rows first..last are on screen: cancel fetches for pages outside them. Call from the
+     * table's viewport change listener.
+     */
+    public void setVisibleRows(int first, int last) {
+        int firstPage = first / PAGE_ROWS;
+        int lastPage = last / PAGE_ROWS;
+        Iterator<Map.Entry<Integer, UiTasks.Task<SecretPage>>> it = loading.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, UiTasks.Task<SecretPage>> e = it.next();
+            if (e.getKey() < firstPage || e.getKey() > lastPage) {
+                e.getValue().cancel();
+                it.remove();
+            }
+        }
+    }
+
+    /** Id of the secret at row, or null if its page isn't loaded. */
+    public Integer getSecretId(int row) {
+        Page page = pages.get(row / PAGE_ROWS);
+        int i = row % PAGE_ROWS;
+        return page != null && i < page.ids.length ? page.ids[i] : null;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        return false;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        int index = row / PAGE_ROWS;
+        Page page = pages.get(index);
+        if (page == null) {
+            boolean waiting = requestPage(index);
+            return column == 1 ? (waiting ? LOADING : FAILED) : null;
+        }
+        int i = row % PAGE_ROWS;
+        // The listing shrank since the count (a concurrent delete); the next reload fixes it
+        if (i >= page.ids.length) return null;
+        switch (column) {
+            case 0: return page.ids[i];
+            case 1: return page.names[i];
+            case 2: return formatDate(page.created[i]);
+            case 3: return formatDate(page.updated[i]);
+            default: return null;
+        }
+    }
+
+    /**
+     * Fetch page index unless it's already loading. Returns false while a failed page is
+     * backing off.
+     */
+    private boolean requestPage(int index) {
+        if (loading.containsKey(index)) return true;
+        Backoff backoff = failed.get(index);
+        if (backoff != null && System.currentTimeMillis() < backoff.retryAt) return false;
+
+        int gen = generation;
+        String q = query;
+        // Seek from the nearest page before this one whose start cursor is known
+        Map.Entry<Integer, String> base = cursors.floorEntry(index);
+        String cursor = base != null ? base.getValue() : null;
+        int cursorOffset = base != null ? base.getKey() * PAGE_ROWS : 0;
+        UiTasks.Task<SecretPage> task = UiTasks.<SecretPage>of(t ->
+                        vaultService.getSecretRange(userId, q, index * PAGE_ROWS, PAGE_ROWS, cursor, cursorOffset))
+                .onSuccess(page -> {
+                    if (gen != generation) return;
+                    loading.remove(index);
+                    failed.remove(index);
+                    pages.put(index, new Page(page.getItems()));
+                    if (page.hasMore()) cursors.put(index + 1, page.getNextCursor());
+                    fireRowsUpdated(index);
+                })
+                .onError(ex -> {
+                    if (gen != generation) return;
+                    loading.remove(index);
+                    retryLater(index, ex);
+                });
+        loading.put(index, task);
+        task.start();
+        return true;
+    }
+
+    private void retryLater(int index, Exception ex) {
+        Backoff backoff = failed.computeIfAbsent(index, i -> new Backoff());
+        backoff.attempts++;
+        long delay = Math.min(MAX_RETRY_MS, (long) RETRY_MS << Math.min(backoff.attempts - 1, 16));
+        backoff.retryAt = System.currentTimeMillis() + delay;
+        if (backoff.attempts == 1) {
+            System.err.println("Failed to load secrets page " + index + ", retrying with back-off: " + ex.getMessage());
+        }
+        // Repaint the page's rows once the delay is up; if they're still on screen that retries it
+        int gen = generation;
+        Timer timer = new Timer((int) delay, e -> {
+            if (gen == generation && !pages.containsKey(index)) fireRowsUpdated(index);
+        });
+        timer.setRepeats(false);
+        timer.start();
+    }
+
+    private void fireRowsUpdated(int index) {
+        int first = index * PAGE_ROWS;
+        int last = Math.min(rowCount, first + PAGE_ROWS) - 1;
+        if (last >= first) fireTableRowsUpdated(first, last);
+    }
+
+    private static String formatDate(long epochMillis) {
+        return epochMillis < 0 ? "" : DATE_FORMAT.format(Instant.ofEpochMilli(epochMillis));
+    }
+}
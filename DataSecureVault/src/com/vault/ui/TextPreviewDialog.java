@@ -0,0 +1,148 @@
+package com.vault.ui;
+
+import com.vault.service.VaultFileService;
+
+import javax.swing.*;
+import java.awt.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * TextPreviewDialog
+ * - Pages through a stored text file PAGE_BYTES at a time
+ * - Each page is a VaultFileService.readRange call, so only the segments on screen
+ *   are decrypted, however large the file is
+ * - Pages are cut on UTF-8 character boundaries
+ * - Pages load in the background; clicking ahead quickly only loads the last page asked for
+ */
+public class TextPreviewDialog extends JDialog {
+
+    private static final int PAGE_BYTES = 64 * 1024;
+
+    // Longest UTF-8 sequence is 4 bytes; read this much past the page to finish its last character
+    private static final int UTF8_SLACK = 3;
+
+    private final VaultFileService fileService;
+    private final int userId;
+    private final int fileId;
+    private final long fileSize;
+    private final long pageCount;
+
+    private JTextArea area;
+    private JLabel pageLabel;
+    private JButton firstBtn;
+    private JButton prevBtn;
+    private JButton nextBtn;
+    private JButton lastBtn;
+    private long page = 0;        // shown
+    private long requested = 0;   // loading (runs ahead of page while clicks queue up)
+    private final String pageTaskKey = "text-preview-" + System.identityHashCode(this);
+
+    public TextPreviewDialog(Frame owner, VaultFileService fileService, int userId, VaultFileService.FileInfo file) {
+        super(owner, "Preview: " + file.fileName, true);
+        this.fileService = fileService;
+        this.userId = userId;
+        this.fileId = file.id;
+        this.fileSize = file.fileSize;
+        this.pageCount = Math.max(1, (fileSize + PAGE_BYTES - 1) / PAGE_BYTES);
+
+        initializeComponents();
+        setSize(760, 560);
+        setLocationRelativeTo(owner);
+        showPage(0);
+    }
+
+    private void initializeComponents() {
+        JPanel content = new JPanel(new BorderLayout(8, 8));
+        content.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+
+        area = new JTextArea(20, 60);
+        area.setEditable(false);
+        area.setLineWrap(true);
+        area.setWrapStyleWord(true);
+        area.setFont(new Font("Monospaced", Font.PLAIN, 12));
+        content.add(new JScrollPane(area), BorderLayout.CENTER);
+
+        firstBtn = new JButton("⏮ First");
+        prevBtn = new JButton("◀ Prev");
+        nextBtn = new JButton("Next ▶");
+        lastBtn = new JButton("Last ⏭");
+        JButton close = new JButton("Close");
+        firstBtn.addActionListener(e -> showPage(0));
+        prevBtn.addActionListener(e -> showPage(requested - 1));
+        nextBtn.addActionListener(e -> showPage(requested + 1));
+        lastBtn.addActionListener(e -> showPage(pageCount - 1));
+        close.addActionListener(e -> dispose());
+
+        pageLabel = new JLabel();
+        pageLabel.setForeground(Color.GRAY);
+
+        JPanel nav = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        nav.add(firstBtn);
+        nav.add(prevBtn);
+        nav.add(nextBtn);
+        nav.add(lastBtn);
+        nav.add(pageLabel);
+
+        JPanel south = new JPanel(new BorderLayout());
+        south.add(nav, BorderLayout.WEST);
+        JPanel right = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        right.add(close);
+        south.add(right, BorderLayout.EAST);
+        content.add(south, BorderLayout.SOUTH);
+
+        setContentPane(content);
+    }
+
+    private void showPage(long target) {
+        if (target < 0 || target >= pageCount) return;
+        long offset = target * PAGE_BYTES;
+        requested = target;
+        pageLabel.setText(String.format("Loading page %,d of %,d...", target + 1, pageCount));
+        UiTasks.<byte[]>of(task -> fileService.readRange(userId, fileId, offset, PAGE_BYTES + UTF8_SLACK))
+                .coalesce(pageTaskKey)
+                .onSuccess(data -> {
+                    if (data == null) {
+                        area.setText("[File not found]");
+                    } else {
+                        area.setText(decodePage(data, offset > 0));
+                        area.setCaretPosition(0);
+                        page = target;
+                    }
+                    updateNavigation();
+                })
+                .onError(ex -> {
+                    requested = page;
+                    updateNavigation();
+                    JOptionPane.showMessageDialog(this, "Failed to read page: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                })
+                .start();
+    }
+
+    private void updateNavigation() {
+        long shown = page * PAGE_BYTES;
+        long end = Math.min(fileSize, shown + PAGE_BYTES);
+        pageLabel.setText(String.format("Page %,d of %,d  (bytes %,d–%,d of %,d)", page + 1, pageCount, shown, end, fileSize));
+        firstBtn.setEnabled(page > 0);
+        prevBtn.setEnabled(page > 0);
+        nextBtn.setEnabled(page < pageCount - 1);
+        lastBtn.setEnabled(page < pageCount - 1);
+    }
+
+    /**
+     * Text of one page. A character that straddles the page start belongs to the previous
+     * page, and one that straddles the end is finished from the slack bytes.
+     */
+    private static String decodePage(byte[] data, boolean skipLeading) {
+        int start = 0;
+        if (skipLeading) {
+            while (start < data.length && start < UTF8_SLACK && isContinuation(data[start])) start++;
+        }
+        int end = Math.min(data.length, PAGE_BYTES);
+        while (end < data.length && isContinuation(data[end])) end++;
+        return new String(data, start, Math.max(0, end - start), StandardCharsets.UTF_8);
+    }
+
+    private static boolean isContinuation(byte b) {
+        return (b & 0xC0) == 0x80;
+    }
+}
@@ -0,0 +1,312 @@
+package com.vault.ui;
+
+import javax.swing.*;
+import java.awt.*;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * UiTasks
+ * - Runs blocking work (PBKDF2, AES, JDBC) off the EDT on a small bounded pool
+ *   (ui.workers threads, default 4)
+ * - Success, failure and progress callbacks are always delivered on the EDT
+ * - Progress is coalesced: however often the work reports, at most one update is queued
+ * - Tasks can be cancelled; a cancelled task publishes nothing, and work that is still
+ *   queued never starts
+ * - Tasks started under the same coalesce key supersede each other: starting one cancels
+ *   the previous, so repeated clicks (search, paging) only ever show the latest result
+ * - Components passed to disabling() are disabled while the task runs
+ * - lowPriority() tasks (speculative prefetch) run one at a time on their own minimum-priority
+ *   thread, so they never hold up a worker the user is waiting for
+ * - cancelAll() / cancelAllAndWait() stop everything in flight, so logout can lock the session
+ *   key knowing no task is still using it
+ */
+public final class UiTasks {
+
+    /** Background body. Check task.isCancelled() between steps and report progress through it. */
+    public interface Work<T> {
+        T run(Task<T> task) throws Exception;
+    }
+
+    /** Progress as reported by the work: done out of total (total -1 when unknown). */
+    public interface ProgressListener {
+        void onProgress(long done, long total);
+    }
+
+    private static final ExecutorService POOL = createPool(Math.max(1, Integer.getInteger("ui.workers", 4)),
+            "vault-ui-", Thread.NORM_PRIORITY);
+    private static final ExecutorService LOW_PRIORITY = createPool(1, "vault-ui-background-", Thread.MIN_PRIORITY);
+
+    // Latest task per coalesce key; touched on the EDT and from workers finishing
+    private static final Map<String, Task<?>> LATEST = new HashMap<>();
+
+    // Tasks started whose work hasn't returned yet (queued or running)
+    private static final Set<Task<?>> ACTIVE = ConcurrentHashMap.newKeySet();
+
+    private UiTasks() {
+    }
+
+    private static ExecutorService createPool(int workers, String namePrefix, int priority) {
+        AtomicInteger seq = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(workers, workers, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, namePrefix + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    t.setPriority(priority);
+                    return t;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /** A task for work; configure its callbacks, then start() it (on the EDT). */
+    public static <T> Task<T> of(Work<T> work) {
+        return new Task<>(work);
+    }
+
+    /**
+     * Cancel every queued or running task. Call before starting the task that will
+     * cancelAllAndWait(), so it isn't queued behind work that only stops once cancelled.
+     */
+    public static void cancelAll() {
+        for (Task<?> t : ACTIVE) t.cancel();
+    }
+
+    /**
+     * Cancel every queued or running task except current, then wait up to timeoutMs for their
+     * work to return. Call from a task's work, never the EDT. Returns whether all of them stopped.
+     */
+    public static boolean cancelAllAndWait(Task<?> current, long timeoutMs) throws InterruptedException {
+        List<Task<?>> others = new ArrayList<>();
+        for (Task<?> t : ACTIVE) {
+            if (t == current) continue;
+            t.cancel();
+            others.add(t);
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        for (Task<?> t : others) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0 || !t.stopped.await(left, TimeUnit.NANOSECONDS)) return false;
+        }
+        return true;
+    }
+
+    public static final class Task<T> {
+        private final Work<T> work;
+        private String key;
+        private Consumer<? super T> onSuccess = r -> { };
+        private Consumer<? super Exception> onError = e -> System.err.println("Background task failed: " + e.getMessage());
+        private ProgressListener onProgress;
+        private Runnable onFinish;
+        private Component[] disabled = new Component[0];
+        private boolean lowPriority = false;
+        private volatile boolean cancelled = false;
+        private final AtomicReference<long[]> pendingProgress = new AtomicReference<>();
+        private final CountDownLatch stopped = new CountDownLatch(1);
+
+        private Task(Work<T> work) {
+            this.work = work;
+        }
+
+        /** Cancel any running task with this key when this one starts. */
+        public Task<T> coalesce(String key) {
+            this.key = key;
+            return this;
+        }
+
+        public Task<T> onSuccess(Consumer<? super T> onSuccess) {
+            this.onSuccess = onSuccess;
+            return this;
+        }
+
+        public Task<T> onError(Consumer<? super Exception> onError) {
+            this.onError = onError;
+            return this;
+        }
+
+        public Task<T> onProgress(ProgressListener onProgress) {
+            this.onProgress = onProgress;
+            return this;
+        }
+
+        /** Runs on the EDT when the task ends (success, failure or cancellation), before onSuccess / onError. */
+        public Task<T> onFinish(Runnable onFinish) {
+            this.onFinish = onFinish;
+            return this;
+        }
+
+        public Task<T> disabling(Component... components) {
+            this.disabled = components;
+            return this;
+        }
+
+        /** Run on the low-priority background thread instead of the worker pool. */
+        public Task<T> lowPriority() {
+            this.lowPriority = true;
+            return this;
+        }
+
+        public Task<T> start() {
+            if (key != null) {
+                Task<?> previous;
+                synchronized (LATEST) {
+                    previous = LATEST.put(key, this);
+                }
+                if (previous != null) previous.cancel();
+            }
+            for (Component c : disabled) c.setEnabled(false);
+            ACTIVE.add(this);
+            (lowPriority ? LOW_PRIORITY : POOL).execute(this::execute);
+            return this;
+        }
+
+        /** Stop publishing; queued work never starts, running work should notice isCancelled(). */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /** Throw CancellationException if cancelled (for work that can stop between steps). */
+        public void checkCancelled() {
+            if (cancelled) throw new CancellationException();
+        }
+
+        /** Report progress from the work; the listener sees the latest value on the EDT. */
+        public void progress(long done, long total) {
+            if (onProgress == null || cancelled) return;
+            if (pendingProgress.getAndSet(new long[]{done, total}) == null) {
+                SwingUtilities.invokeLater(() -> {
+                    long[] p = pendingProgress.getAndSet(null);
+                    if (p != null && !cancelled) onProgress.onProgress(p[0], p[1]);
+                });
+            }
+        }
+
+        /**
+         * in, checking for cancellation and reporting bytes read (out of total) as progress.
+         * Lets work that consumes a stream stop mid-way.
+         */
+        public InputStream track(InputStream in, long total) {
+            return new FilterInputStream(in) {
+                private long done = 0;
+
+                @Override
+                public int read() throws IOException {
+                    checkCancelled();
+                    int b = super.read();
+                    if (b != -1) progress(++done, total);
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    checkCancelled();
+                    int n = super.read(b, off, len);
+                    if (n > 0) progress(done += n, total);
+                    return n;
+                }
+            };
+        }
+
+        private void execute() {
+            T result = null;
+            Exception failure = null;
+            try {
+                if (!cancelled) {
+                    try {
+                        result = work.run(this);
+                    } catch (CancellationException e) {
+                        cancelled = true;
+                    } catch (Exception e) {
+                        failure = e;
+                    }
+                }
+            } finally {
+                ACTIVE.remove(this);
+                stopped.countDown();
+            }
+            final T value = result;
+            final Exception error = failure;
+            SwingUtilities.invokeLater(() -> finish(value, error));
+        }
+
+        private void finish(T value, Exception error) {
+            if (key != null) {
+                synchronized (LATEST) {
+                    LATEST.remove(key, this);
+                }
+            }
+            for (Component c : disabled) c.setEnabled(true);
+            if (onFinish != null) onFinish.run();
+            if (!cancelled) {
+                if (error == null) onSuccess.accept(value);
+                else onError.accept(error);
+            }
+        }
+    }
+
+    /**
+     * Modal progress dialog for a task, with a Cancel button that cancels it. Call show()
+     * right after starting the task and close() from its onFinish.
+     */
+    public static class ProgressDialog extends JDialog {
+        private final JProgressBar bar = new JProgressBar(0, 1000);
+        private final JLabel detail = new JLabel(" ");
+
+        public ProgressDialog(Window owner, String title, String message, Task<?> task) {
+            super(owner, title, ModalityType.APPLICATION_MODAL);
+            JPanel content = new JPanel(new BorderLayout(8, 8));
+            content.setBorder(BorderFactory.createEmptyBorder(12, 12, 12, 12));
+            content.add(new JLabel(message), BorderLayout.NORTH);
+            bar.setIndeterminate(true);
+            content.add(bar, BorderLayout.CENTER);
+            JButton cancel = new JButton("Cancel");
+            cancel.addActionListener(e -> {
+                task.cancel();
+                cancel.setEnabled(false);
+                detail.setText("Cancelling...");
+            });
+            JPanel south = new JPanel(new BorderLayout());
+            south.add(detail, BorderLayout.WEST);
+            south.add(cancel, BorderLayout.EAST);
+            content.add(south, BorderLayout.SOUTH);
+            setContentPane(content);
+            setDefaultCloseOperation(DO_NOTHING_ON_CLOSE);
+            setSize(420, 150);
+            setLocationRelativeTo(owner);
+        }
+
+        /** Update from an onProgress callback. */
+        public void setProgress(long done, long total, String text) {
+            if (total > 0) {
+                bar.setIndeterminate(false);
+                bar.setValue((int) (done * 1000 / total));
+            }
+            detail.setText(text);
+        }
+
+        public void close() {
+            setVisible(false);
+            dispose();
+        }
+    }
+}
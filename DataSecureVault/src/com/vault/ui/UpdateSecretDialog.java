@@ -257,7 +257,7 @@ public class UpdateSecretDialog extends JDialog {
             return;
         }
 
-        try {
+        UiTasks.<Void>of(task -> {
             if (vaultService != null && currentUser != null) {
                 vaultService.updateSecret(currentUser.getId(), secretId, keyName, secretValue);
 
@@ -265,15 +265,18 @@ public class UpdateSecretDialog extends JDialog {
                     userService.logAccess(currentUser.getId(), "UPDATE", keyName);
                 }
             }
-
-            saved = true;
-            showSuccess("Secret '" + keyName + "' updated successfully!");
-            dispose();
-
-        } catch (Exception ex) {
-            showError("Failed to update secret: " + ex.getMessage());
-            ex.printStackTrace();
-        }
+            return null;
+        }).disabling(saveButton, cancelButton)
+                .onSuccess(v -> {
+                    saved = true;
+                    showSuccess("Secret '" + keyName + "' updated successfully!");
+                    dispose();
+                })
+                .onError(ex -> {
+                    showError("Failed to update secret: " + ex.getMessage());
+                    ex.printStackTrace();
+                })
+                .start();
     }
 
     private void handleCancel() {